@@ -2,6 +2,7 @@ plugins {
     id("java")
     id("application")
     id("io.freefair.lombok") version "8.6"
+    id("me.champeau.jmh") version "0.7.2"
 }
 
 application {
@@ -20,11 +21,35 @@ dependencies {
     implementation("com.github.javaparser:javaparser-core:3.25.10")
     implementation("org.graphstream:gs-core:2.0")
     implementation("org.graphstream:gs-ui-swing:2.0")
-    implementation("commons-io:commons-io:2.7")
+    implementation("org.eclipse.jgit:org.eclipse.jgit:6.10.0.202406032230-r")
     testImplementation(platform("org.junit:junit-bom:5.10.0"))
     testImplementation("org.junit.jupiter:junit-jupiter")
+    testRuntimeOnly("org.junit.platform:junit-platform-launcher")
 }
 
 tasks.test {
     useJUnitPlatform()
+}
+
+// A binary index of the JDK and library types for --type-index, e.g.
+// gradle typeIndex -PtypeIndexJdk=/usr/lib/jvm/java-21 -PtypeIndexJars=a.jar:b.jar
+tasks.register<JavaExec>("typeIndex") {
+    group = "build"
+    description = "Writes the types of a JDK and of the given jars to build/type-index.bin"
+    classpath = sourceSets.main.get().runtimeClasspath
+    mainClass.set("cz.cuni.mff.d3s.TypeIndexBuilder")
+    val output = layout.buildDirectory.file("type-index.bin").get().asFile
+    outputs.file(output)
+    args(output.path)
+    (findProperty("typeIndexJdk") as String?)?.let { args("--jdk=$it") }
+    (findProperty("typeIndexJars") as String?)?.split(File.pathSeparator)?.forEach { args(it) }
+}
+
+// Benchmarks of the analysis phases on a generated corpus, see src/jmh/java
+jmh {
+    jmhVersion.set("1.37")
+    fork.set(1)
+    warmupIterations.set(3)
+    iterations.set(5)
+    resultFormat.set("JSON")
 }
\ No newline at end of file
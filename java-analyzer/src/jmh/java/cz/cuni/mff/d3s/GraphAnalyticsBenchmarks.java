@@ -0,0 +1,65 @@
+package cz.cuni.mff.d3s;
+
+import org.openjdk.jmh.annotations.*;
+
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * {@link GraphAnalytics} on random graphs of the size of the class graph of a large repository. Most edges point
+ * to a node with a higher number, like the dependencies of layered code, and the rest close cycles.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Fork(value = 1, jvmArgs = "-Xmx2g")
+@Warmup(iterations = 2)
+@Measurement(iterations = 3)
+public class GraphAnalyticsBenchmarks {
+    @State(Scope.Benchmark)
+    public static class GraphState {
+        @Param({"100000"})
+        public int nodes;
+        @Param({"8"})
+        public int edgesPerNode;
+        @Param({"0.01"})
+        public double backEdgeRatio;
+
+        IntRelation relation;
+        GraphAnalytics analytics;
+
+        @Setup(Level.Trial)
+        public void generate() {
+            var random = new Random(42);
+            relation = new IntRelation();
+            for (int from = 0; from < nodes - 1; from++) {
+                for (int i = 0; i < edgesPerNode; i++) {
+                    var to = random.nextDouble() < backEdgeRatio ? random.nextInt(nodes)
+                            : from + 1 + random.nextInt(Math.min(1000, nodes - from - 1));
+                    relation.add(from, to);
+                }
+            }
+            analytics = new GraphAnalytics("Random", relation, String::valueOf);
+        }
+    }
+
+    /**
+     * Renumbering, components and layers.
+     */
+    @Benchmark
+    public GraphAnalytics build(GraphState state) {
+        return new GraphAnalytics("Random", state.relation, String::valueOf);
+    }
+
+    @Benchmark
+    public Object cycles(GraphState state) {
+        return state.analytics.getCycles(10);
+    }
+
+    /**
+     * The closure is cached, so every invocation starts from a new instance.
+     */
+    @Benchmark
+    public long transitiveDependents(GraphState state) {
+        return new GraphAnalytics("Random", state.relation, String::valueOf).getTransitiveDependentCount("0");
+    }
+}
@@ -0,0 +1,219 @@
+package cz.cuni.mff.d3s;
+
+import com.github.javaparser.ast.CompilationUnit;
+import com.github.javaparser.utils.SourceRoot;
+import org.openjdk.jmh.annotations.*;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.io.IOException;
+import java.io.Writer;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Optional;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * One benchmark per phase of the source analysis, run on a {@link SyntheticCorpus} that is generated once per trial.
+ * Run with {@code gradle jmh}, or with {@code gradle jmhJar} and
+ * {@code java -jar build/libs/java-analyzer-1.0-jmh.jar PhaseBenchmarks -p classesPerPackage=50} to change the size
+ * of the corpus.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+public class PhaseBenchmarks {
+    private record UnitSource(SourceRoot sourceRoot, Path file) {
+    }
+
+    private record ParsedUnit(SourceRoot sourceRoot, Path file, CompilationUnit unit) {
+    }
+
+    @State(Scope.Benchmark)
+    public static class CorpusState {
+        @Param({"7"})
+        public int projects;
+        @Param({"10"})
+        public int packagesPerProject;
+        @Param({"20"})
+        public int classesPerPackage;
+        @Param({"5"})
+        public int referencesPerClass;
+
+        Path root;
+        List<String> projectNames;
+        Analyzer analyzer;
+        List<UnitSource> units;
+        List<Path> buildFiles;
+
+        @Setup(Level.Trial)
+        public void generate() throws IOException {
+            root = Files.createTempDirectory("corpus");
+            // The analysis skips the source roots of tests and benchmarks by their path, the temporary one included
+            if (Runner.isSkippedRoot(root)) {
+                throw new IllegalStateException("The corpus directory " + root + " would be skipped as test or benchmark code, set java.io.tmpdir to another directory");
+            }
+            var corpus = new SyntheticCorpus(projects, packagesPerProject, classesPerPackage, referencesPerClass, 42);
+            corpus.generate(root);
+            projectNames = corpus.getProjects();
+            analyzer = new Analyzer(root, 1, projectNames);
+            units = collectUnits(analyzer, projectNames);
+            buildFiles = analyzer.getAllBuildFiles();
+        }
+
+        @TearDown(Level.Trial)
+        public void delete() throws IOException {
+            try (var paths = Files.walk(root)) {
+                for (var path : paths.sorted(Comparator.reverseOrder()).toList()) {
+                    Files.delete(path);
+                }
+            }
+        }
+    }
+
+    /**
+     * Units parsed with fresh type solvers before every iteration, so the resolution caches of JavaParser start
+     * empty like in a real run.
+     */
+    @State(Scope.Benchmark)
+    public static class ParsedState {
+        List<ParsedUnit> units;
+
+        @Setup(Level.Iteration)
+        public void parse(CorpusState corpus) {
+            var analyzer = new Analyzer(corpus.root, 1, corpus.projectNames);
+            units = new ArrayList<>();
+            for (var source : collectUnits(analyzer, corpus.projectNames)) {
+                analyzer.parse(source.sourceRoot(), source.file())
+                        .ifPresent(unit -> units.add(new ParsedUnit(source.sourceRoot(), source.file(), unit)));
+            }
+        }
+    }
+
+    @State(Scope.Benchmark)
+    public static class FactsState {
+        List<UnitFacts> facts;
+
+        @Setup(Level.Trial)
+        public void extract(CorpusState corpus) {
+            var resolver = new MemberResolver();
+            facts = new ArrayList<>();
+            for (var source : corpus.units) {
+                corpus.analyzer.parse(source.sourceRoot(), source.file())
+                        .ifPresent(unit -> facts.add(Runner.analyzeUnit(source.sourceRoot(), source.file(), unit, resolver, ResolutionBudget.unlimited())));
+            }
+        }
+    }
+
+    /**
+     * A model with all the facts but without the fallback resolution, rebuilt before every invocation because
+     * {@link SourceAnalysis#resolveSymbols()} changes it. An invocation takes milliseconds, so the setup does not
+     * distort the measurement.
+     */
+    @State(Scope.Benchmark)
+    public static class UnresolvedModelState {
+        SourceAnalysis model;
+
+        @Setup(Level.Invocation)
+        public void build(FactsState facts) {
+            model = buildModel(facts.facts);
+        }
+    }
+
+    @State(Scope.Benchmark)
+    public static class ResolvedModelState {
+        SourceAnalysis model;
+
+        @Setup(Level.Trial)
+        public void build(FactsState facts) {
+            model = buildModel(facts.facts);
+            model.resolveSymbols();
+        }
+    }
+
+    @Benchmark
+    public RepositoryScan walkFiles(CorpusState corpus) {
+        var scan = RepositoryScan.scan(corpus.root, 1);
+        scan.getExtensionCounts();
+        return scan;
+    }
+
+    @Benchmark
+    public void parseBuildFiles(CorpusState corpus, Blackhole blackhole) throws Exception {
+        for (var buildFile : corpus.buildFiles) {
+            blackhole.consume(SuiteModel.parse(buildFile));
+        }
+    }
+
+    @Benchmark
+    public void parseUnits(CorpusState corpus, Blackhole blackhole) {
+        for (var source : corpus.units) {
+            blackhole.consume(corpus.analyzer.parse(source.sourceRoot(), source.file()));
+        }
+    }
+
+    /**
+     * Method call and field access resolution of all units. A single shot per iteration, since repeated
+     * resolution of the same nodes would only measure the caches of the symbol solver.
+     */
+    @Benchmark
+    @BenchmarkMode(Mode.SingleShotTime)
+    @Warmup(iterations = 3)
+    @Measurement(iterations = 10)
+    public void resolveReferences(ParsedState parsed, Blackhole blackhole) {
+        var resolver = new MemberResolver();
+        for (var unit : parsed.units) {
+            blackhole.consume(Runner.analyzeUnit(unit.sourceRoot(), unit.file(), unit.unit(), resolver, ResolutionBudget.unlimited()));
+        }
+    }
+
+    @Benchmark
+    public SourceAnalysis addUnitFacts(FactsState facts) {
+        return buildModel(facts.facts);
+    }
+
+    @Benchmark
+    public SourceAnalysis resolveSymbols(UnresolvedModelState state) {
+        state.model.resolveSymbols();
+        return state.model;
+    }
+
+    @Benchmark
+    public void exportClassGraph(ResolvedModelState state) throws IOException {
+        try (var writer = GraphWriter.create(GraphFormat.DOT, Writer.nullWriter(), "Class dependencies", Optional.empty(), true)) {
+            state.model.exportClassReferences(writer);
+        }
+    }
+
+    @Benchmark
+    public void exportPackageGraph(ResolvedModelState state) throws IOException {
+        try (var writer = GraphWriter.create(GraphFormat.GRAPHML, Writer.nullWriter(), "Package dependencies", Optional.empty(), true)) {
+            state.model.exportPackageReferences(writer);
+        }
+    }
+
+    private static List<UnitSource> collectUnits(Analyzer analyzer, List<String> projects) {
+        var units = new ArrayList<UnitSource>();
+        for (var project : projects) {
+            for (var sourceRoot : analyzer.getJavaSourceRoots(project)) {
+                try {
+                    for (var file : analyzer.getJavaFiles(sourceRoot.getRoot())) {
+                        units.add(new UnitSource(sourceRoot, file));
+                    }
+                } catch (IOException e) {
+                    throw new IllegalStateException("Could not list the files of " + sourceRoot.getRoot(), e);
+                }
+            }
+        }
+        return units;
+    }
+
+    private static SourceAnalysis buildModel(List<UnitFacts> facts) {
+        var model = new SourceAnalysis();
+        for (var unitFacts : facts) {
+            model.addUnitFacts(unitFacts);
+        }
+        return model;
+    }
+}
@@ -0,0 +1,182 @@
+package cz.cuni.mff.d3s;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.TreeSet;
+
+/**
+ * Generates a Graal-like repository: every project has an {@code mx.<project>/suite.py} and one source root with
+ * {@code packagesPerProject} packages of {@code classesPerPackage} classes. Each class calls static methods, reads
+ * fields and creates instances of {@code referencesPerClass} other classes of its own or an earlier project (so the
+ * suites form a DAG like in Graal), and calls one type that does not exist, which stays unresolved.
+ * <p>
+ * The output only depends on the parameters and the seed, so benchmark runs on different machines see the same
+ * sources. The projects are named after {@link Runner#ANALYZED_PROJECTS}, so the generated repository can also be
+ * analyzed with the command line, e.g. {@code gradle run --args="export <directory>"}.
+ */
+public class SyntheticCorpus {
+    private final int projects;
+    private final int packagesPerProject;
+    private final int classesPerPackage;
+    private final int referencesPerClass;
+    private final long seed;
+
+    public SyntheticCorpus(int projects, int packagesPerProject, int classesPerPackage, int referencesPerClass, long seed) {
+        if (projects < 1 || projects > Runner.ANALYZED_PROJECTS.length) {
+            throw new IllegalArgumentException("Number of projects must be between 1 and " + Runner.ANALYZED_PROJECTS.length);
+        }
+        this.projects = projects;
+        this.packagesPerProject = packagesPerProject;
+        this.classesPerPackage = classesPerPackage;
+        this.referencesPerClass = referencesPerClass;
+        this.seed = seed;
+    }
+
+    /**
+     * Usage: {@code <directory> [projects packagesPerProject classesPerPackage referencesPerClass seed]}
+     */
+    public static void main(String[] args) throws IOException {
+        if (args.length != 1 && args.length != 6) {
+            System.err.println("Usage: <directory> [projects packagesPerProject classesPerPackage referencesPerClass seed]");
+            System.exit(1);
+        }
+        var corpus = args.length == 1
+                ? new SyntheticCorpus(Runner.ANALYZED_PROJECTS.length, 10, 20, 5, 42)
+                : new SyntheticCorpus(Integer.parseInt(args[1]), Integer.parseInt(args[2]), Integer.parseInt(args[3]),
+                Integer.parseInt(args[4]), Long.parseLong(args[5]));
+        corpus.generate(Path.of(args[0]));
+    }
+
+    public List<String> getProjects() {
+        return List.of(Runner.ANALYZED_PROJECTS).subList(0, projects);
+    }
+
+    public void generate(Path root) throws IOException {
+        var random = new Random(seed);
+        for (int project = 0; project < projects; project++) {
+            var projectDirectory = root.resolve(getProjects().get(project));
+            var sourceDirectory = projectDirectory.resolve("src").resolve(getModuleName(project)).resolve("src");
+            var importedProjects = new TreeSet<Integer>();
+            for (int pkg = 0; pkg < packagesPerProject; pkg++) {
+                var packageDirectory = sourceDirectory.resolve(getPackageName(project, pkg).replace('.', '/'));
+                Files.createDirectories(packageDirectory);
+                for (int clazz = 0; clazz < classesPerPackage; clazz++) {
+                    var targets = new ArrayList<int[]>();
+                    for (int i = 0; i < referencesPerClass; i++) {
+                        var target = new int[]{random.nextInt(project + 1), random.nextInt(packagesPerProject), random.nextInt(classesPerPackage)};
+                        targets.add(target);
+                        if (target[0] != project) {
+                            importedProjects.add(target[0]);
+                        }
+                    }
+                    write(packageDirectory.resolve(getClassName(project, pkg, clazz) + ".java"), generateClass(project, pkg, clazz, targets));
+                }
+            }
+            var mxDirectory = projectDirectory.resolve("mx." + getProjects().get(project));
+            Files.createDirectories(mxDirectory);
+            write(mxDirectory.resolve("suite.py"), generateSuite(project, importedProjects));
+            write(projectDirectory.resolve("README.md"), "# " + getProjects().get(project) + "\n");
+        }
+    }
+
+    private String generateClass(int project, int pkg, int clazz, List<int[]> targets) {
+        var className = getClassName(project, pkg, clazz);
+        var imports = new TreeSet<String>();
+        var body = new StringBuilder();
+        for (var target : targets) {
+            var targetName = getClassName(target[0], target[1], target[2]);
+            if (target[0] != project || target[1] != pkg) {
+                imports.add(getPackageName(target[0], target[1]) + "." + targetName);
+            }
+            body.append("        result += ").append(targetName).append(".compute(value);\n");
+            body.append("        result += ").append(targetName).append(".WEIGHT;\n");
+            body.append("        result += new ").append(targetName).append("().size();\n");
+        }
+        var source = new StringBuilder();
+        source.append("/*\n * Generated for the analysis benchmarks.\n */\n");
+        source.append("package ").append(getPackageName(project, pkg)).append(";\n\n");
+        for (var imp : imports) {
+            source.append("import ").append(imp).append(";\n");
+        }
+        source.append("\n/**\n * Class ").append(clazz).append(" of package ").append(pkg).append(".\n */\n");
+        source.append("public class ").append(className).append(" {\n");
+        source.append("    public static final int WEIGHT = ").append(clazz).append(";\n\n");
+        source.append("    private final int[] values = new int[").append(clazz + 1).append("];\n\n");
+        source.append("    public int size() {\n");
+        source.append("        return values.length;\n");
+        source.append("    }\n\n");
+        source.append("    public static int compute(int value) {\n");
+        source.append("        // Calls into the other classes, see SyntheticCorpus\n");
+        source.append("        int result = value;\n");
+        source.append(body);
+        source.append("        result += MissingRegistry.lookup(result);\n");
+        source.append("        return result;\n");
+        source.append("    }\n");
+        source.append("}\n");
+        return source.toString();
+    }
+
+    private String generateSuite(int project, TreeSet<Integer> importedProjects) {
+        var name = getProjects().get(project);
+        var suite = new StringBuilder();
+        suite.append("suite = {\n");
+        suite.append("  \"mxversion\": \"7.0\",\n");
+        suite.append("  \"name\" : \"").append(name).append("\",\n");
+        suite.append("  \"imports\" : {\n");
+        suite.append("    \"suites\": [\n");
+        for (var imported : importedProjects) {
+            suite.append("      {\n");
+            suite.append("        \"name\" : \"").append(getProjects().get(imported)).append("\",\n");
+            suite.append("        \"subdir\": True,\n");
+            suite.append("      },\n");
+        }
+        suite.append("    ]\n");
+        suite.append("  },\n");
+        suite.append("  \"projects\" : {\n");
+        suite.append("    \"").append(getModuleName(project)).append("\" : {\n");
+        suite.append("      \"subDir\" : \"src\",\n");
+        suite.append("      \"sourceDirs\" : [\"src\"],\n");
+        suite.append("      \"dependencies\" : [\n");
+        for (var imported : importedProjects) {
+            suite.append("        \"").append(getProjects().get(imported)).append(":").append(getDistributionName(imported)).append("\",\n");
+        }
+        suite.append("      ],\n");
+        suite.append("      \"javaCompliance\" : \"17+\",\n");
+        suite.append("    },\n");
+        suite.append("  },\n");
+        suite.append("  \"distributions\" : {\n");
+        suite.append("    \"").append(getDistributionName(project)).append("\" : {\n");
+        suite.append("      \"dependencies\" : [\"").append(getModuleName(project)).append("\"],\n");
+        suite.append("    },\n");
+        suite.append("  },\n");
+        suite.append("}\n");
+        return suite.toString();
+    }
+
+    private String getModuleName(int project) {
+        return "org.synthetic." + getProjects().get(project);
+    }
+
+    private String getDistributionName(int project) {
+        return getProjects().get(project).toUpperCase() + "_API";
+    }
+
+    private String getPackageName(int project, int pkg) {
+        return getModuleName(project) + ".p" + pkg;
+    }
+
+    private String getClassName(int project, int pkg, int clazz) {
+        // Unique simple names, so imports never clash
+        var projectName = getProjects().get(project);
+        return Character.toUpperCase(projectName.charAt(0)) + projectName.substring(1) + "P" + pkg + "C" + clazz;
+    }
+
+    private static void write(Path file, String content) throws IOException {
+        Files.writeString(file, content, StandardCharsets.UTF_8);
+    }
+}
@@ -0,0 +1,215 @@
+package cz.cuni.mff.d3s;
+
+import com.google.common.collect.Iterables;
+import com.google.common.hash.Hashing;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * On-disk cache of {@link UnitFacts}, one file per source root, keyed by the content hash of every source file.
+ * <p>
+ * A cached file is reused only if its content did not change and it does not refer (by simple name) to a type that
+ * was declared by a changed, added or removed file, nested types included, since the symbol solver could resolve it
+ * differently now. The
+ * referred types include the declaring types of its references, the types named in it (e.g. as field, variable or
+ * return types) and the types through which it referenced inherited members.
+ * <p>
+ * The facts depend on how the JDK and library types were resolved, so the cache records the {@link BinaryTypeIndex}
+ * it was written with (its file, format version and modification time) and is discarded when another one is used.
+ */
+public class AnalysisCache {
+    private static final int FORMAT_VERSION = 12;
+
+    private final Path directory;
+    private final String typeIndexKey;
+    private final Map<Path, String> hashes = new ConcurrentHashMap<>();
+    private final Map<Path, UnitFacts> reusableFacts = new ConcurrentHashMap<>();
+    private final AtomicInteger reusedFiles = new AtomicInteger();
+    private final AtomicInteger parsedFiles = new AtomicInteger();
+    // Written by the single thread consuming the analysis results
+    private Path currentRoot;
+    private Path currentFile;
+    private DataOutputStream currentOutput;
+
+    public AnalysisCache(Path directory, Optional<BinaryTypeIndex> typeIndex) {
+        this.directory = directory;
+        typeIndexKey = typeIndex.map(index -> index.getFile().toAbsolutePath() + "/" + BinaryTypeIndex.VERSION + "/"
+                + index.getLastModified().toMillis()).orElse("");
+    }
+
+    /**
+     * Hashes the current sources and decides which of the cached facts are still valid.
+     */
+    public void prepare(Map<Path, List<Path>> filesPerSourceRoot) throws IOException {
+        Files.createDirectories(directory);
+        var cachedFacts = new HashMap<Path, UnitFacts>();
+        var changedNames = new HashSet<String>();
+        for (var entry : filesPerSourceRoot.entrySet()) {
+            var cachedEntries = load(entry.getKey());
+            for (var file : entry.getValue()) {
+                var hash = Hashing.murmur3_128().hashBytes(Files.readAllBytes(file)).toString();
+                hashes.put(file, hash);
+                var cached = cachedEntries.remove(file);
+                if (cached != null && cached.hash().equals(hash)) {
+                    cachedFacts.put(file, cached.facts());
+                    continue;
+                }
+                // The new declarations are not known before parsing, but a top-level type is named after its file
+                changedNames.add(simpleName(file.getFileName().toString().replace(".java", "")));
+                if (cached != null) {
+                    addDeclaredNames(changedNames, cached.facts());
+                }
+            }
+            // Whatever is left was deleted since the last run
+            for (var removed : cachedEntries.values()) {
+                addDeclaredNames(changedNames, removed.facts());
+            }
+        }
+        for (var entry : cachedFacts.entrySet()) {
+            if (!dependsOn(entry.getValue(), changedNames)) {
+                reusableFacts.put(entry.getKey(), entry.getValue());
+            }
+        }
+    }
+
+    public Optional<UnitFacts> getFacts(Path file) {
+        var facts = Optional.ofNullable(reusableFacts.remove(file));
+        (facts.isPresent() ? reusedFiles : parsedFiles).incrementAndGet();
+        return facts;
+    }
+
+    /**
+     * Starts writing the cache of a source root; the facts of its files are then added one by one with
+     * {@link #append(UnitFacts)}, so they do not have to be kept until the whole root is analyzed.
+     */
+    public void beginSourceRoot(Path sourceRoot) throws IOException {
+        finish();
+        currentRoot = sourceRoot;
+        currentFile = Files.createTempFile(directory, "facts", ".tmp");
+        currentOutput = new DataOutputStream(new BufferedOutputStream(Files.newOutputStream(currentFile)));
+        currentOutput.writeInt(FORMAT_VERSION);
+        UnitFacts.writeString(currentOutput, typeIndexKey);
+    }
+
+    public void append(UnitFacts facts) throws IOException {
+        currentOutput.writeBoolean(true);
+        UnitFacts.writeString(currentOutput, currentRoot.relativize(facts.getFile()).toString());
+        UnitFacts.writeString(currentOutput, hashes.get(facts.getFile()));
+        facts.write(currentOutput);
+    }
+
+    public void finish() throws IOException {
+        if (currentOutput == null) {
+            return;
+        }
+        try (var output = currentOutput) {
+            output.writeBoolean(false);
+        }
+        currentOutput = null;
+        // A run killed while writing must not leave a truncated cache behind
+        Files.move(currentFile, getCacheFile(currentRoot), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+    }
+
+    public void printStatistics() {
+        System.out.println("Analysis cache: " + reusedFiles.get() + " files reused, " + parsedFiles.get() + " files parsed");
+    }
+
+    private Map<Path, CachedEntry> load(Path sourceRoot) throws IOException {
+        var entries = new HashMap<Path, CachedEntry>();
+        try (var input = new DataInputStream(new BufferedInputStream(Files.newInputStream(getCacheFile(sourceRoot))))) {
+            if (input.readInt() != FORMAT_VERSION || !UnitFacts.readString(input).equals(typeIndexKey)) {
+                return entries;
+            }
+            while (input.readBoolean()) {
+                var file = sourceRoot.resolve(UnitFacts.readString(input));
+                var hash = UnitFacts.readString(input);
+                entries.put(file, new CachedEntry(hash, UnitFacts.read(input, sourceRoot, file)));
+            }
+        } catch (NoSuchFileException e) {
+            return entries;
+        } catch (IOException e) {
+            System.err.println("Discarding unreadable cache of " + sourceRoot + ": " + e);
+            entries.clear();
+        }
+        return entries;
+    }
+
+    private Path getCacheFile(Path sourceRoot) {
+        var key = Hashing.murmur3_128().hashString(sourceRoot.toAbsolutePath().toString(), StandardCharsets.UTF_8);
+        return directory.resolve(key + ".facts");
+    }
+
+    /**
+     * Whether the facts refer to a type with one of the simple names, so the file may resolve differently when a type
+     * of that name changed.
+     */
+    static boolean dependsOn(UnitFacts facts, Set<String> names) {
+        for (var reference : facts.getReferences().keySet()) {
+            if (names.contains(simpleName(reference.referencedClassName()))) {
+                return true;
+            }
+        }
+        for (var reference : facts.getUnresolvedCalls()) {
+            if (names.contains(reference.scopeName())) {
+                return true;
+            }
+        }
+        for (var reference : facts.getUnresolvedFieldAccesses()) {
+            if (names.contains(reference.scopeName())) {
+                return true;
+            }
+        }
+        for (var imp : facts.getImports()) {
+            if (names.contains(simpleName(imp))) {
+                return true;
+            }
+        }
+        for (var reference : facts.getTypeReferences().keySet()) {
+            // Any part of a qualified name may be a type, e.g. Outer.Inner
+            for (var part : reference.typeName().split("\\.")) {
+                if (names.contains(part)) {
+                    return true;
+                }
+            }
+        }
+        for (var scopeType : facts.getMemberScopes()) {
+            if (names.contains(simpleName(scopeType))) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Adds the simple names of the top-level and nested types declared by the file of the facts.
+     */
+    static void addDeclaredNames(Set<String> names, UnitFacts facts) {
+        for (var className : Iterables.concat(facts.getDeclaredClasses(), facts.getNestedClasses())) {
+            names.add(simpleName(className));
+        }
+    }
+
+    static String simpleName(String className) {
+        return className.substring(className.lastIndexOf('.') + 1);
+    }
+
+    private record CachedEntry(String hash, UnitFacts facts) {
+    }
+}
@@ -0,0 +1,315 @@
+package cz.cuni.mff.d3s;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+
+import java.io.IOException;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.URLDecoder;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.FileSystems;
+import java.nio.file.FileVisitResult;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.SimpleFileVisitor;
+import java.nio.file.StandardWatchEventKinds;
+import java.nio.file.WatchKey;
+import java.nio.file.WatchService;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Optional;
+import java.util.Set;
+import java.util.TreeSet;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Function;
+
+/**
+ * Keeps the analysis of the repository in memory and answers queries about it over HTTP on the loopback interface:
+ * <ul>
+ *     <li>{@code /classes/dependencies?name=<class>} and {@code /classes/dependents?name=<class>} - the classes with
+ *     the number of references of every {@link ReferenceKind}</li>
+ *     <li>{@code /packages/dependencies?name=<package>} and {@code /packages/dependents?name=<package>}</li>
+ *     <li>{@code /classes/unresolved?name=<class>} - unresolved method calls and field accesses of the class</li>
+ *     <li>{@code /projects} - the project dependencies, optionally only those of {@code ?name=<project>}</li>
+ *     <li>{@code /status} - version and time of the current model</li>
+ * </ul>
+ * The analyzed source roots and the suite files are watched. Changed files and the files that refer to a type they
+ * declared (see {@link AnalysisCache#dependsOn}) are analyzed again, and a new model is built from the facts of all
+ * files and swapped in, so a query sees either the old or the new model, never one being updated.
+ */
+public class AnalysisServer {
+    // Editors and version control change many files at once, wait until the changes stop before analyzing them
+    private static final long QUIET_PERIOD_MILLIS = 200;
+    private static final int QUERY_THREADS = 4;
+
+    private final Path repository;
+    private final Options options;
+    private final RunReport report;
+    // Only used by the thread watching the files
+    private Analyzer analyzer;
+    private IncrementalAnalysis incrementalAnalysis;
+    private final Set<Path> watchedRoots = new HashSet<>();
+    private volatile Model model;
+
+    private record Model(SourceAnalysis sources, BuildToolAnalysis buildFiles, int version, Instant updated, int files) {
+    }
+
+    private record Changes(Set<Path> files, boolean buildFilesChanged, boolean overflow) {
+    }
+
+    public AnalysisServer(Path repository, Analyzer analyzer, Options options, RunReport report) {
+        this.repository = repository;
+        this.analyzer = analyzer;
+        this.options = options;
+        this.report = report;
+    }
+
+    /**
+     * Analyzes the repository, starts answering queries and then updates the model until the thread is interrupted.
+     */
+    public void run() throws IOException, InterruptedException {
+        incrementalAnalysis = new IncrementalAnalysis(analyzer, options);
+        var buildFiles = Runner.runBuildToolAnalysis(analyzer, report);
+        var sources = Runner.runSourceAnalysis(analyzer, options, report, incrementalAnalysis::add);
+        publish(sources, buildFiles);
+        report.printSummary();
+        if (options.getReportFile().isPresent()) {
+            report.write(options.getReportFile().get());
+        }
+
+        var server = HttpServer.create(new InetSocketAddress(InetAddress.getLoopbackAddress(), options.getPort()), 0);
+        server.createContext("/classes/dependencies", exchange -> answerDependencies(exchange, model -> model.sources()::getClassDependencies));
+        server.createContext("/classes/dependents", exchange -> answerDependencies(exchange, model -> model.sources()::getClassDependents));
+        server.createContext("/packages/dependencies", exchange -> answerDependencies(exchange, model -> model.sources()::getPackageDependencies));
+        server.createContext("/packages/dependents", exchange -> answerDependencies(exchange, model -> model.sources()::getPackageDependents));
+        server.createContext("/classes/unresolved", this::answerUnresolved);
+        server.createContext("/projects", this::answerProjects);
+        server.createContext("/status", this::answerStatus);
+        var executor = Executors.newFixedThreadPool(QUERY_THREADS);
+        server.setExecutor(executor);
+        server.start();
+        System.out.println("Answering queries on http://" + server.getAddress().getHostString() + ":" + server.getAddress().getPort());
+        try {
+            watch();
+        } finally {
+            server.stop(0);
+            // The server does not stop the threads of its executor
+            executor.shutdown();
+        }
+    }
+
+    private void publish(SourceAnalysis sources, BuildToolAnalysis buildFiles) {
+        // Build the reversed references now rather than in the first queries
+        sources.getClassDependents("");
+        sources.getPackageDependents("");
+        var version = model == null ? 1 : model.version() + 1;
+        model = new Model(sources, buildFiles, version, Instant.now(), incrementalAnalysis.size());
+    }
+
+    private void watch() throws IOException, InterruptedException {
+        try (var watcher = FileSystems.getDefault().newWatchService()) {
+            registerSourceRoots(watcher);
+            for (var buildFile : analyzer.getAllBuildFiles()) {
+                register(watcher, buildFile.getParent());
+            }
+            // Whether the previous update failed and may have left the incremental analysis half updated
+            var failed = false;
+            while (!Thread.currentThread().isInterrupted()) {
+                var files = new TreeSet<Path>();
+                var changes = collect(watcher, watcher.take(), files);
+                for (var key = watcher.poll(QUIET_PERIOD_MILLIS, TimeUnit.MILLISECONDS); key != null;
+                     key = watcher.poll(QUIET_PERIOD_MILLIS, TimeUnit.MILLISECONDS)) {
+                    var next = collect(watcher, key, files);
+                    changes = new Changes(files, changes.buildFilesChanged() || next.buildFilesChanged(),
+                            changes.overflow() || next.overflow());
+                }
+                if (failed) {
+                    changes = new Changes(files, true, true);
+                }
+                try {
+                    update(changes);
+                    registerSourceRoots(watcher);
+                    failed = false;
+                } catch (RuntimeException e) {
+                    System.err.println("Could not update the model, keeping version " + model.version()
+                            + " until the next change analyzes everything again: " + e);
+                    failed = true;
+                }
+            }
+        }
+    }
+
+    private void registerSourceRoots(WatchService watcher) throws IOException {
+        for (var root : incrementalAnalysis.getSourceRoots()) {
+            if (watchedRoots.add(root)) {
+                registerAll(watcher, root, new HashSet<>());
+            }
+        }
+    }
+
+    private Changes collect(WatchService watcher, WatchKey key, Set<Path> files) throws IOException {
+        var directory = (Path) key.watchable();
+        var buildFilesChanged = false;
+        var overflow = false;
+        for (var event : key.pollEvents()) {
+            if (event.kind() == StandardWatchEventKinds.OVERFLOW) {
+                overflow = true;
+                continue;
+            }
+            var path = directory.resolve((Path) event.context());
+            if (path.getFileName().toString().equals("suite.py")) {
+                buildFilesChanged = true;
+            } else if (path.toString().endsWith(".java")) {
+                files.add(path);
+            } else if (event.kind() == StandardWatchEventKinds.ENTRY_CREATE && Files.isDirectory(path)) {
+                // Files created in the directory before it was registered would be missed otherwise
+                registerAll(watcher, path, files);
+            } else if (event.kind() == StandardWatchEventKinds.ENTRY_DELETE) {
+                // The deletions of the files of a deleted directory are not always reported
+                for (var file : incrementalAnalysis.getFiles()) {
+                    if (file.startsWith(path)) {
+                        files.add(file);
+                    }
+                }
+            }
+        }
+        key.reset();
+        return new Changes(files, buildFilesChanged, overflow);
+    }
+
+    private void registerAll(WatchService watcher, Path directory, Set<Path> files) throws IOException {
+        Files.walkFileTree(directory, new SimpleFileVisitor<>() {
+            @Override
+            public FileVisitResult preVisitDirectory(Path dir, BasicFileAttributes attrs) throws IOException {
+                register(watcher, dir);
+                return FileVisitResult.CONTINUE;
+            }
+
+            @Override
+            public FileVisitResult visitFile(Path file, BasicFileAttributes attrs) {
+                if (file.toString().endsWith(".java")) {
+                    files.add(file);
+                }
+                return FileVisitResult.CONTINUE;
+            }
+        });
+    }
+
+    private static void register(WatchService watcher, Path directory) throws IOException {
+        directory.register(watcher, StandardWatchEventKinds.ENTRY_CREATE, StandardWatchEventKinds.ENTRY_MODIFY,
+                StandardWatchEventKinds.ENTRY_DELETE);
+    }
+
+    private void update(Changes changes) {
+        var start = System.nanoTime();
+        if (changes.overflow()) {
+            // The missed changes may have added source roots, find the roots again
+            analyzer = new Analyzer(repository, options.getParallelism(), List.of(Runner.ANALYZED_PROJECTS), analyzer.getTypeIndex(),
+                    options.getSolverCacheSize());
+            incrementalAnalysis.setSourceRoots(analyzer);
+        } else {
+            // Resolve against the current sources, the solvers of the previous analysis cached the old ones
+            analyzer = analyzer.withFreshTypeSolvers();
+        }
+        // Updates are not part of the report of the run
+        var updateReport = new RunReport("serve", Path.of("."));
+        var buildFiles = changes.buildFilesChanged() ? Runner.runBuildToolAnalysis(analyzer, updateReport) : model.buildFiles();
+        SourceAnalysis sources;
+        int analyzedFiles;
+        if (changes.overflow()) {
+            System.out.println("Too many changes, analyzing everything again");
+            incrementalAnalysis.clear();
+            sources = Runner.runSourceAnalysis(analyzer, options, updateReport, incrementalAnalysis::add);
+            analyzedFiles = incrementalAnalysis.size();
+        } else {
+            analyzedFiles = incrementalAnalysis.update(analyzer, changes.files());
+            sources = incrementalAnalysis.buildModel();
+        }
+        publish(sources, buildFiles);
+        System.out.printf("Model version %d: %d changed files, %d analyzed again, %d ms%n", model.version(),
+                changes.files().size(), analyzedFiles, (System.nanoTime() - start) / 1_000_000);
+    }
+
+    private void answerDependencies(HttpExchange exchange, Function<Model, Function<String, List<SourceAnalysis.Dependency>>> query)
+            throws IOException {
+        var name = getName(exchange);
+        if (name.isEmpty()) {
+            respond(exchange, 400, "{\"error\": \"missing name\"}");
+            return;
+        }
+        var dependencies = new ArrayList<String>();
+        for (var dependency : query.apply(model).apply(name.get())) {
+            var json = new StringBuilder("{\"name\": " + Json.quote(dependency.name()) + ", \"weight\": " + dependency.getWeight());
+            for (var kind : ReferenceKind.values()) {
+                json.append(", \"").append(kind.getLabel()).append("\": ").append(dependency.getCount(kind));
+            }
+            dependencies.add(json.append("}").toString());
+        }
+        respond(exchange, 200, "[" + String.join(", ", dependencies) + "]");
+    }
+
+    private void answerUnresolved(HttpExchange exchange) throws IOException {
+        var name = getName(exchange);
+        if (name.isEmpty()) {
+            respond(exchange, 400, "{\"error\": \"missing name\"}");
+            return;
+        }
+        var references = new ArrayList<String>();
+        for (var reference : model.sources().getUnresolvedReferences(name.get())) {
+            references.add("{\"scope\": " + Json.quote(reference.scopeName()) + ", \"member\": " + Json.quote(reference.memberName()) + "}");
+        }
+        respond(exchange, 200, "[" + String.join(", ", references) + "]");
+    }
+
+    private void answerProjects(HttpExchange exchange) throws IOException {
+        var name = getName(exchange);
+        var edges = new ArrayList<String>();
+        for (var entry : model.buildFiles().getProjectDependencies().entries()) {
+            if (name.isEmpty() || name.get().equals(entry.getKey())) {
+                edges.add("{\"from\": " + Json.quote(entry.getKey()) + ", \"to\": " + Json.quote(entry.getValue()) + "}");
+            }
+        }
+        respond(exchange, 200, "[" + String.join(", ", edges) + "]");
+    }
+
+    private void answerStatus(HttpExchange exchange) throws IOException {
+        var current = model;
+        respond(exchange, 200, "{\"version\": " + current.version() + ", \"updated\": " + Json.quote(current.updated().toString())
+                + ", \"files\": " + current.files() + "}");
+    }
+
+    private static Optional<String> getName(HttpExchange exchange) {
+        var query = exchange.getRequestURI().getRawQuery();
+        if (query == null) {
+            return Optional.empty();
+        }
+        var parameters = new HashMap<String, String>();
+        for (var parameter : query.split("&")) {
+            var separator = parameter.indexOf('=');
+            if (separator > 0) {
+                parameters.put(URLDecoder.decode(parameter.substring(0, separator), StandardCharsets.UTF_8),
+                        URLDecoder.decode(parameter.substring(separator + 1), StandardCharsets.UTF_8));
+            }
+        }
+        return Optional.ofNullable(parameters.get("name"));
+    }
+
+    private static void respond(HttpExchange exchange, int status, String json) throws IOException {
+        try (exchange) {
+            if (!exchange.getRequestMethod().equals("GET")) {
+                exchange.sendResponseHeaders(405, -1);
+                return;
+            }
+            var body = json.getBytes(StandardCharsets.UTF_8);
+            exchange.getResponseHeaders().set("Content-Type", "application/json; charset=utf-8");
+            exchange.sendResponseHeaders(status, body.length);
+            exchange.getResponseBody().write(body);
+        }
+    }
+}
@@ -1,126 +1,348 @@
 package cz.cuni.mff.d3s;
 
-import com.github.javaparser.StaticJavaParser;
+import com.github.javaparser.JavaParser;
+import com.github.javaparser.ParserConfiguration;
 import com.github.javaparser.ast.CompilationUnit;
 import com.github.javaparser.resolution.TypeSolver;
 import com.github.javaparser.symbolsolver.JavaSymbolSolver;
+import com.github.javaparser.symbolsolver.resolution.typesolvers.CombinedTypeSolver;
+import com.github.javaparser.symbolsolver.resolution.typesolvers.JavaParserTypeSolver;
 import com.github.javaparser.symbolsolver.resolution.typesolvers.ReflectionTypeSolver;
-import com.github.javaparser.symbolsolver.utils.SymbolSolverCollectionStrategy;
 import com.github.javaparser.utils.SourceRoot;
-import com.google.common.io.Files;
-import org.apache.commons.io.FileUtils;
-import org.apache.commons.io.filefilter.TrueFileFilter;
 
 import java.io.IOException;
+import java.nio.file.FileVisitResult;
 import java.nio.file.Path;
+import java.nio.file.SimpleFileVisitor;
+import java.nio.file.attribute.BasicFileAttributes;
 import java.util.ArrayList;
 import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
 import java.util.List;
 import java.util.Map;
-import java.util.regex.Matcher;
-import java.util.regex.Pattern;
-import java.util.stream.Collectors;
+import java.util.NavigableMap;
+import java.util.Optional;
 
 public class Analyzer {
+    private static final String BUILD_FILE_NAME = "suite.py";
+    // Suites are either the repository itself or one of its subdirectories
+    private static final int SUITE_SEARCH_DEPTH = 1;
+    static final int DEFAULT_SOLVER_CACHE_SIZE = 1000;
+
     private final Path repoPath;
+    private final int parallelism;
+    private final List<String> sourceProjects;
+    private final Optional<BinaryTypeIndex> typeIndex;
+    private final int solverCacheSize;
+    // Type solvers cache resolved declarations without any synchronization, so every thread has its own roots
+    private final ThreadLocal<Map<String, List<SourceRoot>>> sourceRootsPerProject = ThreadLocal.withInitial(this::createSourceRoots);
+    private Map<String, List<Path>> sourceRootPaths;
+    private RepositoryScan repositoryScan;
+    // Whether the layout recorded by the scan is the one of the current sources, not of an earlier analyzer
+    private boolean scannedLayoutCurrent;
+
+    public Analyzer(Path repoPath, int parallelism, List<String> sourceProjects) {
+        this(repoPath, parallelism, sourceProjects, Optional.empty(), DEFAULT_SOLVER_CACHE_SIZE);
+    }
 
-    public Analyzer(Path repoPath) {
+    /**
+     * @param typeIndex       the JDK and library types to resolve against, instead of the classpath of the analyzer
+     * @param solverCacheSize maximum number of parsed files (and of directory listings and found types) cached by the
+     *                        type solver of every source root on every thread
+     */
+    public Analyzer(Path repoPath, int parallelism, List<String> sourceProjects, Optional<BinaryTypeIndex> typeIndex, int solverCacheSize) {
         this.repoPath = repoPath;
-        TypeSolver typeSolver = new ReflectionTypeSolver();
-        JavaSymbolSolver symbolSolver = new JavaSymbolSolver(typeSolver);
-        StaticJavaParser.getParserConfiguration().setSymbolResolver(symbolSolver);
+        this.parallelism = parallelism;
+        this.sourceProjects = sourceProjects;
+        this.typeIndex = typeIndex;
+        this.solverCacheSize = solverCacheSize;
+    }
+
+    /**
+     * An analyzer of the same source roots whose type solvers have not cached anything yet, e.g. to resolve against
+     * sources that changed since this analyzer parsed them. The source roots are not searched again.
+     */
+    public Analyzer withFreshTypeSolvers() {
+        var analyzer = new Analyzer(repoPath, parallelism, sourceProjects, typeIndex, solverCacheSize);
+        analyzer.sourceRootPaths = getSourceRootPaths();
+        analyzer.repositoryScan = repositoryScan;
+        return analyzer;
+    }
+
+    public Optional<BinaryTypeIndex> getTypeIndex() {
+        return typeIndex;
     }
 
     public Map<String, Integer> getFileExtensionCounts() {
-        var counts = new HashMap<String, Integer>();
-        for (Path file : getAllRegularFiles(repoPath)) {
-            String extension = Files.getFileExtension(file.getFileName().toString());
-            if (extension.isEmpty()) {
-                continue;
-            }
-            counts.put(extension, counts.getOrDefault(extension, 0) + 1);
-        }
-        return counts;
+        return getRepositoryScan().getExtensionCounts();
     }
 
     public Map<String, Double> getFileExtensionsRatios() {
-        var counts = getFileExtensionCounts();
-        var total = counts.values().stream().mapToInt(Integer::intValue).sum();
-        var ratios = new HashMap<String, Double>();
-        for (var entry : counts.entrySet()) {
-            ratios.put(entry.getKey(), entry.getValue() / (double) total * 100);
+        return getRepositoryScan().getExtensionRatios();
+    }
+
+    private synchronized RepositoryScan getRepositoryScan() {
+        // All the statistics, the source roots and their files come from the same traversal of the repository
+        if (repositoryScan == null) {
+            var sourceDirectories = sourceProjects.stream().map(repoPath::resolve).toList();
+            repositoryScan = RepositoryScan.scan(repoPath, parallelism, sourceDirectories, this::isBuildFile);
+            scannedLayoutCurrent = true;
         }
-        return ratios;
+        return repositoryScan;
+    }
+
+    private synchronized Optional<RepositoryScan> getScannedLayout() {
+        return scannedLayoutCurrent ? Optional.of(repositoryScan) : Optional.empty();
     }
 
+    /**
+     * Finds the {@code mx.<suite>/suite.py} files of the suites in the repository and its direct subdirectories,
+     * which is where mx looks for them. They are taken from the repository scan if there was one, otherwise only
+     * directories are listed and the search does not descend into any suite, so it is independent of the size of the
+     * sources.
+     */
     public List<Path> getAllBuildFiles() {
-        return getAllRegularFiles(repoPath).stream().filter(path -> path.getFileName().toString().equals("suite.py")).toList();
+        var scan = getScannedLayout();
+        if (scan.isPresent()) {
+            return scan.get().getBuildFiles();
+        }
+        var buildFiles = new ArrayList<Path>();
+        try {
+            findBuildFiles(repoPath, 0, buildFiles);
+        } catch (IOException e) {
+            System.err.println("Could not list " + repoPath + ": " + e);
+        }
+        buildFiles.sort(null);
+        return buildFiles;
     }
 
-    public String getProjectNameFromBuildTool(Path buildFile) throws Exception {
-        Pattern pattern = Pattern.compile("\"name\"\\s*:\\s*\"([^\"]*)\"");
-        try (var lines = java.nio.file.Files.lines(buildFile)) {
-            for (String line : (Iterable<String>) lines::iterator) {
-                Matcher matcher = pattern.matcher(line);
-                if (matcher.find()) {
-                    return matcher.group(1);
+    /**
+     * Whether {@link #findBuildFiles} would find the file.
+     */
+    private boolean isBuildFile(Path file) {
+        if (!file.getFileName().toString().equals(BUILD_FILE_NAME) || !file.startsWith(repoPath)) {
+            return false;
+        }
+        var suiteDirectory = repoPath.relativize(file.getParent());
+        if (!suiteDirectory.getFileName().toString().startsWith("mx.") || suiteDirectory.getNameCount() > SUITE_SEARCH_DEPTH + 1) {
+            return false;
+        }
+        for (int i = 0; i < suiteDirectory.getNameCount() - 1; i++) {
+            var name = suiteDirectory.getName(i).toString();
+            if (name.startsWith(".") || name.startsWith("mx.")) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private static void findBuildFiles(Path directory, int depth, List<Path> buildFiles) throws IOException {
+        try (var children = java.nio.file.Files.newDirectoryStream(directory, java.nio.file.Files::isDirectory)) {
+            for (var child : children) {
+                var name = child.getFileName().toString();
+                if (name.startsWith("mx.")) {
+                    var buildFile = child.resolve(BUILD_FILE_NAME);
+                    if (java.nio.file.Files.isRegularFile(buildFile)) {
+                        buildFiles.add(buildFile);
+                    }
+                } else if (depth < SUITE_SEARCH_DEPTH && !name.startsWith(".")) {
+                    findBuildFiles(child, depth + 1, buildFiles);
                 }
             }
-        } catch (Exception e) {
-            System.err.println("Could not parse build file: " + e);
         }
-        throw new Exception("No project name found in file");
     }
 
-    public List<String> getProjectDependenciesFromBuildTool(Path buildFile) throws IOException {
-        List<String> suiteNames = new ArrayList<>();
-        Pattern pattern = Pattern.compile("\"name\"\\s*:\\s*\"([^\"]*)\"");
-        boolean inSuitesSection = false;
-        try (var lines = java.nio.file.Files.lines(buildFile)) {
-            for (String line : (Iterable<String>) lines::iterator) {
-                if (line.contains("\"suites\": [")) {
-                    inSuitesSection = true;
+    /**
+     * Parses the given {@code suite.py} files on up to {@code parallelism} threads, skipping (and reporting) the ones
+     * that cannot be parsed. The suites are returned in the order of the files.
+     */
+    public List<SuiteModel> getSuites(List<Path> buildFiles) {
+        var suites = new ArrayList<SuiteModel>();
+        UnitPipeline.run(buildFiles.iterator(), Analyzer::parseSuite, suite -> suite.ifPresent(suites::add), parallelism, 4 * parallelism);
+        return suites;
+    }
+
+    private static Optional<SuiteModel> parseSuite(Path buildFile) {
+        try {
+            return Optional.of(SuiteModel.parse(buildFile));
+        } catch (IOException | SuiteParser.ParseException e) {
+            System.err.println("File " + buildFile + " could not be parsed correctly: " + e.getMessage());
+            return Optional.empty();
+        }
+    }
+
+    public List<SourceRoot> getJavaSourceRoots(String project) {
+        var sourceRoots = sourceRootsPerProject.get().get(project);
+        if (sourceRoots == null) {
+            throw new IllegalArgumentException("Project " + project + " is not analyzed");
+        }
+        return sourceRoots;
+    }
+
+    public SourceRoot getJavaSourceRoot(String project, Path root) {
+        return getJavaSourceRoots(project).stream()
+                .filter(sourceRoot -> sourceRoot.getRoot().equals(root))
+                .findFirst()
+                .orElseThrow(() -> new IllegalArgumentException("Unknown source root " + root + " in " + project));
+    }
+
+    /**
+     * Lists the Java files of a source root in a stable order, skipping directories that cannot be packages
+     * (the same ones {@link SourceRoot#tryToParse()} skips). They are taken from the repository scan if it is of the
+     * current sources, otherwise the root is walked.
+     */
+    public List<Path> getJavaFiles(Path sourceRoot) throws IOException {
+        var scan = getScannedLayout();
+        if (scan.isPresent()) {
+            var files = new ArrayList<Path>();
+            for (var entry : getDirectoriesIn(scan.get().getJavaFilesPerDirectory(), sourceRoot).entrySet()) {
+                if (isPackageDirectory(sourceRoot, entry.getKey())) {
+                    files.addAll(entry.getValue());
                 }
-                if (inSuitesSection) {
-                    Matcher matcher = pattern.matcher(line);
-                    if (matcher.find()) {
-                        suiteNames.add(matcher.group(1));
-                    }
+            }
+            files.sort(null);
+            return files;
+        }
+        List<Path> files = new ArrayList<>();
+        java.nio.file.Files.walkFileTree(sourceRoot, new SimpleFileVisitor<>() {
+            @Override
+            public FileVisitResult preVisitDirectory(Path dir, BasicFileAttributes attrs) throws IOException {
+                if (!dir.equals(sourceRoot) && (java.nio.file.Files.isHidden(dir) || !isJavaIdentifier(dir.getFileName().toString()))) {
+                    return FileVisitResult.SKIP_SUBTREE;
                 }
-                if (inSuitesSection && line.contains("]")) {
-                    break;
+                return FileVisitResult.CONTINUE;
+            }
+
+            @Override
+            public FileVisitResult visitFile(Path file, BasicFileAttributes attrs) {
+                if (attrs.isRegularFile() && file.toString().endsWith(".java")) {
+                    files.add(file);
                 }
+                return FileVisitResult.CONTINUE;
+            }
+        });
+        files.sort(null);
+        return files;
+    }
+
+    /**
+     * Whether {@link #getJavaFiles(Path)} would list the file, i.e. it is a Java file in a package directory.
+     */
+    public boolean isJavaFile(Path sourceRoot, Path file) {
+        if (!file.startsWith(sourceRoot) || !file.toString().endsWith(".java")) {
+            return false;
+        }
+        return isPackageDirectory(sourceRoot, file.getParent() == null ? file : file.getParent());
+    }
+
+    private static boolean isPackageDirectory(Path sourceRoot, Path directory) {
+        for (var name : sourceRoot.relativize(directory)) {
+            if (!name.toString().isEmpty() && (name.toString().startsWith(".") || !isJavaIdentifier(name.toString()))) {
+                return false;
             }
         }
-        return suiteNames;
+        return true;
     }
 
-    public List<SourceRoot> getJavaSourceRoots(String project) {
-        return new SymbolSolverCollectionStrategy().collect(repoPath.resolve(project)).getSourceRoots();
+    /**
+     * The entries of the directory and of the directories inside it.
+     */
+    private static <T> Map<Path, T> getDirectoriesIn(NavigableMap<Path, T> directories, Path directory) {
+        // Paths are ordered by their names, the ones inside the directory start with its name and a separator
+        var inside = new LinkedHashMap<Path, T>();
+        for (var entry : directories.tailMap(directory, true).entrySet()) {
+            if (!entry.getKey().toString().startsWith(directory.toString())) {
+                break;
+            }
+            if (entry.getKey().startsWith(directory)) {
+                inside.put(entry.getKey(), entry.getValue());
+            }
+        }
+        return inside;
     }
 
-    public List<CompilationUnit> getAllCompilationUnits(SourceRoot sourceRoot) {
-        List<CompilationUnit> compilationUnits = new ArrayList<>();
+    public Optional<CompilationUnit> parse(SourceRoot sourceRoot, Path file) {
         try {
-            for (var result : sourceRoot.tryToParse()) {
-                if (!result.isSuccessful() || result.getResult().isEmpty()) {
-                    System.out.println("Failed to parse " + result.getProblems());
+            var result = new JavaParser(sourceRoot.getParserConfiguration()).parse(file);
+            if (!result.isSuccessful() || result.getResult().isEmpty()) {
+                System.out.println("Failed to parse " + result.getProblems());
+                return Optional.empty();
+            }
+            return result.getResult();
+        } catch (Exception e) {
+            System.out.println("Failed to parse " + file);
+            return Optional.empty();
+        }
+    }
+
+    private synchronized Map<String, List<Path>> getSourceRootPaths() {
+        // Searching the roots reads files, so it is done once and the per-thread roots are created from the paths
+        if (sourceRootPaths == null) {
+            sourceRootPaths = new HashMap<>();
+            var javaFilesPerDirectory = getRepositoryScan().getJavaFilesPerDirectory();
+            for (var project : sourceProjects) {
+                sourceRootPaths.put(project, findSourceRoots(getDirectoriesIn(javaFilesPerDirectory, repoPath.resolve(project))));
+            }
+        }
+        return sourceRootPaths;
+    }
+
+    /**
+     * The source roots of the directories, each derived from the package of the first Java file of a directory (as
+     * the {@code SymbolSolverCollectionStrategy} of JavaParser does, but reading only the header of the file).
+     * Directories whose path does not end with their package are not in any root.
+     */
+    private static List<Path> findSourceRoots(Map<Path, List<Path>> javaFilesPerDirectory) {
+        var roots = new LinkedHashSet<Path>();
+        for (var entry : javaFilesPerDirectory.entrySet()) {
+            var directory = entry.getKey();
+            if (roots.stream().anyMatch(directory::startsWith)) {
+                continue;
+            }
+            Optional<String> packageName;
+            try {
+                packageName = ImportScan.readHeader(entry.getValue().get(0)).packageName();
+            } catch (IOException e) {
+                System.err.println("Could not read " + entry.getValue().get(0) + ": " + e);
+                continue;
+            }
+            var root = directory;
+            if (packageName.isPresent()) {
+                var packagePath = Path.of(packageName.get().replace('.', '/'));
+                if (!directory.endsWith(packagePath)) {
                     continue;
                 }
-                var compilationUnit = result.getResult().get();
-                compilationUnits.add(compilationUnit);
+                for (int i = 0; i < packagePath.getNameCount(); i++) {
+                    root = root.getParent();
+                }
             }
-        } catch (Exception e) {
-            System.out.println("Failed to parse " + sourceRoot);
+            roots.add(root);
         }
-        return compilationUnits;
+        return roots.stream().sorted().toList();
     }
 
-    private List<Path> getAllRegularFiles(Path root) {
-        return FileUtils.listFiles(root.toFile(), TrueFileFilter.INSTANCE, TrueFileFilter.INSTANCE).stream().filter(java.io.File::isFile).map(java.io.File::toPath).collect(Collectors.toList());
+    private Map<String, List<SourceRoot>> createSourceRoots() {
+        // A single solver sees the sources of all analyzed projects, so references across projects resolve as well. The
+        // solvers of the roots keep the parsed files they looked types up in, bounded as every thread has its own.
+        var typeSolver = new CombinedTypeSolver(typeIndex.<TypeSolver>map(IndexedTypeSolver::new).orElseGet(() -> new ReflectionTypeSolver(false)));
+        var configuration = new ParserConfiguration().setSymbolResolver(new JavaSymbolSolver(new BudgetedTypeSolver(typeSolver)));
+        var sourceRoots = new HashMap<String, List<SourceRoot>>();
+        for (var entry : getSourceRootPaths().entrySet()) {
+            var projectRoots = new ArrayList<SourceRoot>();
+            for (var root : entry.getValue()) {
+                projectRoots.add(new SourceRoot(root, configuration));
+                typeSolver.add(new JavaParserTypeSolver(root, configuration, solverCacheSize));
+            }
+            sourceRoots.put(entry.getKey(), projectRoots);
+        }
+        return sourceRoots;
     }
 
-    private List<Path> getAllSubdirectories(Path root) {
-        return FileUtils.listFilesAndDirs(root.toFile(), TrueFileFilter.INSTANCE, TrueFileFilter.INSTANCE).stream().filter(java.io.File::isDirectory).map(java.io.File::toPath).collect(Collectors.toList());
+    private static boolean isJavaIdentifier(String name) {
+        if (name.isEmpty() || !Character.isJavaIdentifierStart(name.charAt(0))) {
+            return false;
+        }
+        return name.chars().skip(1).allMatch(Character::isJavaIdentifierPart);
     }
 }
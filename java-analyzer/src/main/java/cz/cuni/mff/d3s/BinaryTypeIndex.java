@@ -0,0 +1,382 @@
+package cz.cuni.mff.d3s;
+
+import java.io.IOException;
+import java.net.MalformedURLException;
+import java.net.URL;
+import java.net.URLClassLoader;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.nio.file.attribute.FileTime;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Optional;
+
+/**
+ * The JDK and library types written by {@link TypeIndexBuilder}, memory-mapped and searched in place: the names of the
+ * types sorted by their UTF-8 bytes, each with its supertypes and the names of its public and protected members.
+ * Looking up a type is a binary search over the mapped file, so nothing is loaded or reflected on until a type is
+ * actually used. Names are canonical, i.e. nested types are separated by dots. Shared by all worker threads.
+ * <p>
+ * The file starts with a header of ints: the magic number, the version, the number of jars, the number of types and
+ * the offsets of the string and list sections. It is followed by the string offsets of the paths of the indexed jars
+ * and by a fixed-size entry per type: the offset of its name, the length of its package name, its flags and the
+ * offsets of the lists of its supertypes and members. A string is its length and UTF-8 bytes, a list is its length
+ * and the string offsets of its elements. Methods are listed by their name and parameter descriptors, followed by
+ * {@code *} if they take variable arguments (e.g. {@code format(Ljava/lang/String;[Ljava/lang/Object;)*}), and fields
+ * by their name.
+ */
+public class BinaryTypeIndex {
+    static final int MAGIC = 0x4A544958;
+    static final int VERSION = 2;
+    static final int HEADER_INTS = 6;
+    static final int ENTRY_INTS = 5;
+    static final int INTERFACE = 1;
+    private static final String OBJECT = "java.lang.Object";
+
+    private final Path file;
+    private final FileTime lastModified;
+    private final ByteBuffer buffer;
+    private final int typeCount;
+    private final int typesStart;
+    private final int stringsStart;
+    private final int listsStart;
+    private final List<Path> jars = new ArrayList<>();
+    private ClassLoader classLoader;
+
+    private BinaryTypeIndex(Path file, FileTime lastModified, ByteBuffer buffer) throws IOException {
+        this.file = file;
+        this.lastModified = lastModified;
+        this.buffer = buffer;
+        if (buffer.limit() < HEADER_INTS * Integer.BYTES || buffer.getInt(0) != MAGIC) {
+            throw new IOException(file + " is not a type index");
+        }
+        if (buffer.getInt(4) != VERSION) {
+            throw new IOException(file + " is a type index of another version, build it again");
+        }
+        var jarCount = buffer.getInt(8);
+        typeCount = buffer.getInt(12);
+        stringsStart = buffer.getInt(16);
+        listsStart = buffer.getInt(20);
+        typesStart = (HEADER_INTS + jarCount) * Integer.BYTES;
+        for (int i = 0; i < jarCount; i++) {
+            jars.add(Path.of(getString(buffer.getInt((HEADER_INTS + i) * Integer.BYTES))));
+        }
+    }
+
+    public static BinaryTypeIndex open(Path file) throws IOException {
+        try (var channel = FileChannel.open(file, StandardOpenOption.READ)) {
+            return new BinaryTypeIndex(file, Files.getLastModifiedTime(file), channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size()));
+        }
+    }
+
+    /**
+     * Opens the index of the options.
+     *
+     * @throws IllegalArgumentException if the index cannot be read, the types would be resolved differently than asked
+     */
+    public static Optional<BinaryTypeIndex> load(Options options) {
+        if (options.getTypeIndexFile().isEmpty()) {
+            return Optional.empty();
+        }
+        try {
+            var index = open(options.getTypeIndexFile().get());
+            System.out.println("Type index: " + index.size() + " types of the JDK and " + index.getJars().size() + " jars");
+            return Optional.of(index);
+        } catch (IOException e) {
+            throw new IllegalArgumentException("Could not read the type index: " + e.getMessage(), e);
+        }
+    }
+
+    public Path getFile() {
+        return file;
+    }
+
+    /**
+     * When the index was modified before it was opened, so a rebuilt index can be told apart.
+     */
+    public FileTime getLastModified() {
+        return lastModified;
+    }
+
+    public int size() {
+        return typeCount;
+    }
+
+    public List<Path> getJars() {
+        return jars;
+    }
+
+    public boolean contains(String typeName) {
+        return find(typeName) >= 0;
+    }
+
+    /**
+     * Loads the indexed types: the JDK ones by the system class loader, the others from the indexed jars.
+     */
+    public synchronized ClassLoader getClassLoader() {
+        if (classLoader == null) {
+            var urls = new URL[jars.size()];
+            for (int i = 0; i < urls.length; i++) {
+                try {
+                    urls[i] = jars.get(i).toUri().toURL();
+                } catch (MalformedURLException e) {
+                    throw new IllegalStateException("Invalid jar path " + jars.get(i) + " in " + file, e);
+                }
+            }
+            classLoader = urls.length == 0 ? ClassLoader.getSystemClassLoader() : new URLClassLoader(urls, ClassLoader.getSystemClassLoader());
+        }
+        return classLoader;
+    }
+
+    /**
+     * The members the type declares itself, in the form they are listed in the index.
+     *
+     * @return empty if the type is not indexed
+     */
+    List<String> getDeclaredMembers(String typeName) {
+        var type = find(typeName);
+        if (type < 0) {
+            return List.of();
+        }
+        var members = getEntry(type, 4);
+        var names = new ArrayList<String>();
+        for (int i = 0; i < getListSize(members); i++) {
+            names.add(getString(getListElement(members, i)));
+        }
+        return names;
+    }
+
+    /**
+     * Finds the type declaring (or inheriting from the nearest supertype) a public or protected field of an indexed
+     * type: the superclasses first, then the interfaces breadth-first, then {@code java.lang.Object}.
+     *
+     * @return empty if the type or one of its supertypes is not indexed, or no supertype declares the field
+     */
+    public Optional<MemberResolver.ResolvedMember> findFieldDeclaringType(String typeName, String field) {
+        var name = field.getBytes(StandardCharsets.UTF_8);
+        for (var type : getSupertypes(typeName).orElse(List.of())) {
+            // Members are sorted too
+            if (findInList(getEntry(type, 4), name)) {
+                return Optional.of(toMember(type));
+            }
+        }
+        return Optional.empty();
+    }
+
+    /**
+     * Finds the type declaring (or inheriting from the nearest supertype) a public or protected method of an indexed
+     * type, in the same order as {@link #findFieldDeclaringType}. The index knows only the erased parameter types, so
+     * the method is found only if all the methods of its name in the type and its supertypes have the same parameters,
+     * i.e. the name is not overloaded and any call of the method resolves to the same declaration.
+     *
+     * @param arity the number of arguments of the call, a method with variable arguments matches any number of them
+     *              its other parameters allow
+     * @return empty if the type or one of its supertypes is not indexed, the method is overloaded or not declared
+     */
+    public Optional<MemberResolver.ResolvedMember> findMethodDeclaringType(String typeName, String method, int arity) {
+        var prefix = (method + "(").getBytes(StandardCharsets.UTF_8);
+        String signature = null;
+        var declaringType = -1;
+        for (var type : getSupertypes(typeName).orElse(List.of())) {
+            var members = getEntry(type, 4);
+            for (int i = findFirst(members, prefix); i < getListSize(members) && startsWith(getListElement(members, i), prefix); i++) {
+                var parameters = getString(getListElement(members, i)).substring(method.length());
+                if (signature == null) {
+                    signature = parameters;
+                    declaringType = type;
+                } else if (!signature.equals(parameters)) {
+                    return Optional.empty();
+                }
+            }
+        }
+        if (signature == null) {
+            return Optional.empty();
+        }
+        var parameterCount = getArity(signature);
+        var matches = signature.endsWith("*") ? arity >= parameterCount - 1 : arity == parameterCount;
+        return matches ? Optional.of(toMember(declaringType)) : Optional.empty();
+    }
+
+    /**
+     * The number of parameters of a method descriptor, which starts with its parameters.
+     */
+    static int getArity(String descriptor) {
+        var arity = 0;
+        for (int i = 1; descriptor.charAt(i) != ')'; i++) {
+            var c = descriptor.charAt(i);
+            if (c == '[') {
+                continue;
+            }
+            if (c == 'L') {
+                i = descriptor.indexOf(';', i);
+            }
+            arity++;
+        }
+        return arity;
+    }
+
+    /**
+     * The type and its supertypes in the order their members are inherited: the superclasses first, then the
+     * interfaces breadth-first, then {@code java.lang.Object}.
+     *
+     * @return empty if the type or one of its supertypes is not indexed, so its members are not all known
+     */
+    private Optional<List<Integer>> getSupertypes(String typeName) {
+        var type = find(typeName);
+        if (type < 0) {
+            return Optional.empty();
+        }
+        var supertypes = new ArrayList<Integer>();
+        var interfaces = new ArrayDeque<Integer>();
+        var visited = new HashSet<Integer>();
+        var object = find(OBJECT);
+        for (var current = type; current != object; ) {
+            supertypes.add(current);
+            var direct = getEntry(current, 3);
+            var hasSuperclass = !isInterface(current) && getListSize(direct) > 0;
+            for (int i = hasSuperclass ? 1 : 0; i < getListSize(direct); i++) {
+                interfaces.add(find(getString(getListElement(direct, i))));
+            }
+            if (!hasSuperclass) {
+                break;
+            }
+            current = find(getString(getListElement(direct, 0)));
+            if (current < 0) {
+                return Optional.empty();
+            }
+        }
+        while (!interfaces.isEmpty()) {
+            var current = interfaces.poll();
+            if (current < 0) {
+                return Optional.empty();
+            }
+            if (current == object || !visited.add(current)) {
+                continue;
+            }
+            supertypes.add(current);
+            var direct = getEntry(current, 3);
+            for (int i = 0; i < getListSize(direct); i++) {
+                interfaces.add(find(getString(getListElement(direct, i))));
+            }
+        }
+        if (object >= 0) {
+            supertypes.add(object);
+        }
+        return Optional.of(supertypes);
+    }
+
+    private MemberResolver.ResolvedMember toMember(int type) {
+        var name = getString(getEntry(type, 0));
+        return new MemberResolver.ResolvedMember(name, name.substring(0, getEntry(type, 1)));
+    }
+
+    private boolean isInterface(int type) {
+        return (getEntry(type, 2) & INTERFACE) != 0;
+    }
+
+    private boolean findInList(int list, byte[] name) {
+        int low = 0, high = getListSize(list) - 1;
+        while (low <= high) {
+            var middle = (low + high) >>> 1;
+            var comparison = compare(getListElement(list, middle), name);
+            if (comparison < 0) {
+                low = middle + 1;
+            } else if (comparison > 0) {
+                high = middle - 1;
+            } else {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * @return the index of the first element of the sorted list that is not less than the name
+     */
+    private int findFirst(int list, byte[] name) {
+        int low = 0, high = getListSize(list);
+        while (low < high) {
+            var middle = (low + high) >>> 1;
+            if (compare(getListElement(list, middle), name) < 0) {
+                low = middle + 1;
+            } else {
+                high = middle;
+            }
+        }
+        return low;
+    }
+
+    /**
+     * @return the number of the type, or -1 if it is not indexed
+     */
+    private int find(String typeName) {
+        var name = typeName.getBytes(StandardCharsets.UTF_8);
+        int low = 0, high = typeCount - 1;
+        while (low <= high) {
+            var middle = (low + high) >>> 1;
+            var comparison = compare(getEntry(middle, 0), name);
+            if (comparison < 0) {
+                low = middle + 1;
+            } else if (comparison > 0) {
+                high = middle - 1;
+            } else {
+                return middle;
+            }
+        }
+        return -1;
+    }
+
+    private int getEntry(int type, int field) {
+        return buffer.getInt(typesStart + (type * ENTRY_INTS + field) * Integer.BYTES);
+    }
+
+    private int getListSize(int list) {
+        return buffer.getInt(listsStart + list);
+    }
+
+    private int getListElement(int list, int index) {
+        return buffer.getInt(listsStart + list + (index + 1) * Integer.BYTES);
+    }
+
+    /**
+     * Compares the string at the offset with the bytes as unsigned bytes, i.e. in the order of the code points.
+     */
+    private int compare(int string, byte[] bytes) {
+        var position = stringsStart + string;
+        var length = buffer.getInt(position);
+        var common = Math.min(length, bytes.length);
+        for (int i = 0; i < common; i++) {
+            var comparison = Integer.compare(buffer.get(position + Integer.BYTES + i) & 0xFF, bytes[i] & 0xFF);
+            if (comparison != 0) {
+                return comparison;
+            }
+        }
+        return Integer.compare(length, bytes.length);
+    }
+
+    private boolean startsWith(int string, byte[] prefix) {
+        var position = stringsStart + string;
+        if (buffer.getInt(position) < prefix.length) {
+            return false;
+        }
+        for (int i = 0; i < prefix.length; i++) {
+            if (buffer.get(position + Integer.BYTES + i) != prefix[i]) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private String getString(int string) {
+        var position = stringsStart + string;
+        var bytes = new byte[buffer.getInt(position)];
+        buffer.get(position + Integer.BYTES, bytes);
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+}
@@ -0,0 +1,39 @@
+package cz.cuni.mff.d3s;
+
+import com.github.javaparser.resolution.TypeSolver;
+import com.github.javaparser.resolution.declarations.ResolvedReferenceTypeDeclaration;
+import com.github.javaparser.resolution.model.SymbolReference;
+
+/**
+ * The root type solver, checking the deadline of the current resolution (see {@link ResolutionBudget}) before every
+ * type lookup. Every resolution looks up types, a long one usually a great many, so it is stopped soon after its
+ * deadline.
+ */
+public class BudgetedTypeSolver implements TypeSolver {
+    private final TypeSolver delegate;
+
+    /**
+     * @param delegate a solver without a parent, which becomes the parent of it, so that the lookups of its children
+     *                 go through this solver as well
+     */
+    public BudgetedTypeSolver(TypeSolver delegate) {
+        this.delegate = delegate;
+        delegate.setParent(this);
+    }
+
+    @Override
+    public TypeSolver getParent() {
+        return null;
+    }
+
+    @Override
+    public void setParent(TypeSolver parent) {
+        throw new UnsupportedOperationException("The budgeted solver is the root");
+    }
+
+    @Override
+    public SymbolReference<ResolvedReferenceTypeDeclaration> tryToSolveType(String name) {
+        ResolutionBudget.checkDeadline();
+        return delegate.tryToSolveType(name);
+    }
+}
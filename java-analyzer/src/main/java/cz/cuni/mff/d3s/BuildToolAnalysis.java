@@ -1,52 +1,75 @@
 package cz.cuni.mff.d3s;
 
-import com.google.common.collect.HashMultimap;
+import com.google.common.collect.LinkedHashMultimap;
 import com.google.common.collect.Multimap;
-import org.graphstream.graph.Graph;
-import org.graphstream.graph.Node;
-import org.graphstream.graph.implementations.SingleGraph;
+import com.google.common.collect.Multimaps;
 
-public class BuildToolAnalysis {
-    private final Multimap<String, String> projectReferences = HashMultimap.create();
+import java.io.IOException;
+import java.io.PrintWriter;
+import java.io.UncheckedIOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Optional;
 
-    private final Graph projectRelationships = new SingleGraph("Project dependencies");
+/**
+ * The mx suites of the repository and the dependencies between them. The GraphStream graph is only built when it is
+ * shown.
+ */
+public class BuildToolAnalysis {
+    private final List<SuiteModel> suites = new ArrayList<>();
+    private final Multimap<String, String> projectReferences = LinkedHashMultimap.create();
 
-    {
-        projectRelationships.setStrict(false);
-        projectRelationships.setAutoCreate(true);
-        projectRelationships.setAttribute("ui.stylesheet",
-                "node{\n" +
-                        "    size: 30px, 30px;\n" +
-                        "    fill-color: #f7f7f0;\n" +
-                        "    text-mode: normal; \n" +
-                        "}");
-        System.setProperty("org.graphstream.ui", "swing");
+    public void addSuite(SuiteModel suite) {
+        suites.add(suite);
+        for (var dependency : suite.getReferencedSuites()) {
+            addProjectDependency(suite.name(), dependency);
+        }
     }
 
     public void addProjectDependency(String projectName, String dependency) {
         projectReferences.put(projectName, dependency);
-        projectRelationships.addEdge(projectName + "-" + dependency, projectName, dependency);
     }
 
-    public void showProjectDependencies() {
-        for (Node node : projectRelationships) {
-            node.setAttribute("ui.label", node.getId());
+    public List<SuiteModel> getSuites() {
+        return suites;
+    }
+
+    public Multimap<String, String> getProjectDependencies() {
+        return Multimaps.unmodifiableMultimap(projectReferences);
+    }
+
+    public GraphAnalytics analyzeProjectDependencies() {
+        var symbols = new SymbolTable();
+        return new GraphAnalytics("Project dependencies", getRelation(symbols), symbols::name);
+    }
+
+    private IntRelation getRelation(SymbolTable symbols) {
+        var relation = new IntRelation();
+        for (var entry : projectReferences.entries()) {
+            relation.add(symbols.intern(entry.getKey()), symbols.intern(entry.getValue()));
         }
-        projectRelationships.display();
+        return relation;
+    }
+
+    public void showProjectDependencies() {
+        var symbols = new SymbolTable();
+        SourceAnalysis.toGraph("Project dependencies", getRelation(symbols), symbols).display();
     }
 
     public void printProjectDependencies() {
         // Print a PlantUML package diagram
-        StringBuilder builder = new StringBuilder();
-        builder.append("@startuml\n");
+        try {
+            var writer = GraphWriter.create(GraphFormat.PLANTUML, new PrintWriter(System.out), "Project dependencies", Optional.empty(), false);
+            exportProjectDependencies(writer);
+            writer.finish();
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    public void exportProjectDependencies(GraphWriter writer) {
         for (var entry : projectReferences.entries()) {
-            builder.append("[")
-                   .append(entry.getKey())
-                   .append("] --> [")
-                   .append(entry.getValue())
-                   .append("]\n");
+            writer.edge(entry.getKey(), entry.getValue());
         }
-        builder.append("@enduml");
-        System.out.println(builder);
     }
 }
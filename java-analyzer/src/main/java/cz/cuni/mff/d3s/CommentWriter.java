@@ -0,0 +1,104 @@
+package cz.cuni.mff.d3s;
+
+import java.io.BufferedOutputStream;
+import java.io.Closeable;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+
+/**
+ * Streams the comments of every source root into {@code <root>_comments.txt} while the units are processed, so no
+ * comment is kept in memory after its unit was consumed. Units must be added grouped by source root, which is the
+ * order of the analysis; the output of a root is closed when the first unit of the next root arrives. The file is
+ * written for every root with units, even if they have no comments, so no file of an earlier run is left behind.
+ * <p>
+ * Optionally also writes {@code <root>_comments.idx}, an index of the comments for searching them without parsing
+ * the sources again. It starts with the format version, followed by one record per file with comments:
+ * {@code true}, the path of the file relative to the root and the number of comments, each with its line, kind
+ * ({@link UnitFacts.Comment.Kind} ordinal) and the offset and length in bytes of its text in the text file.
+ * The index ends with {@code false}. Without the index, the index of an earlier run is deleted.
+ */
+public class CommentWriter implements Closeable {
+    private static final int INDEX_VERSION = 1;
+    private static final byte[] SEPARATOR = " has the following comment: ".getBytes(StandardCharsets.UTF_8);
+    private static final byte[] NEWLINE = System.lineSeparator().getBytes(StandardCharsets.UTF_8);
+
+    private final boolean writeIndex;
+    private Path currentRoot;
+    private byte[] currentRootName;
+    private OutputStream text;
+    private long textOffset;
+    private DataOutputStream index;
+
+    public CommentWriter(boolean writeIndex) {
+        this.writeIndex = writeIndex;
+    }
+
+    public void add(UnitFacts facts) throws IOException {
+        if (!facts.getSourceRoot().equals(currentRoot)) {
+            closeRoot();
+            currentRoot = facts.getSourceRoot();
+            currentRootName = currentRoot.toString().getBytes(StandardCharsets.UTF_8);
+            openRoot();
+        }
+        if (facts.getComments().isEmpty()) {
+            return;
+        }
+        if (index != null) {
+            index.writeBoolean(true);
+            UnitFacts.writeString(index, currentRoot.relativize(facts.getFile()).toString());
+            index.writeInt(facts.getComments().size());
+        }
+        for (var comment : facts.getComments()) {
+            var commentText = comment.text().getBytes(StandardCharsets.UTF_8);
+            text.write(currentRootName);
+            text.write(SEPARATOR);
+            var offset = textOffset + currentRootName.length + SEPARATOR.length;
+            text.write(commentText);
+            text.write(NEWLINE);
+            textOffset = offset + commentText.length + NEWLINE.length;
+            if (index != null) {
+                index.writeInt(comment.line());
+                index.writeByte(comment.kind().ordinal());
+                index.writeLong(offset);
+                index.writeInt(commentText.length);
+            }
+        }
+    }
+
+    @Override
+    public void close() throws IOException {
+        closeRoot();
+        currentRoot = null;
+    }
+
+    private void openRoot() throws IOException {
+        text = new BufferedOutputStream(Files.newOutputStream(Path.of(currentRoot + "_comments.txt")), 1 << 16);
+        textOffset = 0;
+        var indexFile = Path.of(currentRoot + "_comments.idx");
+        if (writeIndex) {
+            index = new DataOutputStream(new BufferedOutputStream(Files.newOutputStream(indexFile), 1 << 16));
+            index.writeInt(INDEX_VERSION);
+        } else {
+            Files.deleteIfExists(indexFile);
+        }
+    }
+
+    private void closeRoot() throws IOException {
+        try {
+            if (index != null) {
+                index.writeBoolean(false);
+                index.close();
+            }
+        } finally {
+            index = null;
+            if (text != null) {
+                text.close();
+                text = null;
+            }
+        }
+    }
+}
@@ -0,0 +1,276 @@
+package cz.cuni.mff.d3s;
+
+import org.eclipse.jgit.api.Git;
+import org.eclipse.jgit.diff.DiffEntry;
+import org.eclipse.jgit.diff.DiffFormatter;
+import org.eclipse.jgit.lib.ObjectId;
+import org.eclipse.jgit.lib.ObjectReader;
+import org.eclipse.jgit.lib.Repository;
+import org.eclipse.jgit.revwalk.RevCommit;
+import org.eclipse.jgit.revwalk.RevSort;
+import org.eclipse.jgit.revwalk.RevTree;
+import org.eclipse.jgit.revwalk.RevWalk;
+import org.eclipse.jgit.treewalk.TreeWalk;
+import org.eclipse.jgit.treewalk.filter.AndTreeFilter;
+import org.eclipse.jgit.treewalk.filter.PathFilterGroup;
+import org.eclipse.jgit.treewalk.filter.PathSuffixFilter;
+import org.eclipse.jgit.treewalk.filter.TreeFilter;
+import org.eclipse.jgit.util.io.DisabledOutputStream;
+
+import java.io.IOException;
+import java.io.PrintWriter;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Follows the class and package references through a range of commits of a git repository. The Java sources of the
+ * analyzed projects at the first revision are written to a scratch directory and analyzed fully; then the changes of
+ * every commit are read from the object store and applied to the directory, and only the changed files and the files
+ * depending on them are analyzed again (see {@link IncrementalAnalysis}). The added and removed references of every
+ * commit are written to {@code drift.csv}.
+ * <p>
+ * Merge commits are compared to their first parent, and only the first-parent history of the range is followed, so
+ * the changes of a merged branch appear in its merge commit.
+ */
+public class DriftAnalysis {
+    private final Path repository;
+    private final Options options;
+    private final RunReport report;
+    private final TreeFilter sourceFilter;
+
+    private record Edge(String from, String to) {
+    }
+
+    private record Graph(Map<Edge, Integer> classReferences, Map<Edge, Integer> packageReferences) {
+    }
+
+    public DriftAnalysis(Path repository, Options options, RunReport report) {
+        this.repository = repository;
+        this.options = options;
+        this.report = report;
+        sourceFilter = AndTreeFilter.create(PathFilterGroup.createFromStrings(Runner.ANALYZED_PROJECTS), PathSuffixFilter.create(".java"));
+    }
+
+    /**
+     * @param revisions {@code <from>..<to>}, any revisions git understands, e.g. {@code HEAD~100..HEAD}
+     */
+    public void run(String revisions) throws IOException {
+        var separator = revisions.indexOf("..");
+        if (separator < 0) {
+            throw new IllegalArgumentException("Revisions must be a range <from>..<to>: " + revisions);
+        }
+        var scratch = Files.createTempDirectory("drift");
+        try (var git = Git.open(repository.toFile());
+             var walk = new RevWalk(git.getRepository())) {
+            var repo = git.getRepository();
+            var from = walk.parseCommit(resolve(repo, revisions.substring(0, separator)));
+            var to = walk.parseCommit(resolve(repo, revisions.substring(separator + 2)));
+            var commits = getCommits(walk, from, to);
+            System.out.println("Analyzing " + commits.size() + " commits after " + from.abbreviate(10).name());
+
+            try (var phase = report.startPhase("checkout")) {
+                phase.addItems(writeTree(repo, from, scratch));
+            }
+            var typeIndex = BinaryTypeIndex.load(options);
+            var analyzer = new Analyzer(scratch, options.getParallelism(), List.of(Runner.ANALYZED_PROJECTS), typeIndex,
+                    options.getSolverCacheSize());
+            var incrementalAnalysis = new IncrementalAnalysis(analyzer, options);
+            var graph = getGraph(Runner.runSourceAnalysis(analyzer, options, report, incrementalAnalysis::add));
+
+            Files.createDirectories(options.getOutputDirectory());
+            var file = options.getOutputDirectory().resolve("drift.csv");
+            System.out.println("Writing " + file);
+            try (var phase = report.startPhase("drift");
+                 var out = new PrintWriter(Files.newBufferedWriter(file, StandardCharsets.UTF_8))) {
+                out.println("commit,time,graph,change,source,target,weight");
+                for (var commit : commits) {
+                    var start = System.nanoTime();
+                    // A commit without parents adds all its files
+                    var parentTree = commit.getParentCount() > 0 ? walk.parseCommit(commit.getParent(0)).getTree() : null;
+                    var changedFiles = applyChanges(repo, parentTree, commit, scratch);
+                    var analyzedFiles = 0;
+                    var next = graph;
+                    if (!changedFiles.isEmpty()) {
+                        if (changedFiles.stream().anyMatch(changed -> Files.exists(changed) && !incrementalAnalysis.isInSourceRoot(changed))) {
+                            // A new source root, find the roots again
+                            analyzer = new Analyzer(scratch, options.getParallelism(), List.of(Runner.ANALYZED_PROJECTS), typeIndex,
+                                    options.getSolverCacheSize());
+                            incrementalAnalysis.setSourceRoots(analyzer);
+                        } else {
+                            // The type solvers of the previous commit cached the old content of the files
+                            analyzer = analyzer.withFreshTypeSolvers();
+                        }
+                        analyzedFiles = incrementalAnalysis.update(analyzer, changedFiles);
+                        next = getGraph(incrementalAnalysis.buildModel());
+                    }
+                    var time = Instant.ofEpochSecond(commit.getCommitTime()).toString();
+                    var classDelta = writeDelta(out, commit, time, "class", graph.classReferences(), next.classReferences());
+                    var packageDelta = writeDelta(out, commit, time, "package", graph.packageReferences(), next.packageReferences());
+                    graph = next;
+                    phase.addItems(1);
+                    System.out.printf("%s %s: %d files changed, %d analyzed, classes +%d -%d, packages +%d -%d, %d ms%n",
+                            commit.abbreviate(10).name(), commit.getShortMessage(), changedFiles.size(), analyzedFiles,
+                            classDelta[0], classDelta[1], packageDelta[0], packageDelta[1], (System.nanoTime() - start) / 1_000_000);
+                }
+            }
+        } finally {
+            deleteRecursively(scratch);
+        }
+    }
+
+    private static ObjectId resolve(Repository repo, String revision) throws IOException {
+        var id = repo.resolve(revision);
+        if (id == null) {
+            throw new IllegalArgumentException("Unknown revision: " + revision);
+        }
+        return id;
+    }
+
+    /**
+     * The first-parent history after {@code from} up to {@code to}, oldest first.
+     */
+    private static List<RevCommit> getCommits(RevWalk walk, RevCommit from, RevCommit to) throws IOException {
+        walk.reset();
+        walk.setFirstParent(true);
+        walk.sort(RevSort.TOPO, true);
+        walk.sort(RevSort.REVERSE, true);
+        walk.markStart(to);
+        walk.markUninteresting(from);
+        var commits = new ArrayList<RevCommit>();
+        for (var commit : walk) {
+            commits.add(commit);
+        }
+        walk.reset();
+        return commits;
+    }
+
+    /**
+     * Writes the analyzed Java sources of the commit to the directory.
+     *
+     * @return the number of written files
+     */
+    private int writeTree(Repository repo, RevCommit commit, Path directory) throws IOException {
+        var files = 0;
+        try (var treeWalk = new TreeWalk(repo);
+             var reader = repo.newObjectReader()) {
+            treeWalk.addTree(commit.getTree());
+            treeWalk.setRecursive(true);
+            treeWalk.setFilter(sourceFilter);
+            while (treeWalk.next()) {
+                writeBlob(reader, treeWalk.getObjectId(0), directory.resolve(treeWalk.getPathString()));
+                files++;
+            }
+        }
+        return files;
+    }
+
+    /**
+     * Applies the changes of the commit to the analyzed Java sources in the directory.
+     *
+     * @return the changed files in the directory, including the deleted ones
+     */
+    private Set<Path> applyChanges(Repository repo, RevTree parentTree, RevCommit commit, Path directory) throws IOException {
+        var changedFiles = new HashSet<Path>();
+        try (var diff = new DiffFormatter(DisabledOutputStream.INSTANCE);
+             var reader = repo.newObjectReader()) {
+            diff.setRepository(repo);
+            diff.setPathFilter(sourceFilter);
+            for (var entry : diff.scan(parentTree, commit.getTree())) {
+                if (entry.getChangeType() == DiffEntry.ChangeType.DELETE || entry.getChangeType() == DiffEntry.ChangeType.RENAME) {
+                    var file = directory.resolve(entry.getOldPath());
+                    Files.deleteIfExists(file);
+                    changedFiles.add(file);
+                }
+                if (entry.getChangeType() != DiffEntry.ChangeType.DELETE) {
+                    var file = directory.resolve(entry.getNewPath());
+                    writeBlob(reader, entry.getNewId().toObjectId(), file);
+                    changedFiles.add(file);
+                }
+            }
+        }
+        return changedFiles;
+    }
+
+    private static void writeBlob(ObjectReader reader, ObjectId id, Path file) throws IOException {
+        Files.createDirectories(file.getParent());
+        Files.write(file, reader.open(id).getBytes());
+    }
+
+    private static Graph getGraph(SourceAnalysis sources) {
+        var classReferences = new HashMap<Edge, Integer>();
+        var packageReferences = new HashMap<Edge, Integer>();
+        sources.forEachClassReference((from, to, counts) -> classReferences.put(new Edge(from, to), getWeight(counts)));
+        sources.forEachPackageReference((from, to, counts) -> packageReferences.put(new Edge(from, to), getWeight(counts)));
+        return new Graph(classReferences, packageReferences);
+    }
+
+    private static int getWeight(int[] counts) {
+        var weight = 0;
+        for (var count : counts) {
+            weight += count;
+        }
+        return weight;
+    }
+
+    /**
+     * Writes the references only in one of the graphs, with their weight in the graph they are in.
+     *
+     * @return the number of added and removed references
+     */
+    private static int[] writeDelta(PrintWriter out, RevCommit commit, String time, String graph,
+                                    Map<Edge, Integer> before, Map<Edge, Integer> after) {
+        if (before == after) {
+            return new int[2];
+        }
+        var added = getMissing(after, before);
+        var removed = getMissing(before, after);
+        for (var entry : added) {
+            writeRow(out, commit, time, graph, "added", entry);
+        }
+        for (var entry : removed) {
+            writeRow(out, commit, time, graph, "removed", entry);
+        }
+        return new int[]{added.size(), removed.size()};
+    }
+
+    private static List<Map.Entry<Edge, Integer>> getMissing(Map<Edge, Integer> edges, Map<Edge, Integer> other) {
+        var missing = new ArrayList<Map.Entry<Edge, Integer>>();
+        for (var entry : edges.entrySet()) {
+            if (!other.containsKey(entry.getKey())) {
+                missing.add(entry);
+            }
+        }
+        missing.sort(Comparator.comparing((Map.Entry<Edge, Integer> entry) -> entry.getKey().from())
+                .thenComparing(entry -> entry.getKey().to()));
+        return missing;
+    }
+
+    private static void writeRow(PrintWriter out, RevCommit commit, String time, String graph, String change, Map.Entry<Edge, Integer> entry) {
+        out.println(commit.name() + "," + time + "," + graph + "," + change + "," + quote(entry.getKey().from()) + ","
+                + quote(entry.getKey().to()) + "," + entry.getValue());
+    }
+
+    private static String quote(String value) {
+        if (value.contains(",") || value.contains("\"") || value.contains("\n")) {
+            return "\"" + value.replace("\"", "\"\"") + "\"";
+        }
+        return value;
+    }
+
+    private static void deleteRecursively(Path directory) throws IOException {
+        try (var paths = Files.walk(directory)) {
+            for (var path : paths.sorted(Comparator.reverseOrder()).toList()) {
+                Files.delete(path);
+            }
+        }
+    }
+}
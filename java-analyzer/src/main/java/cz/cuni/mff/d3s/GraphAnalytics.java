@@ -0,0 +1,505 @@
+package cz.cuni.mff.d3s;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.function.IntFunction;
+
+/**
+ * Structural analysis of a dependency graph given as an {@link IntRelation}: strongly connected components (cycles),
+ * topological layers, fan-in and fan-out, and the number of transitive dependencies and dependents of every node.
+ * <p>
+ * The nodes are renumbered densely and the edges kept in compressed adjacency arrays, so the analysis needs a few
+ * int arrays per node and edge. The components are found by an iterative Tarjan's algorithm, which numbers them in
+ * reverse topological order (every edge between two components goes to a lower number), so the layers and the
+ * transitive closure are computed in a single pass over the components each. Self references (e.g. of a package to
+ * itself) are ignored.
+ */
+public class GraphAnalytics {
+    // Bits of the closure computed at once are limited to about 64 MB
+    private static final long CLOSURE_WORDS = 1 << 23;
+    private static final int CYCLE_MEMBERS_SHOWN = 8;
+
+    private final String title;
+    private final String[] names;
+    private final Map<String, Integer> nodeIndex;
+    private final int edgeCount;
+    // Compressed adjacency: the targets of node v are targets[offsets[v]] .. targets[offsets[v + 1] - 1]
+    private final int[] offsets;
+    private final int[] targets;
+    private final int[] fanIn;
+
+    private final int componentCount;
+    private final int[] componentOf;
+    // Nodes sorted by component: the members of component c are members[memberOffsets[c]] .. members[memberOffsets[c + 1] - 1]
+    private final int[] memberOffsets;
+    private final int[] members;
+    private final int[] layers;
+    private final int layerCount;
+
+    private long[] transitiveDependencies;
+    private long[] transitiveDependents;
+
+    /**
+     * A cycle of the graph, i.e. a strongly connected component with more than one node.
+     *
+     * @param nodes         the nodes of the component, the most connected first
+     * @param internalEdges number of edges between the nodes of the component
+     * @param shortestCycle a shortest cycle through the first node, starting and ending with it
+     */
+    public record Cycle(List<String> nodes, int internalEdges, List<String> shortestCycle) {
+    }
+
+    /**
+     * @param relation edges between ids of the symbol table
+     * @param names    names of the ids
+     */
+    public GraphAnalytics(String title, IntRelation relation, IntFunction<String> names) {
+        this.title = title;
+        // Renumber the ids that have an edge to 0 .. n - 1
+        var edges = new int[relation.size() * 2];
+        var edgeIndex = new int[1];
+        var maxId = new int[]{-1};
+        relation.forEach((from, to) -> {
+            if (from != to) {
+                edges[edgeIndex[0]++] = from;
+                edges[edgeIndex[0]++] = to;
+                maxId[0] = Math.max(maxId[0], Math.max(from, to));
+            }
+        });
+        var localIds = new int[maxId[0] + 1];
+        Arrays.fill(localIds, -1);
+        var nodeNames = new ArrayList<String>();
+        for (int i = 0; i < edgeIndex[0]; i++) {
+            if (localIds[edges[i]] < 0) {
+                localIds[edges[i]] = nodeNames.size();
+                nodeNames.add(names.apply(edges[i]));
+            }
+            edges[i] = localIds[edges[i]];
+        }
+        this.names = nodeNames.toArray(String[]::new);
+        var n = this.names.length;
+        edgeCount = edgeIndex[0] / 2;
+        nodeIndex = new HashMap<>(n * 2);
+        for (int v = 0; v < n; v++) {
+            nodeIndex.put(this.names[v], v);
+        }
+
+        offsets = new int[n + 1];
+        fanIn = new int[n];
+        for (int i = 0; i < edgeIndex[0]; i += 2) {
+            offsets[edges[i] + 1]++;
+            fanIn[edges[i + 1]]++;
+        }
+        for (int v = 0; v < n; v++) {
+            offsets[v + 1] += offsets[v];
+        }
+        targets = new int[edgeCount];
+        var next = Arrays.copyOf(offsets, n);
+        for (int i = 0; i < edgeIndex[0]; i += 2) {
+            targets[next[edges[i]]++] = edges[i + 1];
+        }
+
+        componentOf = new int[n];
+        componentCount = findComponents();
+        memberOffsets = new int[componentCount + 1];
+        members = new int[n];
+        for (int v = 0; v < n; v++) {
+            memberOffsets[componentOf[v] + 1]++;
+        }
+        for (int c = 0; c < componentCount; c++) {
+            memberOffsets[c + 1] += memberOffsets[c];
+        }
+        var nextMember = Arrays.copyOf(memberOffsets, componentCount);
+        for (int v = 0; v < n; v++) {
+            members[nextMember[componentOf[v]]++] = v;
+        }
+
+        layers = new int[componentCount];
+        var maxLayer = -1;
+        for (int c = 0; c < componentCount; c++) {
+            for (int m = memberOffsets[c]; m < memberOffsets[c + 1]; m++) {
+                var v = members[m];
+                for (int e = offsets[v]; e < offsets[v + 1]; e++) {
+                    var d = componentOf[targets[e]];
+                    if (d != c) {
+                        layers[c] = Math.max(layers[c], layers[d] + 1);
+                    }
+                }
+            }
+            maxLayer = Math.max(maxLayer, layers[c]);
+        }
+        layerCount = maxLayer + 1;
+    }
+
+    /**
+     * Tarjan's algorithm with an explicit stack instead of recursion, since dependency chains in large graphs are
+     * deeper than the thread stack allows.
+     *
+     * @return the number of components
+     */
+    private int findComponents() {
+        var n = names.length;
+        var index = new int[n];
+        Arrays.fill(index, -1);
+        var lowLink = new int[n];
+        var onStack = new boolean[n];
+        var stack = new int[n];
+        var stackSize = 0;
+        var callStack = new int[n];
+        var nextEdge = new int[n];
+        var depth = 0;
+        var counter = 0;
+        var components = 0;
+        for (int root = 0; root < n; root++) {
+            if (index[root] >= 0) {
+                continue;
+            }
+            index[root] = lowLink[root] = counter++;
+            stack[stackSize++] = root;
+            onStack[root] = true;
+            callStack[depth] = root;
+            nextEdge[depth++] = offsets[root];
+            while (depth > 0) {
+                var v = callStack[depth - 1];
+                if (nextEdge[depth - 1] < offsets[v + 1]) {
+                    var w = targets[nextEdge[depth - 1]++];
+                    if (index[w] < 0) {
+                        index[w] = lowLink[w] = counter++;
+                        stack[stackSize++] = w;
+                        onStack[w] = true;
+                        callStack[depth] = w;
+                        nextEdge[depth++] = offsets[w];
+                    } else if (onStack[w]) {
+                        lowLink[v] = Math.min(lowLink[v], index[w]);
+                    }
+                    continue;
+                }
+                depth--;
+                if (lowLink[v] == index[v]) {
+                    int w;
+                    do {
+                        w = stack[--stackSize];
+                        onStack[w] = false;
+                        componentOf[w] = components;
+                    } while (w != v);
+                    components++;
+                }
+                if (depth > 0) {
+                    var parent = callStack[depth - 1];
+                    lowLink[parent] = Math.min(lowLink[parent], lowLink[v]);
+                }
+            }
+        }
+        return components;
+    }
+
+    public int getNodeCount() {
+        return names.length;
+    }
+
+    public int getEdgeCount() {
+        return edgeCount;
+    }
+
+    public int getComponentCount() {
+        return componentCount;
+    }
+
+    /**
+     * Number of topological layers of the graph with every cycle collapsed into one node.
+     */
+    public int getLayerCount() {
+        return layerCount;
+    }
+
+    /**
+     * @return the layer of the node: 0 if it has no dependencies outside its cycle, otherwise one more than the
+     * highest layer of its dependencies, or -1 if the node has no edge
+     */
+    public int getLayer(String name) {
+        var v = indexOf(name);
+        return v < 0 ? -1 : layers[componentOf[v]];
+    }
+
+    /**
+     * Cycles of the graph, the largest (then the most densely connected) first.
+     */
+    public List<Cycle> getCycles(int limit) {
+        var cyclic = new ArrayList<Integer>();
+        var internalEdges = new int[componentCount];
+        for (int c = 0; c < componentCount; c++) {
+            if (memberOffsets[c + 1] - memberOffsets[c] > 1) {
+                cyclic.add(c);
+                for (int m = memberOffsets[c]; m < memberOffsets[c + 1]; m++) {
+                    internalEdges[c] += getInternalDegree(members[m]);
+                }
+            }
+        }
+        cyclic.sort(Comparator.<Integer>comparingInt(c -> memberOffsets[c + 1] - memberOffsets[c])
+                .thenComparingInt(c -> internalEdges[c]).reversed());
+        var cycles = new ArrayList<Cycle>();
+        for (var c : cyclic.subList(0, Math.min(limit, cyclic.size()))) {
+            var componentMembers = new ArrayList<Integer>();
+            for (int m = memberOffsets[c]; m < memberOffsets[c + 1]; m++) {
+                componentMembers.add(members[m]);
+            }
+            componentMembers.sort(Comparator.<Integer>comparingInt(this::getInternalDegree).reversed()
+                    .thenComparing(v -> names[v]));
+            var nodes = new ArrayList<String>();
+            for (var v : componentMembers) {
+                nodes.add(names[v]);
+            }
+            cycles.add(new Cycle(nodes, internalEdges[c], getShortestCycle(componentMembers.get(0))));
+        }
+        return cycles;
+    }
+
+    private int getInternalDegree(int v) {
+        var degree = 0;
+        for (int e = offsets[v]; e < offsets[v + 1]; e++) {
+            if (componentOf[targets[e]] == componentOf[v]) {
+                degree++;
+            }
+        }
+        return degree;
+    }
+
+    /**
+     * Breadth-first search within the component of the node for the shortest way back to it.
+     */
+    private List<String> getShortestCycle(int start) {
+        var component = componentOf[start];
+        var parent = new int[names.length];
+        Arrays.fill(parent, -1);
+        var queue = new int[memberOffsets[component + 1] - memberOffsets[component]];
+        int head = 0, tail = 0;
+        queue[tail++] = start;
+        parent[start] = start;
+        var last = -1;
+        search:
+        while (head < tail) {
+            var v = queue[head++];
+            for (int e = offsets[v]; e < offsets[v + 1]; e++) {
+                var w = targets[e];
+                if (w == start) {
+                    last = v;
+                    break search;
+                }
+                if (componentOf[w] == component && parent[w] < 0) {
+                    parent[w] = v;
+                    queue[tail++] = w;
+                }
+            }
+        }
+        var cycle = new ArrayList<String>();
+        cycle.add(names[start]);
+        for (var v = last; v != start; v = parent[v]) {
+            cycle.add(names[v]);
+        }
+        cycle.add(names[start]);
+        // Collected backwards from the end of the cycle
+        Collections.reverse(cycle);
+        return cycle;
+    }
+
+    public int getFanIn(String name) {
+        var v = indexOf(name);
+        return v < 0 ? 0 : fanIn[v];
+    }
+
+    public int getFanOut(String name) {
+        var v = indexOf(name);
+        return v < 0 ? 0 : offsets[v + 1] - offsets[v];
+    }
+
+    /**
+     * Number of nodes the node depends on directly or indirectly, not counting itself.
+     */
+    public long getTransitiveDependencyCount(String name) {
+        var v = indexOf(name);
+        return v < 0 ? 0 : getTransitiveDependencies()[v];
+    }
+
+    /**
+     * Number of nodes that depend on the node directly or indirectly, not counting itself.
+     */
+    public long getTransitiveDependentCount(String name) {
+        var v = indexOf(name);
+        return v < 0 ? 0 : getTransitiveDependents()[v];
+    }
+
+    private synchronized long[] getTransitiveDependencies() {
+        if (transitiveDependencies == null) {
+            transitiveDependencies = countReachable(false);
+        }
+        return transitiveDependencies;
+    }
+
+    private synchronized long[] getTransitiveDependents() {
+        if (transitiveDependents == null) {
+            transitiveDependents = countReachable(true);
+        }
+        return transitiveDependents;
+    }
+
+    /**
+     * Counts the nodes reachable from every node using bit sets over the nodes ordered by component, so a component
+     * reaching another one is a contiguous range of bits. The closure of the condensed graph is built in reverse
+     * topological order as the union of the closures of the successors. When the bit sets of all components do not
+     * fit into {@link #CLOSURE_WORDS}, the columns are processed in blocks that do, and the counts are summed.
+     *
+     * @param reversed count the nodes that reach every node instead
+     */
+    private long[] countReachable(boolean reversed) {
+        var successors = condense(reversed);
+        var successorOffsets = successors[0];
+        var successorTargets = successors[1];
+        var n = names.length;
+        var reachable = new long[componentCount];
+        var blockWords = (int) Math.max(1, Math.min((n + 63) / 64, CLOSURE_WORDS / Math.max(1, componentCount)));
+        var blockBits = blockWords * 64;
+        var bits = new long[componentCount * blockWords];
+        // Words of every row that may be non-zero, so sparse rows are not copied whole
+        var firstWord = new int[componentCount];
+        var endWord = new int[componentCount];
+        for (int blockStart = 0; blockStart < n; blockStart += blockBits) {
+            var blockEnd = Math.min(n, blockStart + blockBits);
+            Arrays.fill(bits, 0);
+            Arrays.fill(firstWord, blockWords);
+            Arrays.fill(endWord, 0);
+            for (int i = 0; i < componentCount; i++) {
+                // Tarjan numbers the components so that every dependency has a lower number than its dependents
+                var c = reversed ? componentCount - 1 - i : i;
+                var row = c * blockWords;
+                for (int e = successorOffsets[c]; e < successorOffsets[c + 1]; e++) {
+                    var d = successorTargets[e];
+                    var successorRow = d * blockWords;
+                    for (int w = firstWord[d]; w < endWord[d]; w++) {
+                        bits[row + w] |= bits[successorRow + w];
+                    }
+                    firstWord[c] = Math.min(firstWord[c], firstWord[d]);
+                    endWord[c] = Math.max(endWord[c], endWord[d]);
+                    var from = Math.max(memberOffsets[d], blockStart) - blockStart;
+                    var to = Math.min(memberOffsets[d + 1], blockEnd) - blockStart;
+                    if (from < to) {
+                        setRange(bits, row, from, to);
+                        firstWord[c] = Math.min(firstWord[c], from >>> 6);
+                        endWord[c] = Math.max(endWord[c], ((to - 1) >>> 6) + 1);
+                    }
+                }
+                for (int w = firstWord[c]; w < endWord[c]; w++) {
+                    reachable[c] += Long.bitCount(bits[row + w]);
+                }
+            }
+        }
+        var counts = new long[n];
+        for (int v = 0; v < n; v++) {
+            var c = componentOf[v];
+            // The other nodes of its cycle are reachable too
+            counts[v] = reachable[c] + memberOffsets[c + 1] - memberOffsets[c] - 1;
+        }
+        return counts;
+    }
+
+    private static void setRange(long[] bits, int row, int from, int to) {
+        for (int bit = from; bit < to; bit++) {
+            bits[row + (bit >>> 6)] |= 1L << bit;
+        }
+    }
+
+    /**
+     * @return offsets and targets of the edges between components, without duplicates
+     */
+    private int[][] condense(boolean reversed) {
+        var lastSource = new int[componentCount];
+        Arrays.fill(lastSource, -1);
+        var counts = new int[componentCount + 1];
+        var pairs = new int[edgeCount * 2];
+        var pairCount = 0;
+        for (int c = 0; c < componentCount; c++) {
+            for (int m = memberOffsets[c]; m < memberOffsets[c + 1]; m++) {
+                var v = members[m];
+                for (int e = offsets[v]; e < offsets[v + 1]; e++) {
+                    var d = componentOf[targets[e]];
+                    if (d != c && lastSource[d] != c) {
+                        lastSource[d] = c;
+                        var from = reversed ? d : c;
+                        pairs[pairCount++] = from;
+                        pairs[pairCount++] = reversed ? c : d;
+                        counts[from + 1]++;
+                    }
+                }
+            }
+        }
+        for (int c = 0; c < componentCount; c++) {
+            counts[c + 1] += counts[c];
+        }
+        var condensedTargets = new int[pairCount / 2];
+        var next = Arrays.copyOf(counts, componentCount);
+        for (int i = 0; i < pairCount; i += 2) {
+            condensedTargets[next[pairs[i]]++] = pairs[i + 1];
+        }
+        return new int[][]{counts, condensedTargets};
+    }
+
+    private int indexOf(String name) {
+        return nodeIndex.getOrDefault(name, -1);
+    }
+
+    /**
+     * Prints the size of the graph, its worst cycles and the nodes with the highest fan-in, fan-out and number of
+     * transitive dependents.
+     */
+    public void printReport(int limit) {
+        var cycles = getCycles(limit);
+        var cyclicComponents = 0;
+        var nodesInCycles = 0;
+        for (int c = 0; c < componentCount; c++) {
+            var size = memberOffsets[c + 1] - memberOffsets[c];
+            if (size > 1) {
+                cyclicComponents++;
+                nodesInCycles += size;
+            }
+        }
+        System.out.println(title + ":");
+        System.out.printf(Locale.ROOT, "%d nodes, %d edges, %d cycles containing %d nodes, %d layers%n", names.length,
+                edgeCount, cyclicComponents, nodesInCycles, layerCount);
+        for (int i = 0; i < cycles.size(); i++) {
+            var cycle = cycles.get(i);
+            var shown = cycle.nodes().subList(0, Math.min(CYCLE_MEMBERS_SHOWN, cycle.nodes().size()));
+            System.out.printf(Locale.ROOT, "Cycle %d: %d nodes, %d edges: %s%s%n", i + 1, cycle.nodes().size(),
+                    cycle.internalEdges(), String.join(", ", shown), shown.size() < cycle.nodes().size() ? ", ..." : "");
+            System.out.println("\tShortest: " + String.join(" -> ", cycle.shortestCycle()));
+        }
+        var dependencies = getTransitiveDependencies();
+        var dependents = getTransitiveDependents();
+        var outDegrees = new long[names.length];
+        var inDegrees = new long[names.length];
+        for (int v = 0; v < names.length; v++) {
+            outDegrees[v] = offsets[v + 1] - offsets[v];
+            inDegrees[v] = fanIn[v];
+        }
+        printRanking("Fan-in", inDegrees, limit);
+        printRanking("Fan-out", outDegrees, limit);
+        printRanking("Transitive dependents", dependents, limit);
+        printRanking("Transitive dependencies", dependencies, limit);
+    }
+
+    private void printRanking(String title, long[] values, int limit) {
+        var ranked = new ArrayList<Integer>();
+        for (int v = 0; v < names.length; v++) {
+            ranked.add(v);
+        }
+        ranked.sort(Comparator.<Integer>comparingLong(v -> values[v]).reversed().thenComparing(v -> names[v]));
+        System.out.println(title + ":");
+        for (var v : ranked.subList(0, Math.min(limit, ranked.size()))) {
+            System.out.printf(Locale.ROOT, "\t%d %s (layer %d)%n", values[v], names[v], layers[componentOf[v]]);
+        }
+    }
+}
@@ -0,0 +1,27 @@
+package cz.cuni.mff.d3s;
+
+public enum GraphFormat {
+    DOT("dot"),
+    GRAPHML("graphml"),
+    CSV("csv"),
+    PLANTUML("puml");
+
+    private final String extension;
+
+    GraphFormat(String extension) {
+        this.extension = extension;
+    }
+
+    public String getExtension() {
+        return extension;
+    }
+
+    public static GraphFormat parse(String name) {
+        for (var format : values()) {
+            if (format.name().equalsIgnoreCase(name) || format.extension.equalsIgnoreCase(name)) {
+                return format;
+            }
+        }
+        throw new IllegalArgumentException("Unknown graph format: " + name);
+    }
+}
@@ -0,0 +1,274 @@
+package cz.cuni.mff.d3s;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Optional;
+
+/**
+ * Streams the edges of a graph into a text format as they are produced, without building the document in memory.
+ * If a prefix is given, only edges between nodes starting with it are written (or only the edges to such nodes, if
+ * the sources are not names the prefix applies to, see {@link #withUnprefixedSources()}). The edges of a weighted graph carry
+ * their total weight and the count of every {@link ReferenceKind}.
+ */
+public abstract class GraphWriter implements Closeable {
+    protected static final ReferenceKind[] KINDS = ReferenceKind.values();
+
+    protected final Writer out;
+    protected final boolean weighted;
+    private final Optional<String> prefix;
+    private boolean prefixedSources = true;
+
+    protected GraphWriter(Writer out, Optional<String> prefix, boolean weighted) {
+        this.out = out;
+        this.prefix = prefix;
+        this.weighted = weighted;
+    }
+
+    public static GraphWriter open(GraphFormat format, Path file, String title, Optional<String> prefix, boolean weighted) throws IOException {
+        return create(format, Files.newBufferedWriter(file, StandardCharsets.UTF_8), title, prefix, weighted);
+    }
+
+    public static GraphWriter create(GraphFormat format, Writer out, String title, Optional<String> prefix, boolean weighted) throws IOException {
+        var writer = switch (format) {
+            case DOT -> new DotWriter(out, prefix, weighted);
+            case GRAPHML -> new GraphMlWriter(out, prefix, weighted);
+            case CSV -> new CsvWriter(out, prefix, weighted);
+            case PLANTUML -> new PlantUmlWriter(out, prefix, weighted);
+        };
+        writer.writeHeader(title);
+        return writer;
+    }
+
+    /**
+     * Applies the prefix to the targets of the edges only, e.g. when the sources are projects and the targets packages.
+     */
+    public GraphWriter withUnprefixedSources() {
+        prefixedSources = false;
+        return this;
+    }
+
+    public void edge(String from, String to) {
+        edge(from, to, new int[KINDS.length]);
+    }
+
+    /**
+     * @param counts number of references of every kind, indexed by {@link ReferenceKind#ordinal()}
+     */
+    public void edge(String from, String to, int[] counts) {
+        if (prefix.isPresent() && !((!prefixedSources || from.startsWith(prefix.get())) && to.startsWith(prefix.get()))) {
+            return;
+        }
+        try {
+            writeEdge(from, to, counts);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    /**
+     * Completes the document and flushes it, but leaves the underlying writer open (e.g. for the standard output).
+     */
+    public void finish() throws IOException {
+        writeFooter();
+        out.flush();
+    }
+
+    @Override
+    public void close() throws IOException {
+        try {
+            finish();
+        } finally {
+            out.close();
+        }
+    }
+
+    protected abstract void writeHeader(String title) throws IOException;
+
+    /**
+     * @param counts the counts of the edge, only meaningful if the graph is weighted
+     */
+    protected abstract void writeEdge(String from, String to, int[] counts) throws IOException;
+
+    protected abstract void writeFooter() throws IOException;
+
+    protected static int getWeight(int[] counts) {
+        var weight = 0;
+        for (var count : counts) {
+            weight += count;
+        }
+        return weight;
+    }
+
+    private static class DotWriter extends GraphWriter {
+        DotWriter(Writer out, Optional<String> prefix, boolean weighted) {
+            super(out, prefix, weighted);
+        }
+
+        @Override
+        protected void writeHeader(String title) throws IOException {
+            out.write("digraph " + quote(title) + " {\n");
+        }
+
+        @Override
+        protected void writeEdge(String from, String to, int[] counts) throws IOException {
+            out.write("    " + quote(from) + " -> " + quote(to));
+            if (weighted) {
+                var weight = getWeight(counts);
+                out.write(" [weight=" + weight + ", label=" + weight);
+                for (var kind : KINDS) {
+                    out.write(", " + kind.getLabel() + "=" + counts[kind.ordinal()]);
+                }
+                out.write("]");
+            }
+            out.write(";\n");
+        }
+
+        @Override
+        protected void writeFooter() throws IOException {
+            out.write("}\n");
+        }
+
+        private static String quote(String id) {
+            return "\"" + id.replace("\\", "\\\\").replace("\"", "\\\"") + "\"";
+        }
+    }
+
+    /**
+     * Ids in GraphML are XML name tokens, which names with e.g. {@code /} or {@code $} are not, so nodes are numbered
+     * in the order they appear and their names are the {@code label} data.
+     */
+    private static class GraphMlWriter extends GraphWriter {
+        // GraphML readers expect a node element before the first edge that uses it
+        private final Map<String, String> nodeIds = new HashMap<>();
+
+        GraphMlWriter(Writer out, Optional<String> prefix, boolean weighted) {
+            super(out, prefix, weighted);
+        }
+
+        @Override
+        protected void writeHeader(String title) throws IOException {
+            out.write("<?xml version=\"1.0\" encoding=\"UTF-8\"?>\n");
+            out.write("<graphml xmlns=\"http://graphml.graphdrawing.org/xmlns\">\n");
+            out.write("  <key id=\"label\" for=\"node\" attr.name=\"label\" attr.type=\"string\"/>\n");
+            if (weighted) {
+                out.write("  <key id=\"weight\" for=\"edge\" attr.name=\"weight\" attr.type=\"int\"/>\n");
+                for (var kind : KINDS) {
+                    out.write("  <key id=\"" + kind.getLabel() + "\" for=\"edge\" attr.name=\"" + kind.getLabel() + "\" attr.type=\"int\"/>\n");
+                }
+            }
+            out.write("  <graph id=\"G\" edgedefault=\"directed\">\n");
+            out.write("    <desc>" + escape(title) + "</desc>\n");
+        }
+
+        @Override
+        protected void writeEdge(String from, String to, int[] counts) throws IOException {
+            var source = writeNode(from);
+            var target = writeNode(to);
+            out.write("    <edge source=\"" + source + "\" target=\"" + target + "\"");
+            if (!weighted) {
+                out.write("/>\n");
+                return;
+            }
+            out.write(">\n");
+            out.write("      <data key=\"weight\">" + getWeight(counts) + "</data>\n");
+            for (var kind : KINDS) {
+                out.write("      <data key=\"" + kind.getLabel() + "\">" + counts[kind.ordinal()] + "</data>\n");
+            }
+            out.write("    </edge>\n");
+        }
+
+        @Override
+        protected void writeFooter() throws IOException {
+            out.write("  </graph>\n");
+            out.write("</graphml>\n");
+        }
+
+        /**
+         * @return the id of the node
+         */
+        private String writeNode(String name) throws IOException {
+            var id = nodeIds.get(name);
+            if (id == null) {
+                id = "n" + nodeIds.size();
+                nodeIds.put(name, id);
+                out.write("    <node id=\"" + id + "\">\n");
+                out.write("      <data key=\"label\">" + escape(name) + "</data>\n");
+                out.write("    </node>\n");
+            }
+            return id;
+        }
+
+        private static String escape(String text) {
+            return text.replace("&", "&amp;").replace("<", "&lt;").replace(">", "&gt;").replace("\"", "&quot;");
+        }
+    }
+
+    private static class CsvWriter extends GraphWriter {
+        CsvWriter(Writer out, Optional<String> prefix, boolean weighted) {
+            super(out, prefix, weighted);
+        }
+
+        @Override
+        protected void writeHeader(String title) throws IOException {
+            out.write("source,target");
+            if (weighted) {
+                out.write(",weight");
+                for (var kind : KINDS) {
+                    out.write("," + kind.getLabel());
+                }
+            }
+            out.write("\n");
+        }
+
+        @Override
+        protected void writeEdge(String from, String to, int[] counts) throws IOException {
+            out.write(quote(from) + "," + quote(to));
+            if (weighted) {
+                out.write("," + getWeight(counts));
+                for (var count : counts) {
+                    out.write("," + count);
+                }
+            }
+            out.write("\n");
+        }
+
+        @Override
+        protected void writeFooter() {
+        }
+
+        private static String quote(String value) {
+            if (value.contains(",") || value.contains("\"") || value.contains("\n")) {
+                return "\"" + value.replace("\"", "\"\"") + "\"";
+            }
+            return value;
+        }
+    }
+
+    private static class PlantUmlWriter extends GraphWriter {
+        PlantUmlWriter(Writer out, Optional<String> prefix, boolean weighted) {
+            super(out, prefix, weighted);
+        }
+
+        @Override
+        protected void writeHeader(String title) throws IOException {
+            out.write("@startuml\n");
+        }
+
+        @Override
+        protected void writeEdge(String from, String to, int[] counts) throws IOException {
+            out.write("[" + from + "] --> [" + to + "]" + (weighted ? " : " + getWeight(counts) : "") + "\n");
+        }
+
+        @Override
+        protected void writeFooter() throws IOException {
+            out.write("@enduml\n");
+        }
+    }
+}
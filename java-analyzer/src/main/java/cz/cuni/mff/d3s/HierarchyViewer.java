@@ -0,0 +1,406 @@
+package cz.cuni.mff.d3s;
+
+import org.graphstream.graph.Graph;
+import org.graphstream.ui.swing_viewer.SwingViewer;
+import org.graphstream.ui.swing_viewer.ViewPanel;
+import org.graphstream.ui.view.Viewer;
+import org.graphstream.ui.view.ViewerListener;
+
+import javax.swing.*;
+import java.awt.*;
+import java.awt.event.WindowAdapter;
+import java.awt.event.WindowEvent;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.IntUnaryOperator;
+
+/**
+ * Shows the class references level by level: it starts with the references between project (source) roots, rolled
+ * up like {@link SourceAnalysis#getProjectRootReferences()}, and clicking a node expands it, a project root into its
+ * packages and a package into its classes; clicking a class collapses its package again. Only the classes of the
+ * analyzed sources are shown.
+ * <p>
+ * The visible graph is computed on a model thread and added to the shown graph in batches, most connected nodes first,
+ * so the window stays responsive and fills progressively; the layout runs in the layout thread of the viewer. At most
+ * {@link #MAX_NODES} nodes are shown, the ones with the highest degree, and at most {@link #MAX_EDGES} edges between
+ * them, the heaviest ones. The toolbar filters the classes by a name prefix and the shown nodes by their degree.
+ */
+public class HierarchyViewer {
+    private static final int MAX_NODES = 2000;
+    private static final int MAX_EDGES = 20_000;
+    private static final int BATCH_SIZE = 500;
+    private static final int BATCH_PAUSE_MILLIS = 10;
+    private static final String STYLESHEET = """
+            node { size: 12px; fill-color: #f7f7f0; stroke-mode: plain; stroke-color: #555555; text-alignment: under; }
+            node.root { size: 30px; fill-color: #9ecae1; }
+            node.package { size: 20px; fill-color: #c7e9c0; }
+            node.class { size: 10px; fill-color: #fdd0a2; }
+            edge { size-mode: dyn-size; fill-color: #00000060; arrow-size: 6px, 4px; }
+            """;
+
+    private enum Level {
+        ROOT("root"), PACKAGE("package"), CLASS("class");
+
+        private final String styleClass;
+
+        Level(String styleClass) {
+            this.styleClass = styleClass;
+        }
+    }
+
+    private final SymbolTable symbols;
+    private final IntRelation classesPerPackage;
+    private final IntUnaryOperator classToPackage;
+    private final IntUnaryOperator classToProjectRoot;
+    private final WeightedEdges classReferences;
+
+    // Only touched on the model thread
+    private final Set<Integer> expandedRoots = new HashSet<>();
+    private final Set<Integer> expandedPackages = new HashSet<>();
+    private String prefix = "";
+    private int minDegree;
+    private Map<Integer, Level> shownLevels = Map.of();
+    private final Graph graph = SourceAnalysis.newGraph("Class dependencies");
+
+    private final ExecutorService modelThread = Executors.newSingleThreadExecutor(runnable -> {
+        var thread = new Thread(runnable, "hierarchy-viewer-model");
+        thread.setDaemon(true);
+        return thread;
+    });
+    // Incremented by every change of the view, so that a rendering that became outdated stops early
+    private final AtomicInteger generation = new AtomicInteger();
+    private final JLabel status = new JLabel();
+
+    /**
+     * @param references the shown references between the nodes
+     * @param dependents the inverse of the references
+     */
+    private record VisibleGraph(List<Integer> nodes, Map<Integer, Level> levels, WeightedRelation references,
+                                IntRelation dependents, int hiddenNodes, int hiddenEdges) {
+    }
+
+    /**
+     * @param classToPackage     package of a class, negative if the class is not declared in the analyzed sources
+     * @param classToProjectRoot project root of a class, negative if unknown
+     */
+    public HierarchyViewer(SymbolTable symbols, IntRelation classesPerPackage, IntUnaryOperator classToPackage,
+                           IntUnaryOperator classToProjectRoot, WeightedEdges classReferences) {
+        this.symbols = symbols;
+        this.classesPerPackage = classesPerPackage;
+        this.classToPackage = classToPackage;
+        this.classToProjectRoot = classToProjectRoot;
+        this.classReferences = classReferences;
+        graph.setAttribute("ui.stylesheet", STYLESHEET);
+    }
+
+    /**
+     * Opens the window and returns; the viewer runs on its own threads until the window is closed.
+     */
+    public void show() {
+        System.setProperty("org.graphstream.ui", "swing");
+        var viewer = new SwingViewer(graph, Viewer.ThreadingModel.GRAPH_IN_ANOTHER_THREAD);
+        viewer.enableAutoLayout();
+        var view = (ViewPanel) viewer.addDefaultView(false);
+
+        var pipe = viewer.newViewerPipe();
+        pipe.addViewerListener(new ViewerListener() {
+            @Override
+            public void viewClosed(String viewName) {
+            }
+
+            @Override
+            public void buttonPushed(String id) {
+            }
+
+            @Override
+            public void buttonReleased(String id) {
+                update(() -> toggle(id));
+            }
+
+            @Override
+            public void mouseOver(String id) {
+            }
+
+            @Override
+            public void mouseLeft(String id) {
+            }
+        });
+        var pump = new Thread(() -> {
+            try {
+                while (!Thread.currentThread().isInterrupted()) {
+                    pipe.blockingPump(100);
+                }
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }, "hierarchy-viewer-events");
+        pump.setDaemon(true);
+        pump.start();
+
+        SwingUtilities.invokeLater(() -> {
+            var frame = new JFrame("Class dependencies");
+            frame.setDefaultCloseOperation(WindowConstants.DISPOSE_ON_CLOSE);
+            frame.addWindowListener(new WindowAdapter() {
+                @Override
+                public void windowClosed(WindowEvent e) {
+                    pump.interrupt();
+                    modelThread.shutdownNow();
+                    viewer.close();
+                }
+            });
+            frame.add(createToolBar(), BorderLayout.NORTH);
+            frame.add(view, BorderLayout.CENTER);
+            frame.add(status, BorderLayout.SOUTH);
+            frame.setSize(1200, 900);
+            frame.setVisible(true);
+        });
+        update(() -> {
+        });
+    }
+
+    private JToolBar createToolBar() {
+        var toolBar = new JToolBar();
+        toolBar.setFloatable(false);
+        var prefixField = new JTextField(30);
+        prefixField.addActionListener(e -> {
+            var text = prefixField.getText().trim();
+            update(() -> prefix = text);
+        });
+        var degreeSpinner = new JSpinner(new SpinnerNumberModel(0, 0, 10_000, 1));
+        degreeSpinner.addChangeListener(e -> {
+            var degree = (Integer) degreeSpinner.getValue();
+            update(() -> minDegree = degree);
+        });
+        var collapseButton = new JButton("Collapse all");
+        collapseButton.addActionListener(e -> update(() -> {
+            expandedRoots.clear();
+            expandedPackages.clear();
+        }));
+        toolBar.add(new JLabel("Class prefix (Enter): "));
+        toolBar.add(prefixField);
+        toolBar.addSeparator();
+        toolBar.add(new JLabel("Minimum degree: "));
+        toolBar.add(degreeSpinner);
+        toolBar.addSeparator();
+        toolBar.add(collapseButton);
+        return toolBar;
+    }
+
+    /**
+     * Changes the view on the model thread and renders it again.
+     */
+    private void update(Runnable change) {
+        var current = generation.incrementAndGet();
+        modelThread.execute(() -> {
+            change.run();
+            if (generation.get() == current) {
+                render(current, computeVisibleGraph());
+            }
+        });
+    }
+
+    private void toggle(String id) {
+        var node = symbols.find(id);
+        var level = shownLevels.get(node);
+        if (level == null) {
+            return;
+        }
+        switch (level) {
+            case ROOT -> expandedRoots.add(node);
+            case PACKAGE -> expandedPackages.add(node);
+            case CLASS -> expandedPackages.remove(classToPackage.applyAsInt(node));
+        }
+    }
+
+    private VisibleGraph computeVisibleGraph() {
+        var levels = new HashMap<Integer, Level>();
+        // Every class is mapped once, the references are then rolled up by array lookups
+        var visibleNodes = new int[symbols.size()];
+        Arrays.fill(visibleNodes, -1);
+        classesPerPackage.forEach((packageName, className) -> visibleNodes[className] = getVisibleNode(className, levels));
+        var references = new WeightedRelation();
+        var kinds = ReferenceKind.values();
+        classReferences.forEach((from, to, counts) -> {
+            var visibleFrom = visibleNodes[from];
+            var visibleTo = visibleNodes[to];
+            if (visibleFrom < 0 || visibleTo < 0 || visibleFrom == visibleTo) {
+                return;
+            }
+            for (var kind : kinds) {
+                if (counts[kind.ordinal()] > 0) {
+                    references.add(visibleFrom, visibleTo, kind, counts[kind.ordinal()]);
+                }
+            }
+        });
+        var degrees = new HashMap<Integer, Integer>();
+        references.getRelation().forEach((from, to) -> {
+            degrees.merge(from, 1, Integer::sum);
+            degrees.merge(to, 1, Integer::sum);
+        });
+        var nodes = new ArrayList<Integer>();
+        for (var node : levels.keySet()) {
+            if (degrees.getOrDefault(node, 0) >= minDegree) {
+                nodes.add(node);
+            }
+        }
+        nodes.sort(Comparator.comparing((Integer node) -> -degrees.getOrDefault(node, 0)).thenComparing(symbols::name));
+        var hiddenNodes = Math.max(0, nodes.size() - MAX_NODES);
+        nodes = new ArrayList<>(nodes.subList(0, nodes.size() - hiddenNodes));
+
+        var shownNodes = new HashSet<>(nodes);
+        var edges = new ArrayList<long[]>();
+        references.forEach((from, to, counts) -> {
+            if (shownNodes.contains(from) && shownNodes.contains(to)) {
+                edges.add(new long[]{from, to, references.getWeight(from, to)});
+            }
+        });
+        edges.sort(Comparator.comparingLong(edge -> -edge[2]));
+        var hiddenEdges = Math.max(0, edges.size() - MAX_EDGES);
+        var shownReferences = new WeightedRelation();
+        for (var edge : edges.subList(0, edges.size() - hiddenEdges)) {
+            var from = (int) edge[0];
+            var to = (int) edge[1];
+            var counts = references.getCounts(from, to);
+            for (var kind : kinds) {
+                if (counts[kind.ordinal()] > 0) {
+                    shownReferences.add(from, to, kind, counts[kind.ordinal()]);
+                }
+            }
+        }
+        return new VisibleGraph(nodes, levels, shownReferences, shownReferences.getRelation().inverse(), hiddenNodes, hiddenEdges);
+    }
+
+    /**
+     * The shown node standing for the class: the class, its package or its project root, depending on what is
+     * expanded.
+     *
+     * @return negative if the class is not shown at all
+     */
+    private int getVisibleNode(int className, Map<Integer, Level> levels) {
+        var packageName = classToPackage.applyAsInt(className);
+        if (packageName < 0 || !symbols.name(className).startsWith(prefix)) {
+            return -1;
+        }
+        if (expandedPackages.contains(packageName)) {
+            levels.put(className, Level.CLASS);
+            return className;
+        }
+        var projectRoot = classToProjectRoot.applyAsInt(className);
+        if (projectRoot < 0 || expandedRoots.contains(projectRoot)) {
+            levels.put(packageName, Level.PACKAGE);
+            return packageName;
+        }
+        levels.put(projectRoot, Level.ROOT);
+        return projectRoot;
+    }
+
+    /**
+     * Brings the shown graph to the visible one: removes what is no longer visible, then adds the nodes and their
+     * edges in batches, pausing between them so the viewer can draw and lay out what is there already.
+     */
+    private void render(int renderedGeneration, VisibleGraph visible) {
+        shownLevels = visible.levels();
+        var nodeIds = new HashSet<String>();
+        for (var node : visible.nodes()) {
+            nodeIds.add(symbols.name(node));
+        }
+        for (var node : graph.nodes().filter(node -> !nodeIds.contains(node.getId())).toList()) {
+            graph.removeNode(node);
+        }
+        var edgeIds = new HashSet<String>();
+        visible.references().getRelation().forEach((from, to) -> edgeIds.add(SourceAnalysis.getEdgeId(from, to)));
+        for (var edge : graph.edges().filter(edge -> !edgeIds.contains(edge.getId())).toList()) {
+            graph.removeEdge(edge);
+        }
+
+        var shown = new HashSet<Integer>();
+        var added = 0;
+        for (var node : visible.nodes()) {
+            var name = symbols.name(node);
+            var level = visible.levels().get(node);
+            var graphNode = graph.getNode(name);
+            if (graphNode == null) {
+                graphNode = graph.addNode(name);
+                added++;
+            }
+            graphNode.setAttribute("ui.class", level.styleClass);
+            graphNode.setAttribute("ui.label", getLabel(name, level));
+            shown.add(node);
+            // Edges to the nodes shown before, so every batch is connected to the rest of the graph
+            for (var target : visible.references().getRelation().getTargets(node)) {
+                if (shown.contains(target)) {
+                    added += showEdge(visible.references(), node, target);
+                }
+            }
+            for (var source : visible.dependents().getTargets(node)) {
+                if (shown.contains(source)) {
+                    added += showEdge(visible.references(), source, node);
+                }
+            }
+            if (added >= BATCH_SIZE) {
+                added = 0;
+                setStatus(visible, shown.size());
+                try {
+                    Thread.sleep(BATCH_PAUSE_MILLIS);
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    return;
+                }
+                if (generation.get() != renderedGeneration) {
+                    return;
+                }
+            }
+        }
+        setStatus(visible, shown.size());
+    }
+
+    /**
+     * @return 1 if the edge was added, 0 if it was shown already
+     */
+    private int showEdge(WeightedRelation references, int from, int to) {
+        var id = SourceAnalysis.getEdgeId(from, to);
+        var edge = graph.getEdge(id);
+        var result = 0;
+        if (edge == null) {
+            edge = graph.addEdge(id, symbols.name(from), symbols.name(to), true);
+            result = 1;
+        }
+        var weight = references.getWeight(from, to);
+        edge.setAttribute("weight", weight);
+        edge.setAttribute("ui.size", 1 + Math.log(weight) / Math.log(2) / 2);
+        return result;
+    }
+
+    private static String getLabel(String name, Level level) {
+        return switch (level) {
+            // The directory of the project and the root within it, e.g. jdk.graal.compiler/src
+            case ROOT -> {
+                var path = Path.of(name);
+                var count = path.getNameCount();
+                yield count >= 2 ? path.subpath(count - 2, count).toString() : name;
+            }
+            case PACKAGE -> name;
+            case CLASS -> name.substring(name.lastIndexOf('.') + 1);
+        };
+    }
+
+    private void setStatus(VisibleGraph visible, int shownNodes) {
+        var text = shownNodes + " of " + visible.nodes().size() + " nodes shown"
+                + (visible.hiddenNodes() > 0 ? " (" + visible.hiddenNodes() + " less connected nodes hidden)" : "")
+                + ", " + visible.references().size() + " edges"
+                + (visible.hiddenEdges() > 0 ? " (" + visible.hiddenEdges() + " lighter edges hidden)" : "")
+                + ", " + expandedRoots.size() + " project roots and " + expandedPackages.size() + " packages expanded"
+                + " - click a project root or package to expand it, a class to collapse its package";
+        SwingUtilities.invokeLater(() -> status.setText(text));
+    }
+}
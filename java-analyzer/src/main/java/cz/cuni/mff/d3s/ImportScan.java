@@ -0,0 +1,415 @@
+package cz.cuni.mff.d3s;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.FileVisitResult;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.SimpleFileVisitor;
+import java.nio.file.StandardOpenOption;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.TreeSet;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Package dependencies approximated from the {@code package} and {@code import} declarations of the Java files, without
+ * parsing them: only the header of every file is read, from a memory-mapped window, up to the first token that
+ * cannot belong to the header (normally the first type declaration). The directories are walked by fork-join tasks
+ * like in {@link RepositoryScan}, so the scan runs at the speed of the disk.
+ * <p>
+ * Only imported types are seen, so references within a package, to {@code java.lang} and by fully qualified names
+ * are missing; the graph is an approximation of the one of {@link SourceAnalysis}. Like there, the imports of the
+ * {@code java.*} packages are left out. The source root of a file is
+ * derived from its directory and its package, and the roots {@link Runner#isSkippedRoot skipped} by the full analysis
+ * are skipped as well.
+ */
+public class ImportScan {
+    // The license comment and the imports fit in the window of almost every file, the rest is mapped only if needed
+    private static final int HEADER_WINDOW = 64 * 1024;
+
+    private final Map<String, Set<String>> importedPackages = new ConcurrentHashMap<>();
+    private final LongAdder files = new LongAdder();
+    private final LongAdder imports = new LongAdder();
+    private final LongAdder skippedFiles = new LongAdder();
+    private final SymbolTable symbols = new SymbolTable();
+    private final IntRelation packageImports = new IntRelation();
+
+    /**
+     * The declarations at the start of a Java file.
+     *
+     * @param packageName empty for the default package
+     * @param imports     imported names as written, e.g. {@code java.util.List}, {@code java.util.*} or
+     *                    {@code java.util.Map.entry} for a static import
+     */
+    public record Header(Optional<String> packageName, List<String> imports) {
+    }
+
+    private ImportScan() {
+    }
+
+    public static ImportScan scan(Path repository, List<String> projects, int parallelism) {
+        var scan = new ImportScan();
+        var pool = new ForkJoinPool(parallelism);
+        try {
+            for (var project : projects) {
+                var directory = repository.resolve(project);
+                if (Files.isDirectory(directory)) {
+                    pool.invoke(scan.new DirectoryWalk(directory));
+                }
+            }
+        } finally {
+            pool.shutdown();
+        }
+        // Interned in a stable order, so the exported graph does not depend on the scheduling
+        for (var entry : new TreeMap<>(scan.importedPackages).entrySet()) {
+            var from = scan.symbols.intern(entry.getKey());
+            for (var to : new TreeSet<>(entry.getValue())) {
+                scan.packageImports.add(from, scan.symbols.intern(to));
+            }
+        }
+        return scan;
+    }
+
+    public int getFileCount() {
+        return files.intValue();
+    }
+
+    public int getImportCount() {
+        return imports.intValue();
+    }
+
+    /**
+     * Files in skipped (test and benchmark) source roots.
+     */
+    public int getSkippedFileCount() {
+        return skippedFiles.intValue();
+    }
+
+    public int getPackageDependencyCount() {
+        return packageImports.size();
+    }
+
+    public void showPackageImports() {
+        SourceAnalysis.toGraph("Package dependencies (imports only)", packageImports, symbols).display();
+    }
+
+    public void exportPackageImports(GraphWriter writer) {
+        packageImports.forEach((from, to) -> writer.edge(symbols.name(from), symbols.name(to)));
+    }
+
+    /**
+     * Reads the header of a Java file.
+     */
+    public static Header readHeader(Path file) throws IOException {
+        try (var channel = FileChannel.open(file, StandardOpenOption.READ)) {
+            var size = channel.size();
+            var window = Math.min(size, HEADER_WINDOW);
+            while (true) {
+                var lexer = new Lexer(channel.map(FileChannel.MapMode.READ_ONLY, 0, window));
+                var header = lexer.readHeader();
+                // A header that ends at the end of the window may continue after it
+                if (!lexer.isAtEnd() || window == size) {
+                    return header;
+                }
+                window = Math.min(size, window * 4);
+            }
+        }
+    }
+
+    /**
+     * The package of an imported name: the segments before the first one starting with an upper case letter, which
+     * by convention is the outermost imported class. A wildcard import without such a segment imports a package.
+     */
+    static Optional<String> getImportedPackage(String importName) {
+        var segments = importName.split("\\.");
+        var end = segments.length;
+        for (int i = 0; i < segments.length; i++) {
+            if (!segments[i].isEmpty() && Character.isUpperCase(segments[i].charAt(0))) {
+                end = i;
+                break;
+            }
+        }
+        if (end == segments.length) {
+            // The wildcard of a package, or a class with an unconventional name
+            end = segments.length - 1;
+        }
+        return end == 0 ? Optional.empty() : Optional.of(String.join(".", List.of(segments).subList(0, end)));
+    }
+
+    private void scanFile(Path file) {
+        Header header;
+        try {
+            header = readHeader(file);
+        } catch (IOException e) {
+            System.err.println("Could not read " + file + ": " + e);
+            return;
+        }
+        if (header.packageName().isEmpty()) {
+            return;
+        }
+        var packageName = header.packageName().get();
+        var root = file.getParent();
+        for (int i = packageName.split("\\.").length; i > 0 && root != null; i--) {
+            root = root.getParent();
+        }
+        if (root == null || Runner.isSkippedRoot(root)) {
+            skippedFiles.increment();
+            return;
+        }
+        files.increment();
+        var targets = importedPackages.computeIfAbsent(packageName, p -> ConcurrentHashMap.newKeySet());
+        for (var importName : header.imports()) {
+            imports.increment();
+            getImportedPackage(importName).filter(p -> !p.equals(packageName) && !p.startsWith("java.")).ifPresent(targets::add);
+        }
+    }
+
+    private class DirectoryWalk extends RecursiveAction {
+        private final Path directory;
+
+        private DirectoryWalk(Path directory) {
+            this.directory = directory;
+        }
+
+        @Override
+        protected void compute() {
+            var subdirectories = new ArrayList<DirectoryWalk>();
+            try {
+                Files.walkFileTree(directory, new SimpleFileVisitor<>() {
+                    @Override
+                    public FileVisitResult preVisitDirectory(Path dir, BasicFileAttributes attrs) {
+                        if (dir.equals(directory)) {
+                            return FileVisitResult.CONTINUE;
+                        }
+                        if (!RepositoryScan.IGNORED_DIRECTORIES.contains(dir.getFileName().toString())) {
+                            var walk = new DirectoryWalk(dir);
+                            walk.fork();
+                            subdirectories.add(walk);
+                        }
+                        return FileVisitResult.SKIP_SUBTREE;
+                    }
+
+                    @Override
+                    public FileVisitResult visitFile(Path file, BasicFileAttributes attrs) {
+                        if (attrs.isRegularFile() && file.getFileName().toString().endsWith(".java")) {
+                            scanFile(file);
+                        }
+                        return FileVisitResult.CONTINUE;
+                    }
+
+                    @Override
+                    public FileVisitResult visitFileFailed(Path file, IOException e) {
+                        System.err.println("Could not read " + file + ": " + e);
+                        return FileVisitResult.CONTINUE;
+                    }
+                });
+            } catch (IOException e) {
+                System.err.println("Could not walk " + directory + ": " + e);
+            }
+            for (var walk : subdirectories) {
+                walk.join();
+            }
+        }
+    }
+
+    /**
+     * Tokenizes the bytes of a Java file as far as the header goes. Names are decoded as UTF-8; unicode escapes are
+     * not translated, as they do not occur in the headers of real sources.
+     */
+    private static class Lexer {
+        private static final int END = -1;
+        private static final int IDENTIFIER = -2;
+
+        private final ByteBuffer bytes;
+        private int position;
+        private String identifier;
+
+        private Lexer(ByteBuffer bytes) {
+            this.bytes = bytes;
+            // A byte order mark
+            if (bytes.limit() >= 3 && bytes.get(0) == (byte) 0xEF && bytes.get(1) == (byte) 0xBB && bytes.get(2) == (byte) 0xBF) {
+                position = 3;
+            }
+        }
+
+        private boolean isAtEnd() {
+            return position >= bytes.limit();
+        }
+
+        private Header readHeader() {
+            Optional<String> packageName = Optional.empty();
+            var imports = new ArrayList<String>();
+            var token = next();
+            // Annotations of the package in package-info.java
+            while (token == '@') {
+                if (next() != IDENTIFIER || identifier.equals("interface")) {
+                    return new Header(packageName, imports);
+                }
+                token = skipAnnotation();
+            }
+            if (token == IDENTIFIER && identifier.equals("package")) {
+                var name = readName(false);
+                if (name == null) {
+                    return new Header(packageName, imports);
+                }
+                packageName = Optional.of(name);
+                token = next();
+            }
+            while (token == ';' || token == IDENTIFIER && identifier.equals("import")) {
+                if (token == IDENTIFIER) {
+                    var name = readName(true);
+                    if (name == null) {
+                        break;
+                    }
+                    imports.add(name);
+                }
+                token = next();
+            }
+            return new Header(packageName, imports);
+        }
+
+        /**
+         * Reads a qualified name up to the terminating semicolon, e.g. the {@code a.b.*} of {@code import a.b.*;}.
+         *
+         * @return null if there is no such name
+         */
+        private String readName(boolean isImport) {
+            var name = new StringBuilder();
+            var token = next();
+            if (isImport && token == IDENTIFIER && identifier.equals("static")) {
+                token = next();
+            }
+            while (true) {
+                if (token == IDENTIFIER) {
+                    name.append(identifier);
+                } else if (isImport && token == '*') {
+                    name.append('*');
+                    return next() == ';' ? name.toString() : null;
+                } else {
+                    return null;
+                }
+                token = next();
+                if (token == ';') {
+                    return name.toString();
+                }
+                if (token != '.') {
+                    return null;
+                }
+                name.append('.');
+                token = next();
+            }
+        }
+
+        /**
+         * Skips the rest of an annotation after its first name, e.g. {@code .Nullable(value = "x")}.
+         *
+         * @return the token after the annotation
+         */
+        private int skipAnnotation() {
+            var token = next();
+            while (token == '.') {
+                if (next() != IDENTIFIER) {
+                    return END;
+                }
+                token = next();
+            }
+            if (token != '(') {
+                return token;
+            }
+            var depth = 1;
+            while (depth > 0) {
+                token = next();
+                if (token == END) {
+                    return END;
+                } else if (token == '(') {
+                    depth++;
+                } else if (token == ')') {
+                    depth--;
+                }
+            }
+            return next();
+        }
+
+        /**
+         * @return {@link #IDENTIFIER} (with {@link #identifier} set), {@link #END} or the character of any other
+         * token; literals are skipped and returned as {@code '"'}
+         */
+        private int next() {
+            skipWhitespaceAndComments();
+            if (isAtEnd()) {
+                return END;
+            }
+            var c = bytes.get(position);
+            if (isIdentifierPart(c) && !(c >= '0' && c <= '9')) {
+                var start = position;
+                while (position < bytes.limit() && isIdentifierPart(bytes.get(position))) {
+                    position++;
+                }
+                var name = new byte[position - start];
+                bytes.get(start, name);
+                identifier = new String(name, StandardCharsets.UTF_8);
+                return IDENTIFIER;
+            }
+            position++;
+            if (c == '"' || c == '\'') {
+                skipLiteral(c);
+                return '"';
+            }
+            return c;
+        }
+
+        private void skipLiteral(byte quote) {
+            if (quote == '"' && position + 1 < bytes.limit() && bytes.get(position) == '"' && bytes.get(position + 1) == '"') {
+                // A text block ends with the next unescaped """
+                position += 2;
+                while (position + 2 < bytes.limit()
+                        && !(bytes.get(position) == '"' && bytes.get(position + 1) == '"' && bytes.get(position + 2) == '"')) {
+                    position += bytes.get(position) == '\\' ? 2 : 1;
+                }
+                position += 3;
+                return;
+            }
+            while (position < bytes.limit() && bytes.get(position) != quote && bytes.get(position) != '\n') {
+                position += bytes.get(position) == '\\' ? 2 : 1;
+            }
+            position++;
+        }
+
+        private void skipWhitespaceAndComments() {
+            while (position < bytes.limit()) {
+                var c = bytes.get(position);
+                if (c == ' ' || c == '\t' || c == '\n' || c == '\r' || c == '\f') {
+                    position++;
+                } else if (c == '/' && position + 1 < bytes.limit() && bytes.get(position + 1) == '/') {
+                    while (position < bytes.limit() && bytes.get(position) != '\n') {
+                        position++;
+                    }
+                } else if (c == '/' && position + 1 < bytes.limit() && bytes.get(position + 1) == '*') {
+                    position += 2;
+                    while (position + 1 < bytes.limit() && !(bytes.get(position) == '*' && bytes.get(position + 1) == '/')) {
+                        position++;
+                    }
+                    position += 2;
+                } else {
+                    return;
+                }
+            }
+        }
+
+        private static boolean isIdentifierPart(byte c) {
+            // Bytes of multi-byte UTF-8 characters are negative
+            return c < 0 || c >= 'a' && c <= 'z' || c >= 'A' && c <= 'Z' || c >= '0' && c <= '9' || c == '_' || c == '$';
+        }
+    }
+}
@@ -0,0 +1,154 @@
+package cz.cuni.mff.d3s;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Optional;
+import java.util.Set;
+import java.util.TreeSet;
+
+/**
+ * The facts of every analyzed file, kept so that after some files changed only those and the files that refer to a
+ * type declared in them (see {@link AnalysisCache#dependsOn}) are parsed again. Not thread-safe.
+ */
+public class IncrementalAnalysis {
+    private final Options options;
+    private final ResolutionBudget budget;
+    private final Map<Path, UnitFacts> factsPerFile = new LinkedHashMap<>();
+    private final Map<Path, String> projectPerRoot = new LinkedHashMap<>();
+    // Including the skipped test roots
+    private final Set<Path> allRoots = new HashSet<>();
+
+    public IncrementalAnalysis(Analyzer analyzer, Options options) {
+        this.options = options;
+        budget = ResolutionBudget.create(options);
+        setSourceRoots(analyzer);
+    }
+
+    /**
+     * Takes the analyzed source roots of the analyzer, e.g. after a new root appeared.
+     */
+    public void setSourceRoots(Analyzer analyzer) {
+        projectPerRoot.clear();
+        allRoots.clear();
+        for (var project : Runner.ANALYZED_PROJECTS) {
+            for (var sourceRoot : analyzer.getJavaSourceRoots(project)) {
+                allRoots.add(sourceRoot.getRoot());
+                if (!Runner.isSkippedRoot(sourceRoot.getRoot())) {
+                    projectPerRoot.put(sourceRoot.getRoot(), project);
+                }
+            }
+        }
+    }
+
+    public Set<Path> getSourceRoots() {
+        return projectPerRoot.keySet();
+    }
+
+    /**
+     * Adds the facts of a file of a full analysis, see {@link Runner#runSourceAnalysis}.
+     */
+    public void add(UnitFacts facts) {
+        factsPerFile.put(facts.getFile(), facts);
+    }
+
+    public Set<Path> getFiles() {
+        return factsPerFile.keySet();
+    }
+
+    public void clear() {
+        factsPerFile.clear();
+    }
+
+    /**
+     * Whether the file belongs to an analyzed source root.
+     */
+    public boolean isAnalyzed(Path file) {
+        return getProjectRoot(file).isPresent();
+    }
+
+    /**
+     * Whether the file belongs to a source root, analyzed or skipped. A file that does not may belong to a new root.
+     */
+    public boolean isInSourceRoot(Path file) {
+        return allRoots.stream().anyMatch(file::startsWith);
+    }
+
+    /**
+     * Analyzes the changed files and the files depending on them again. Deleted files are removed; a file that does
+     * not parse (e.g. while it is being edited) keeps its previous facts.
+     *
+     * @param analyzer an analyzer with type solvers that did not cache the previous content of the files
+     * @return the number of analyzed files
+     */
+    public int update(Analyzer analyzer, Set<Path> changedFiles) {
+        var affectedFiles = getAffectedFiles(changedFiles);
+        var resolver = new MemberResolver(analyzer.getTypeIndex());
+        UnitPipeline.run(affectedFiles.iterator(), file -> {
+            var root = getProjectRoot(file).orElseThrow();
+            if (!Files.isRegularFile(file) || !analyzer.isJavaFile(root.getKey(), file)) {
+                return Map.entry(file, Optional.<UnitFacts>empty());
+            }
+            var sourceRoot = analyzer.getJavaSourceRoot(root.getValue(), root.getKey());
+            budget.startFile(file, System.nanoTime());
+            try {
+                return Map.entry(file, analyzer.parse(sourceRoot, file).map(unit -> Runner.analyzeUnit(sourceRoot, file, unit, resolver, budget)));
+            } finally {
+                budget.finishFile(file);
+            }
+        }, result -> {
+            var file = result.getKey();
+            if (result.getValue().isPresent()) {
+                factsPerFile.put(file, result.getValue().get());
+            } else if (!Files.isRegularFile(file)) {
+                factsPerFile.remove(file);
+            }
+        }, options.getParallelism(), options.getInFlightFiles());
+        budget.save();
+        return affectedFiles.size();
+    }
+
+    /**
+     * A new model from the facts of all files.
+     */
+    public SourceAnalysis buildModel() {
+        var sources = new SourceAnalysis();
+        for (var facts : factsPerFile.values()) {
+            sources.addUnitFacts(facts);
+        }
+        sources.resolveSymbols();
+        return sources;
+    }
+
+    public int size() {
+        return factsPerFile.size();
+    }
+
+    private Set<Path> getAffectedFiles(Set<Path> changedFiles) {
+        var changedNames = new HashSet<String>();
+        var affectedFiles = new TreeSet<Path>();
+        for (var file : changedFiles) {
+            if (!isAnalyzed(file)) {
+                continue;
+            }
+            affectedFiles.add(file);
+            changedNames.add(file.getFileName().toString().replace(".java", ""));
+            var previous = factsPerFile.get(file);
+            if (previous != null) {
+                AnalysisCache.addDeclaredNames(changedNames, previous);
+            }
+        }
+        for (var entry : factsPerFile.entrySet()) {
+            if (AnalysisCache.dependsOn(entry.getValue(), changedNames)) {
+                affectedFiles.add(entry.getKey());
+            }
+        }
+        return affectedFiles;
+    }
+
+    private Optional<Map.Entry<Path, String>> getProjectRoot(Path file) {
+        return projectPerRoot.entrySet().stream().filter(entry -> file.startsWith(entry.getKey())).findFirst();
+    }
+}
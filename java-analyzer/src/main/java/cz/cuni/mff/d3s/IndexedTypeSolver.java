@@ -0,0 +1,48 @@
+package cz.cuni.mff.d3s;
+
+import com.github.javaparser.resolution.TypeSolver;
+import com.github.javaparser.resolution.declarations.ResolvedReferenceTypeDeclaration;
+import com.github.javaparser.resolution.model.SymbolReference;
+import com.github.javaparser.symbolsolver.resolution.typesolvers.ClassLoaderTypeSolver;
+
+/**
+ * Solves the types of a {@link BinaryTypeIndex} instead of a {@code ReflectionTypeSolver}. The symbol solver looks up
+ * many names which are not types (e.g. every prefix of a qualified name), and the reflection solver has to try to load
+ * a class for every one of them; here they are answered by a search of the index, and only the indexed types are
+ * loaded, from the JDK or the indexed jars. The classpath of the analyzer itself is not visible.
+ */
+public class IndexedTypeSolver implements TypeSolver {
+    private final BinaryTypeIndex index;
+    private final ClassLoaderTypeSolver delegate;
+    private TypeSolver parent;
+
+    public IndexedTypeSolver(BinaryTypeIndex index) {
+        this.index = index;
+        delegate = new ClassLoaderTypeSolver(index.getClassLoader());
+    }
+
+    @Override
+    public TypeSolver getParent() {
+        return parent;
+    }
+
+    @Override
+    public void setParent(TypeSolver parent) {
+        this.parent = parent;
+        // The declarations the delegate creates solve their supertypes from the root
+        delegate.setParent(parent);
+    }
+
+    @Override
+    public SymbolReference<ResolvedReferenceTypeDeclaration> tryToSolveType(String name) {
+        if (!index.contains(name)) {
+            return SymbolReference.unsolved();
+        }
+        try {
+            return delegate.tryToSolveType(name);
+        } catch (LinkageError e) {
+            // An indexed class whose dependencies are missing, or of another JDK than the running one
+            return SymbolReference.unsolved();
+        }
+    }
+}
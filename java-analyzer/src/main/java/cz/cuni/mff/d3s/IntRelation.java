@@ -0,0 +1,81 @@
+package cz.cuni.mff.d3s;
+
+import java.util.Arrays;
+
+/**
+ * A set of directed edges between {@link SymbolTable} ids, stored as one growable int array of targets per source.
+ * Duplicate edges are ignored. Edges are numbered in the order they were added, see {@link #indexOf}.
+ */
+public class IntRelation {
+    private static final int[] NO_TARGETS = new int[0];
+
+    private int[][] targets = new int[256][];
+    private int[] targetCounts = new int[256];
+    private final LongIntHashMap edges = new LongIntHashMap();
+
+    @FunctionalInterface
+    public interface EdgeConsumer {
+        void accept(int from, int to);
+    }
+
+    /**
+     * @return true if the edge was not present before
+     */
+    public boolean add(int from, int to) {
+        if (edges.putIfAbsent(LongIntHashMap.pair(from, to), edges.size()) >= 0) {
+            return false;
+        }
+        ensureSource(from);
+        var fromTargets = targets[from];
+        if (fromTargets == null) {
+            fromTargets = targets[from] = new int[2];
+        } else if (targetCounts[from] == fromTargets.length) {
+            fromTargets = targets[from] = Arrays.copyOf(fromTargets, fromTargets.length * 2);
+        }
+        fromTargets[targetCounts[from]++] = to;
+        return true;
+    }
+
+    /**
+     * @return the number of edges added before the edge, or -1 if it is not present
+     */
+    public int indexOf(int from, int to) {
+        return edges.get(LongIntHashMap.pair(from, to));
+    }
+
+    public int[] getTargets(int from) {
+        if (from >= targets.length || targets[from] == null) {
+            return NO_TARGETS;
+        }
+        return Arrays.copyOf(targets[from], targetCounts[from]);
+    }
+
+    public void forEach(EdgeConsumer consumer) {
+        for (int from = 0; from < targets.length; from++) {
+            for (int i = 0; i < targetCounts[from]; i++) {
+                consumer.accept(from, targets[from][i]);
+            }
+        }
+    }
+
+    /**
+     * A new relation with every edge reversed.
+     */
+    public IntRelation inverse() {
+        var inverse = new IntRelation();
+        forEach((from, to) -> inverse.add(to, from));
+        return inverse;
+    }
+
+    public int size() {
+        return edges.size();
+    }
+
+    private void ensureSource(int from) {
+        if (from >= targets.length) {
+            var capacity = Math.max(targets.length * 2, from + 1);
+            targets = Arrays.copyOf(targets, capacity);
+            targetCounts = Arrays.copyOf(targetCounts, capacity);
+        }
+    }
+}
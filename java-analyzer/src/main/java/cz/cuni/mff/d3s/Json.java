@@ -0,0 +1,43 @@
+package cz.cuni.mff.d3s;
+
+import java.util.Collection;
+
+/**
+ * The little JSON the reports and the query API write, without a dependency on a JSON library.
+ */
+public class Json {
+    private Json() {
+    }
+
+    public static String quote(String text) {
+        var quoted = new StringBuilder("\"");
+        for (var c : text.toCharArray()) {
+            switch (c) {
+                case '"' -> quoted.append("\\\"");
+                case '\\' -> quoted.append("\\\\");
+                case '\n' -> quoted.append("\\n");
+                case '\r' -> quoted.append("\\r");
+                case '\t' -> quoted.append("\\t");
+                default -> {
+                    if (c < 0x20) {
+                        quoted.append(String.format("\\u%04x", (int) c));
+                    } else {
+                        quoted.append(c);
+                    }
+                }
+            }
+        }
+        return quoted.append('"').toString();
+    }
+
+    public static String array(Collection<String> values) {
+        var array = new StringBuilder("[");
+        for (var value : values) {
+            if (array.length() > 1) {
+                array.append(", ");
+            }
+            array.append(quote(value));
+        }
+        return array.append(']').toString();
+    }
+}
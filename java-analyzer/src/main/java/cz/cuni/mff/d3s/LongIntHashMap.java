@@ -0,0 +1,84 @@
+package cz.cuni.mff.d3s;
+
+import java.util.Arrays;
+
+/**
+ * Open addressing map from primitive longs to ints, used to number edges encoded as {@code from << 32 | to}.
+ */
+public class LongIntHashMap {
+    private static final long EMPTY = Long.MIN_VALUE;
+    private static final int NOT_FOUND = -1;
+
+    private long[] keys = newKeys(1024);
+    private int[] values = new int[1024];
+    private int size;
+
+    /**
+     * @return the value already mapped to the key, which is kept, or -1 if the value was added
+     */
+    public int putIfAbsent(long key, int value) {
+        if (key == EMPTY) {
+            throw new IllegalArgumentException("Key is reserved: " + key);
+        }
+        var slot = findSlot(keys, key);
+        if (keys[slot] == key) {
+            return values[slot];
+        }
+        keys[slot] = key;
+        values[slot] = value;
+        if (++size * 2 > keys.length) {
+            rehash();
+        }
+        return NOT_FOUND;
+    }
+
+    /**
+     * @return the value mapped to the key, or -1 if there is none
+     */
+    public int get(long key) {
+        var slot = findSlot(keys, key);
+        return keys[slot] == key ? values[slot] : NOT_FOUND;
+    }
+
+    public boolean containsKey(long key) {
+        return keys[findSlot(keys, key)] == key;
+    }
+
+    public int size() {
+        return size;
+    }
+
+    public static long pair(int first, int second) {
+        return ((long) first << 32) | (second & 0xFFFFFFFFL);
+    }
+
+    private void rehash() {
+        var newKeys = newKeys(keys.length * 2);
+        var newValues = new int[newKeys.length];
+        for (int i = 0; i < keys.length; i++) {
+            if (keys[i] != EMPTY) {
+                var slot = findSlot(newKeys, keys[i]);
+                newKeys[slot] = keys[i];
+                newValues[slot] = values[i];
+            }
+        }
+        keys = newKeys;
+        values = newValues;
+    }
+
+    private static int findSlot(long[] keys, long key) {
+        var mask = keys.length - 1;
+        var hash = key * 0x9E3779B97F4A7C15L;
+        var slot = (int) (hash ^ (hash >>> 32)) & mask;
+        while (keys[slot] != EMPTY && keys[slot] != key) {
+            slot = (slot + 1) & mask;
+        }
+        return slot;
+    }
+
+    private static long[] newKeys(int capacity) {
+        var keys = new long[capacity];
+        Arrays.fill(keys, EMPTY);
+        return keys;
+    }
+}
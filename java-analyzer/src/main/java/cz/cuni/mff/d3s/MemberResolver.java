@@ -0,0 +1,238 @@
+package cz.cuni.mff.d3s;
+
+import com.github.javaparser.ast.Node;
+import com.github.javaparser.ast.body.TypeDeclaration;
+import com.github.javaparser.ast.expr.Expression;
+import com.github.javaparser.ast.expr.FieldAccessExpr;
+import com.github.javaparser.ast.expr.MethodCallExpr;
+import com.github.javaparser.ast.expr.ObjectCreationExpr;
+import com.github.javaparser.resolution.declarations.ResolvedMethodDeclaration;
+import com.github.javaparser.resolution.declarations.ResolvedReferenceTypeDeclaration;
+
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.BiFunction;
+import java.util.function.Supplier;
+
+/**
+ * Resolves the declaring types of called methods and accessed fields, memoizing the successful lookups across
+ * compilation units. A lookup is identified by the type of its scope, the member name and (for methods) the number of
+ * arguments, so e.g. every {@code GraalError.shouldNotReachHere(...)} call with one argument is solved once. That only
+ * identifies a method if the scope type has a single method of that name and arity (including the inherited ones and
+ * the ones with variable arguments), otherwise the argument types decide and such lookups are always solved.
+ * <p>
+ * Lookups whose scope type cannot be determined cheaply (e.g. calls inside anonymous classes) are always solved too.
+ * Failed lookups are not memoized, as they may be caused by the unit (e.g. an argument that does not resolve) or by
+ * the {@link ResolutionBudget}. Shared by all worker threads.
+ * <p>
+ * Members of the JDK and library types of a {@link BinaryTypeIndex} are looked up in the index instead of being solved,
+ * when the type of the scope is known and (for methods) the name is not overloaded in it or its supertypes.
+ */
+public class MemberResolver {
+    // Lookups of a key which does not identify the member
+    private static final ResolvedMember AMBIGUOUS = new ResolvedMember("", "");
+
+    private final Optional<BinaryTypeIndex> typeIndex;
+    private final Map<String, ResolvedMember> resolvedMembers = new ConcurrentHashMap<>();
+    private final LongAdder hits = new LongAdder();
+    private final LongAdder misses = new LongAdder();
+    private final LongAdder uncached = new LongAdder();
+    private final LongAdder resolved = new LongAdder();
+    private final LongAdder unresolved = new LongAdder();
+    private final LongAdder indexed = new LongAdder();
+
+    public record ResolvedMember(String declaringType, String packageName) {
+    }
+
+    /**
+     * @param unique whether every lookup of the same key resolves to the member
+     */
+    private record Solution(ResolvedMember member, boolean unique) {
+    }
+
+    public MemberResolver() {
+        this(Optional.empty());
+    }
+
+    public MemberResolver(Optional<BinaryTypeIndex> typeIndex) {
+        this.typeIndex = typeIndex;
+    }
+
+    /**
+     * @param importedTypes simple names of the types visible in the unit through single-type imports or declarations
+     * @param facts         where the scope type of a resolved inherited member is recorded, see
+     *                      {@link UnitFacts#addMemberScope}
+     */
+    public Optional<ResolvedMember> resolve(MethodCallExpr call, Map<String, String> importedTypes, UnitFacts facts) {
+        var scopeType = call.getScope().isPresent()
+                ? getScopeType(call.getScope().get(), importedTypes)
+                : getEnclosingType(call);
+        var key = scopeType == null ? null : scopeType + "#" + call.getNameAsString() + "/" + call.getArguments().size();
+        return resolve(key, scopeType, facts, () -> {
+            var member = findIndexed(scopeType, (index, type) -> index.findMethodDeclaringType(type, call.getNameAsString(), call.getArguments().size()));
+            if (member.isPresent()) {
+                return new Solution(member.get(), true);
+            }
+            var method = call.resolve();
+            return new Solution(new ResolvedMember(method.declaringType().getQualifiedName(), method.getPackageName()),
+                    key != null && hasSingleOverload(call, method, scopeType));
+        });
+    }
+
+    public Optional<ResolvedMember> resolve(FieldAccessExpr access, Map<String, String> importedTypes, UnitFacts facts) {
+        var scopeType = getScopeType(access.getScope(), importedTypes);
+        var key = scopeType == null ? null : scopeType + "." + access.getNameAsString();
+        return resolve(key, scopeType, facts, () -> {
+            var member = findIndexed(scopeType, (index, type) -> index.findFieldDeclaringType(type, access.getNameAsString()));
+            if (member.isPresent()) {
+                return new Solution(member.get(), true);
+            }
+            var value = access.resolve();
+            if (!value.isField()) {
+                throw new IllegalStateException(access + " is not a field access");
+            }
+            var declaringType = value.asField().declaringType();
+            // Fields are not overloaded, the scope type decides
+            return new Solution(new ResolvedMember(declaringType.getQualifiedName(), declaringType.getPackageName()), true);
+        });
+    }
+
+    public void printStatistics() {
+        var total = resolved.sum() + unresolved.sum();
+        System.out.printf("Resolution: %d of %d references resolved (%.1f%%), cache %d hits, %d misses, %d not cacheable, %d from the type index%n",
+                resolved.sum(), total, total == 0 ? 0.0 : resolved.sum() * 100.0 / total, hits.sum(), misses.sum(), uncached.sum(), indexed.sum());
+    }
+
+    private Optional<ResolvedMember> resolve(String key, String scopeType, UnitFacts facts, Supplier<Solution> solver) {
+        var cached = key == null ? null : resolvedMembers.get(key);
+        Optional<ResolvedMember> member;
+        if (key == null || cached == AMBIGUOUS) {
+            uncached.increment();
+            member = solve(solver).map(Solution::member);
+        } else if (cached != null) {
+            hits.increment();
+            member = Optional.of(cached);
+        } else {
+            misses.increment();
+            var solution = solve(solver);
+            solution.ifPresent(s -> resolvedMembers.putIfAbsent(key, s.unique() ? s.member() : AMBIGUOUS));
+            member = solution.map(Solution::member);
+        }
+        if (member.isPresent() && scopeType != null) {
+            var typeArguments = scopeType.indexOf('<');
+            var rawScopeType = typeArguments < 0 ? scopeType : scopeType.substring(0, typeArguments);
+            if (!rawScopeType.equals(member.get().declaringType())) {
+                facts.addMemberScope(rawScopeType);
+            }
+        }
+        return count(member);
+    }
+
+    /**
+     * Whether the type the method was looked up in has no other method of the same name that a call with the same
+     * number of arguments could resolve to.
+     */
+    private static boolean hasSingleOverload(MethodCallExpr call, ResolvedMethodDeclaration method, String scopeType) {
+        try {
+            var scope = getScopeDeclaration(call, method, scopeType);
+            if (scope.isEmpty()) {
+                return false;
+            }
+            var arity = call.getArguments().size();
+            var overloads = 0;
+            for (var candidate : scope.get().getAllMethods()) {
+                var parameters = candidate.getNoParams();
+                if (candidate.getName().equals(call.getNameAsString()) && (parameters == arity
+                        || candidate.getDeclaration().hasVariadicParameter() && arity >= parameters - 1)) {
+                    overloads++;
+                }
+            }
+            return overloads == 1;
+        } catch (ResolutionBudget.ExceededException e) {
+            throw e;
+        } catch (Exception e) {
+            return false;
+        }
+    }
+
+    private static Optional<ResolvedReferenceTypeDeclaration> getScopeDeclaration(MethodCallExpr call, ResolvedMethodDeclaration method,
+                                                                                  String scopeType) {
+        var scope = call.getScope();
+        if (scope.isEmpty() || scope.get().isThisExpr() && scope.get().asThisExpr().getTypeName().isEmpty()) {
+            for (var parent = call.getParentNode(); parent.isPresent(); parent = parent.get().getParentNode()) {
+                if (parent.get() instanceof TypeDeclaration<?> type) {
+                    return Optional.of(type.resolve());
+                }
+            }
+            return Optional.empty();
+        }
+        var typeArguments = scopeType.indexOf('<');
+        if (method.declaringType().getQualifiedName().equals(typeArguments < 0 ? scopeType : scopeType.substring(0, typeArguments))) {
+            return Optional.of(method.declaringType());
+        }
+        var type = scope.get().calculateResolvedType();
+        return type.isReferenceType() ? type.asReferenceType().getTypeDeclaration() : Optional.empty();
+    }
+
+    /**
+     * @param scopeType a described type, with its type arguments if it has any
+     * @param lookup    finds the member in the index, given the raw scope type
+     */
+    private Optional<ResolvedMember> findIndexed(String scopeType, BiFunction<BinaryTypeIndex, String, Optional<ResolvedMember>> lookup) {
+        if (typeIndex.isEmpty() || scopeType == null || scopeType.endsWith("]")) {
+            return Optional.empty();
+        }
+        var typeArguments = scopeType.indexOf('<');
+        var resolvedMember = lookup.apply(typeIndex.get(), typeArguments < 0 ? scopeType : scopeType.substring(0, typeArguments));
+        if (resolvedMember.isPresent()) {
+            indexed.increment();
+        }
+        return resolvedMember;
+    }
+
+    private Optional<ResolvedMember> count(Optional<ResolvedMember> member) {
+        (member.isPresent() ? resolved : unresolved).increment();
+        return member;
+    }
+
+    private static Optional<Solution> solve(Supplier<Solution> solver) {
+        try {
+            return Optional.of(solver.get());
+        } catch (Exception e) {
+            return Optional.empty();
+        }
+    }
+
+    private static String getScopeType(Expression scope, Map<String, String> importedTypes) {
+        if (scope.isNameExpr()) {
+            // Static member of a known type, solving the name as a value first would fail anyway
+            var importedType = importedTypes.get(scope.asNameExpr().getNameAsString());
+            if (importedType != null) {
+                return importedType;
+            }
+        }
+        if (scope.isThisExpr() && scope.asThisExpr().getTypeName().isEmpty()) {
+            return getEnclosingType(scope);
+        }
+        try {
+            return scope.calculateResolvedType().describe();
+        } catch (Exception e) {
+            return null;
+        }
+    }
+
+    private static String getEnclosingType(Node node) {
+        for (var parent = node.getParentNode(); parent.isPresent(); parent = parent.get().getParentNode()) {
+            if (parent.get() instanceof ObjectCreationExpr creation && creation.getAnonymousClassBody().isPresent()) {
+                return null;
+            }
+            if (parent.get() instanceof TypeDeclaration<?> type) {
+                // Local classes have no qualified name
+                return type.getFullyQualifiedName().orElse(null);
+            }
+        }
+        return null;
+    }
+}
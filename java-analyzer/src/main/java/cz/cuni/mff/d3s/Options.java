@@ -0,0 +1,178 @@
+package cz.cuni.mff.d3s;
+
+import java.nio.file.Path;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+
+/**
+ * Optional command line switches given after the mode and the repository path, e.g. {@code --parallelism=8}.
+ */
+public class Options {
+    private static final List<String> KNOWN_OPTIONS = List.of("parallelism", "in-flight", "solver-cache", "cache-dir", "type-index",
+            "spill-dir", "comment-index", "file-budget", "resolve-budget", "quarantine", "report", "graphs", "format", "output",
+            "prefix", "imports-only", "revisions", "top", "port");
+
+    private final Map<String, String> values = new HashMap<>();
+
+    public static Options parse(String[] args, int offset) {
+        var options = new Options();
+        for (int i = offset; i < args.length; i++) {
+            var arg = args[i];
+            if (!arg.startsWith("--")) {
+                throw new IllegalArgumentException("Unexpected argument: " + arg);
+            }
+            var separator = arg.indexOf('=');
+            var name = separator < 0 ? arg.substring(2) : arg.substring(2, separator);
+            // A mistyped option would silently run with the default
+            if (!KNOWN_OPTIONS.contains(name)) {
+                throw new IllegalArgumentException("Unknown option: --" + name + ", the options are --" + String.join(", --", KNOWN_OPTIONS));
+            }
+            options.values.put(name, separator < 0 ? "true" : arg.substring(separator + 1));
+        }
+        return options;
+    }
+
+    public int getParallelism() {
+        var parallelism = getInt("parallelism", 1);
+        if (parallelism < 1) {
+            throw new IllegalArgumentException("Parallelism must be positive: " + parallelism);
+        }
+        return parallelism;
+    }
+
+    /**
+     * Maximum number of files being analyzed or waiting to be added to the model, see {@link UnitPipeline}.
+     */
+    public int getInFlightFiles() {
+        var inFlight = getInt("in-flight", 4 * getParallelism());
+        if (inFlight < 1) {
+            throw new IllegalArgumentException("Number of files in flight must be positive: " + inFlight);
+        }
+        return inFlight;
+    }
+
+    public int getPort() {
+        var port = getInt("port", 7070);
+        if (port < 0 || port > 65535) {
+            throw new IllegalArgumentException("Invalid port: " + port);
+        }
+        return port;
+    }
+
+    /**
+     * Maximum number of parsed files, directory listings and found types each type solver of a source root caches.
+     */
+    public int getSolverCacheSize() {
+        var size = getInt("solver-cache", Analyzer.DEFAULT_SOLVER_CACHE_SIZE);
+        if (size < 1) {
+            throw new IllegalArgumentException("Solver cache size must be positive: " + size);
+        }
+        return size;
+    }
+
+    /**
+     * Number of entries in every ranking of the analytics report.
+     */
+    public int getTop() {
+        var top = getInt("top", 10);
+        if (top < 1) {
+            throw new IllegalArgumentException("Top must be positive: " + top);
+        }
+        return top;
+    }
+
+    /**
+     * Revision range of the drift mode, {@code <from>..<to>}.
+     */
+    public Optional<String> getRevisions() {
+        return Optional.ofNullable(values.get("revisions"));
+    }
+
+    /**
+     * Budget of parsing a file and resolving its references in milliseconds, 0 for no limit.
+     */
+    public int getFileBudget() {
+        return getBudget("file-budget");
+    }
+
+    /**
+     * Budget of resolving a single reference in milliseconds, 0 for no limit.
+     */
+    public int getResolutionBudget() {
+        return getBudget("resolve-budget");
+    }
+
+    /**
+     * The list of files over their budget, by default stored with the cache. Only used with a file or resolution
+     * budget.
+     */
+    public Optional<Path> getQuarantineFile() {
+        return Optional.ofNullable(values.get("quarantine")).map(Path::of)
+                .or(() -> getCacheDirectory().map(directory -> directory.resolve("quarantine.txt")));
+    }
+
+    public Optional<Path> getCacheDirectory() {
+        return Optional.ofNullable(values.get("cache-dir")).map(Path::of);
+    }
+
+    public Optional<Path> getTypeIndexFile() {
+        return Optional.ofNullable(values.get("type-index")).map(Path::of);
+    }
+
+    public Optional<Path> getSpillDirectory() {
+        return Optional.ofNullable(values.get("spill-dir")).map(Path::of);
+    }
+
+    public boolean isCommentIndexEnabled() {
+        return Boolean.parseBoolean(values.getOrDefault("comment-index", "false"));
+    }
+
+    /**
+     * Whether the package graph comes from the import declarations only, see {@link ImportScan}.
+     */
+    public boolean isImportsOnly() {
+        return Boolean.parseBoolean(values.getOrDefault("imports-only", "false"));
+    }
+
+    public Optional<Path> getReportFile() {
+        return Optional.ofNullable(values.get("report")).map(Path::of);
+    }
+
+    public GraphFormat getFormat() {
+        return GraphFormat.parse(values.getOrDefault("format", "dot"));
+    }
+
+    public Path getOutputDirectory() {
+        return Path.of(values.getOrDefault("output", "."));
+    }
+
+    public Optional<String> getPrefix() {
+        return Optional.ofNullable(values.get("prefix"));
+    }
+
+    public List<String> getGraphs() {
+        return List.of(values.getOrDefault("graphs", "project,package,class").split(","));
+    }
+
+    private int getBudget(String name) {
+        var budget = getInt(name, 0);
+        if (budget < 0) {
+            throw new IllegalArgumentException("Budget must not be negative: " + budget);
+        }
+        return budget;
+    }
+
+    private int getInt(String name, int defaultValue) {
+        var value = values.get(name);
+        if (value == null) {
+            return defaultValue;
+        }
+        try {
+            return Integer.parseInt(value);
+        } catch (NumberFormatException e) {
+            throw new IllegalArgumentException("Option --" + name + " expects a number, got: " + value);
+        }
+    }
+}
@@ -0,0 +1,434 @@
+package cz.cuni.mff.d3s;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.Closeable;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.PriorityQueue;
+
+/**
+ * Records of a few ints kept on disk: a key of {@code keyWidth} ints followed by a value. Records are appended to
+ * segment files of a fixed number of records; when the records are first read, every segment is sorted by the key
+ * into a run, records with the same key are merged by summing their values, and the runs are merged into a single
+ * sorted file, which is then streamed on every read or binary-searched by {@link #find}. Only one segment is sorted
+ * in memory at a time and the merge keeps one record per run, so the heap needed does not depend on the number of
+ * records. The segments and runs are deleted as soon as they are merged, the sorted file by {@link #close()}.
+ * <p>
+ * Records can only be appended before the first read. Not thread-safe, except for {@link #find}.
+ */
+public class RecordStore implements Closeable {
+    private static final int SEGMENT_BYTES = 16 * 1024 * 1024;
+
+    private final Path directory;
+    private final String name;
+    private final int keyWidth;
+    private final int width;
+    private final int segmentRecords;
+    private final List<Path> segments = new ArrayList<>();
+    private final List<Integer> segmentSizes = new ArrayList<>();
+    private DataOutputStream segment;
+    private int segmentSize;
+    private Path sortedFile;
+    private FileChannel sortedChannel;
+    private long size;
+
+    /**
+     * Reads the records of a sorted store in the order of their keys.
+     */
+    public class Cursor implements Closeable {
+        private final DataInputStream input;
+
+        private Cursor() throws IOException {
+            input = new DataInputStream(new BufferedInputStream(Files.newInputStream(sortedFile), 64 * 1024));
+        }
+
+        /**
+         * @param record filled with the key and the value of the next record
+         * @return false if there are no more records
+         */
+        public boolean next(int[] record) {
+            try {
+                return readRecord(input, record);
+            } catch (IOException e) {
+                throw new UncheckedIOException("Could not read " + sortedFile, e);
+            }
+        }
+
+        @Override
+        public void close() {
+            try {
+                input.close();
+            } catch (IOException e) {
+                throw new UncheckedIOException("Could not close " + sortedFile, e);
+            }
+        }
+    }
+
+    @FunctionalInterface
+    public interface RecordConsumer {
+        /**
+         * @param record the key and the value, only valid during the call
+         */
+        void accept(int[] record);
+    }
+
+    /**
+     * @param directory where the files of the store are created, it must exist
+     * @param name      prefix of the file names, unique in the directory
+     */
+    public RecordStore(Path directory, String name, int keyWidth) {
+        this(directory, name, keyWidth, SEGMENT_BYTES / ((keyWidth + 1) * Integer.BYTES));
+    }
+
+    /**
+     * @param segmentRecords the number of records sorted in memory at a time
+     */
+    RecordStore(Path directory, String name, int keyWidth, int segmentRecords) {
+        this.directory = directory;
+        this.name = name;
+        this.keyWidth = keyWidth;
+        this.segmentRecords = segmentRecords;
+        width = keyWidth + 1;
+    }
+
+    /**
+     * @param record the key followed by the value
+     */
+    public void append(int[] record) {
+        if (sortedFile != null) {
+            throw new IllegalStateException("Records of " + name + " were read already");
+        }
+        if (segment == null || segmentSize == segmentRecords) {
+            newSegment();
+        }
+        try {
+            for (int i = 0; i < width; i++) {
+                segment.writeInt(record[i]);
+            }
+        } catch (IOException e) {
+            throw new UncheckedIOException("Could not write the records of " + name, e);
+        }
+        segmentSize++;
+    }
+
+    /**
+     * Number of distinct keys, sorts the records if needed.
+     */
+    public long size() {
+        sort();
+        return size;
+    }
+
+    public Cursor cursor() {
+        sort();
+        try {
+            return new Cursor();
+        } catch (IOException e) {
+            throw new UncheckedIOException("Could not read " + sortedFile, e);
+        }
+    }
+
+    public void forEach(RecordConsumer consumer) {
+        var record = new int[width];
+        try (var cursor = cursor()) {
+            while (cursor.next(record)) {
+                consumer.accept(record);
+            }
+        }
+    }
+
+    /**
+     * Passes the records whose keys start with the prefix to the consumer in the order of their keys, found by a
+     * binary search of the sorted file. Sorts the records if needed, concurrent calls are safe once they are sorted.
+     *
+     * @param prefix the first ints of the keys, at most {@code keyWidth}
+     */
+    public void find(int[] prefix, RecordConsumer consumer) {
+        var channel = getSortedChannel();
+        var recordBytes = width * Integer.BYTES;
+        var buffer = ByteBuffer.allocate(recordBytes);
+        var record = new int[width];
+        try {
+            // The first record not less than the prefix
+            long low = 0, high = size;
+            while (low < high) {
+                var middle = (low + high) >>> 1;
+                readRecord(channel, middle, buffer, record);
+                if (comparePrefix(record, prefix) < 0) {
+                    low = middle + 1;
+                } else {
+                    high = middle;
+                }
+            }
+            for (var position = low; position < size; position++) {
+                readRecord(channel, position, buffer, record);
+                if (comparePrefix(record, prefix) != 0) {
+                    break;
+                }
+                consumer.accept(record);
+            }
+        } catch (IOException e) {
+            throw new UncheckedIOException("Could not read " + sortedFile, e);
+        }
+    }
+
+    /**
+     * Deletes the files of the store, it cannot be used afterwards.
+     */
+    @Override
+    public synchronized void close() {
+        try {
+            if (segment != null) {
+                segment.close();
+                segment = null;
+            }
+            if (sortedChannel != null) {
+                sortedChannel.close();
+            }
+            for (var file : segments) {
+                Files.deleteIfExists(file);
+            }
+            if (sortedFile != null) {
+                Files.deleteIfExists(sortedFile);
+            }
+        } catch (IOException e) {
+            throw new UncheckedIOException("Could not delete the files of " + name, e);
+        }
+    }
+
+    private synchronized FileChannel getSortedChannel() {
+        sort();
+        if (sortedChannel == null) {
+            try {
+                sortedChannel = FileChannel.open(sortedFile, StandardOpenOption.READ);
+            } catch (IOException e) {
+                throw new UncheckedIOException("Could not read " + sortedFile, e);
+            }
+        }
+        return sortedChannel;
+    }
+
+    private void readRecord(FileChannel channel, long position, ByteBuffer buffer, int[] record) throws IOException {
+        buffer.clear();
+        var offset = position * buffer.capacity();
+        while (buffer.hasRemaining()) {
+            if (channel.read(buffer, offset + buffer.position()) < 0) {
+                throw new EOFException("Truncated " + sortedFile);
+            }
+        }
+        buffer.flip().asIntBuffer().get(record);
+    }
+
+    private int comparePrefix(int[] record, int[] prefix) {
+        for (int i = 0; i < prefix.length; i++) {
+            var comparison = Integer.compare(record[i], prefix[i]);
+            if (comparison != 0) {
+                return comparison;
+            }
+        }
+        return 0;
+    }
+
+    private void newSegment() {
+        finishSegment();
+        var file = directory.resolve(name + "-" + segments.size() + ".segment");
+        try {
+            segment = new DataOutputStream(new BufferedOutputStream(Files.newOutputStream(file, StandardOpenOption.CREATE_NEW,
+                    StandardOpenOption.WRITE), 64 * 1024));
+        } catch (IOException e) {
+            throw new UncheckedIOException("Could not create " + file, e);
+        }
+        segments.add(file);
+        segmentSize = 0;
+    }
+
+    private void finishSegment() {
+        if (segment != null) {
+            try {
+                segment.close();
+            } catch (IOException e) {
+                throw new UncheckedIOException("Could not write the records of " + name, e);
+            }
+            segmentSizes.add(segmentSize);
+            segment = null;
+        }
+    }
+
+    private void sort() {
+        if (sortedFile != null) {
+            return;
+        }
+        finishSegment();
+        try {
+            var runs = new ArrayList<Path>();
+            for (int i = 0; i < segments.size(); i++) {
+                runs.add(sortSegment(segments.get(i), segmentSizes.get(i)));
+                Files.delete(segments.get(i));
+            }
+            var file = directory.resolve(name + ".sorted");
+            size = merge(runs, file);
+            for (var run : runs) {
+                Files.delete(run);
+            }
+            sortedFile = file;
+        } catch (IOException e) {
+            throw new UncheckedIOException("Could not sort the records of " + name, e);
+        }
+    }
+
+    /**
+     * Sorts the records of a segment into a run file, merging the records with the same key.
+     */
+    private Path sortSegment(Path file, int records) throws IOException {
+        var data = new int[records * width];
+        try (var input = new DataInputStream(new BufferedInputStream(Files.newInputStream(file), 64 * 1024))) {
+            for (int i = 0; i < data.length; i++) {
+                data[i] = input.readInt();
+            }
+        }
+        var order = new int[records];
+        for (int i = 0; i < records; i++) {
+            order[i] = i;
+        }
+        mergeSort(data, order, new int[records]);
+
+        var run = directory.resolve(file.getFileName().toString().replace(".segment", ".run"));
+        try (var output = new DataOutputStream(new BufferedOutputStream(Files.newOutputStream(run), 64 * 1024))) {
+            var previous = -1;
+            var value = 0;
+            for (var record : order) {
+                if (previous >= 0 && compareKeys(data, previous * width, data, record * width) != 0) {
+                    writeRecord(output, data, previous * width, value);
+                    value = 0;
+                }
+                value += data[record * width + keyWidth];
+                previous = record;
+            }
+            if (previous >= 0) {
+                writeRecord(output, data, previous * width, value);
+            }
+        }
+        return run;
+    }
+
+    /**
+     * A bottom-up merge sort of the record numbers by their keys, stable and without boxing.
+     */
+    private void mergeSort(int[] data, int[] order, int[] buffer) {
+        var source = order;
+        var target = buffer;
+        for (int length = 1; length < order.length; length *= 2) {
+            for (int start = 0; start < order.length; start += 2 * length) {
+                var middle = Math.min(start + length, order.length);
+                var end = Math.min(start + 2 * length, order.length);
+                int left = start, right = middle, out = start;
+                while (left < middle && right < end) {
+                    target[out++] = compareKeys(data, source[right] * width, data, source[left] * width) < 0 ? source[right++] : source[left++];
+                }
+                while (left < middle) {
+                    target[out++] = source[left++];
+                }
+                while (right < end) {
+                    target[out++] = source[right++];
+                }
+            }
+            var swap = source;
+            source = target;
+            target = swap;
+        }
+        if (source != order) {
+            System.arraycopy(source, 0, order, 0, order.length);
+        }
+    }
+
+    /**
+     * Merges the sorted runs into the file, merging the records with the same key.
+     *
+     * @return the number of records in the file
+     */
+    private long merge(List<Path> runs, Path file) throws IOException {
+        record RunReader(DataInputStream input, int[] record) {
+        }
+        var queue = new PriorityQueue<RunReader>((a, b) -> compareKeys(a.record(), 0, b.record(), 0));
+        var count = 0L;
+        try (var output = new DataOutputStream(new BufferedOutputStream(Files.newOutputStream(file), 64 * 1024))) {
+            for (var run : runs) {
+                var reader = new RunReader(new DataInputStream(new BufferedInputStream(Files.newInputStream(run), 64 * 1024)), new int[width]);
+                if (readRecord(reader.input(), reader.record())) {
+                    queue.add(reader);
+                } else {
+                    reader.input().close();
+                }
+            }
+            var current = new int[width];
+            var hasCurrent = false;
+            while (!queue.isEmpty()) {
+                var reader = queue.poll();
+                if (hasCurrent && compareKeys(current, 0, reader.record(), 0) == 0) {
+                    current[keyWidth] += reader.record()[keyWidth];
+                } else {
+                    if (hasCurrent) {
+                        writeRecord(output, current, 0, current[keyWidth]);
+                        count++;
+                    }
+                    System.arraycopy(reader.record(), 0, current, 0, width);
+                    hasCurrent = true;
+                }
+                if (readRecord(reader.input(), reader.record())) {
+                    queue.add(reader);
+                } else {
+                    reader.input().close();
+                }
+            }
+            if (hasCurrent) {
+                writeRecord(output, current, 0, current[keyWidth]);
+                count++;
+            }
+        } finally {
+            for (var reader : queue) {
+                reader.input().close();
+            }
+        }
+        return count;
+    }
+
+    private int compareKeys(int[] a, int aOffset, int[] b, int bOffset) {
+        for (int i = 0; i < keyWidth; i++) {
+            var comparison = Integer.compare(a[aOffset + i], b[bOffset + i]);
+            if (comparison != 0) {
+                return comparison;
+            }
+        }
+        return 0;
+    }
+
+    private void writeRecord(DataOutputStream output, int[] data, int offset, int value) throws IOException {
+        for (int i = 0; i < keyWidth; i++) {
+            output.writeInt(data[offset + i]);
+        }
+        output.writeInt(value);
+    }
+
+    private boolean readRecord(DataInputStream input, int[] record) throws IOException {
+        try {
+            record[0] = input.readInt();
+        } catch (EOFException e) {
+            return false;
+        }
+        for (int i = 1; i < width; i++) {
+            record[i] = input.readInt();
+        }
+        return true;
+    }
+}
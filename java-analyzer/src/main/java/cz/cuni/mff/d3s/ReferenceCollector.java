@@ -0,0 +1,285 @@
+package cz.cuni.mff.d3s;
+
+import com.github.javaparser.ast.CompilationUnit;
+import com.github.javaparser.ast.PackageDeclaration;
+import com.github.javaparser.ast.NodeList;
+import com.github.javaparser.ast.body.AnnotationDeclaration;
+import com.github.javaparser.ast.body.ClassOrInterfaceDeclaration;
+import com.github.javaparser.ast.body.ConstructorDeclaration;
+import com.github.javaparser.ast.body.EnumDeclaration;
+import com.github.javaparser.ast.body.MethodDeclaration;
+import com.github.javaparser.ast.body.RecordDeclaration;
+import com.github.javaparser.ast.body.TypeDeclaration;
+import com.github.javaparser.ast.expr.FieldAccessExpr;
+import com.github.javaparser.ast.expr.MarkerAnnotationExpr;
+import com.github.javaparser.ast.expr.MethodCallExpr;
+import com.github.javaparser.ast.expr.NormalAnnotationExpr;
+import com.github.javaparser.ast.expr.ObjectCreationExpr;
+import com.github.javaparser.ast.expr.SingleMemberAnnotationExpr;
+import com.github.javaparser.ast.nodeTypes.NodeWithExtends;
+import com.github.javaparser.ast.nodeTypes.NodeWithImplements;
+import com.github.javaparser.ast.type.ClassOrInterfaceType;
+import com.github.javaparser.ast.type.TypeParameter;
+import com.github.javaparser.ast.visitor.VoidVisitorAdapter;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Optional;
+import java.util.Set;
+
+/**
+ * Collects all references of a compilation unit into its {@link UnitFacts} in a single traversal of its AST: method
+ * calls and field accesses, which are resolved by the symbol solver, and the types named by the unit, which are
+ * recorded by their names and resolved by {@link SourceAnalysis#resolveSymbols()} like the unresolved calls. The
+ * references of nested classes belong to their top-level class, the static imports to the primary type of the unit.
+ * <p>
+ * A named type is an inheritance if it is extended or implemented, an instantiation if it is created by {@code new}, an
+ * annotation, a static import, and a type use everywhere else (types of fields, parameters, return values, local
+ * variables, casts, type arguments, ...). Types imported from {@code java.*} are skipped, and so are the type
+ * parameters of the enclosing types and methods and the member types of the enclosing types and of their supertypes
+ * declared in the unit, which would otherwise be resolved to unrelated top-level classes of the same simple name.
+ */
+public class ReferenceCollector extends VoidVisitorAdapter<Void> {
+    private final UnitFacts facts;
+    private final MemberResolver resolver;
+    private final ResolutionBudget budget;
+    private final Map<String, String> importedTypes;
+    private final Optional<PackageDeclaration> declaredPackage;
+    private final Deque<String> typeParameters = new ArrayDeque<>();
+    // Simple names of the member types visible in every enclosing type
+    private final Deque<Set<String>> memberTypes = new ArrayDeque<>();
+    private final Map<String, TypeDeclaration<?>> unitTypes = new HashMap<>();
+    private TypeDeclaration<?> clazz;
+    private String className;
+
+    /**
+     * @param importedTypes simple names of the types visible in the unit through single-type imports or declarations
+     * @param budget        a budget whose file was started on the current thread
+     */
+    public ReferenceCollector(UnitFacts facts, MemberResolver resolver, ResolutionBudget budget, Map<String, String> importedTypes,
+                              Optional<PackageDeclaration> declaredPackage) {
+        this.facts = facts;
+        this.resolver = resolver;
+        this.budget = budget;
+        this.importedTypes = importedTypes;
+        this.declaredPackage = declaredPackage;
+    }
+
+    public void collect(CompilationUnit unit) {
+        for (TypeDeclaration<?> type : unit.findAll(TypeDeclaration.class)) {
+            unitTypes.putIfAbsent(type.getNameAsString(), type);
+        }
+        // The type named after the file, or the first one
+        var primaryType = unit.getPrimaryType().or(() -> unit.getTypes().getFirst());
+        if (primaryType.isPresent()) {
+            className = primaryType.get().getFullyQualifiedName().orElse(null);
+            for (var importDeclaration : unit.getImports()) {
+                if (importDeclaration.isStatic()) {
+                    var name = importDeclaration.getName();
+                    addTypeReference((importDeclaration.isAsterisk() ? name : name.getQualifier().orElse(name)).asString(),
+                            ReferenceKind.STATIC_IMPORT);
+                }
+            }
+        }
+        for (var type : unit.getTypes()) {
+            clazz = type;
+            className = type.getFullyQualifiedName().orElse(null);
+            type.accept(this, null);
+        }
+    }
+
+    @Override
+    public void visit(ClassOrInterfaceDeclaration declaration, Void arg) {
+        // Declared before the bounds and the supertypes, which may use them
+        pushTypeParameters(declaration.getTypeParameters());
+        pushMemberTypes(declaration);
+        super.visit(declaration, arg);
+        memberTypes.pop();
+        popTypeParameters(declaration.getTypeParameters());
+    }
+
+    @Override
+    public void visit(RecordDeclaration declaration, Void arg) {
+        pushTypeParameters(declaration.getTypeParameters());
+        pushMemberTypes(declaration);
+        super.visit(declaration, arg);
+        memberTypes.pop();
+        popTypeParameters(declaration.getTypeParameters());
+    }
+
+    @Override
+    public void visit(EnumDeclaration declaration, Void arg) {
+        pushMemberTypes(declaration);
+        super.visit(declaration, arg);
+        memberTypes.pop();
+    }
+
+    @Override
+    public void visit(AnnotationDeclaration declaration, Void arg) {
+        pushMemberTypes(declaration);
+        super.visit(declaration, arg);
+        memberTypes.pop();
+    }
+
+    @Override
+    public void visit(MethodDeclaration declaration, Void arg) {
+        pushTypeParameters(declaration.getTypeParameters());
+        super.visit(declaration, arg);
+        popTypeParameters(declaration.getTypeParameters());
+    }
+
+    @Override
+    public void visit(ConstructorDeclaration declaration, Void arg) {
+        pushTypeParameters(declaration.getTypeParameters());
+        super.visit(declaration, arg);
+        popTypeParameters(declaration.getTypeParameters());
+    }
+
+    @Override
+    public void visit(MethodCallExpr call, Void arg) {
+        var resolved = budget.resolve(() -> resolver.resolve(call, importedTypes, facts));
+        facts.countResolution(resolved.isPresent());
+        if (resolved.isPresent()) {
+            facts.addMethodCall(declaredPackage, clazz, resolved.get());
+        } else {
+            facts.addUnresolvedCall(clazz, call);
+        }
+        super.visit(call, arg);
+    }
+
+    @Override
+    public void visit(FieldAccessExpr access, Void arg) {
+        // Every access is recorded, repeated ones add to the weight of the reference
+        var resolved = budget.resolve(() -> resolver.resolve(access, importedTypes, facts));
+        facts.countResolution(resolved.isPresent());
+        if (resolved.isPresent()) {
+            facts.addFieldAccess(declaredPackage, clazz, resolved.get());
+        } else {
+            facts.addUnresolvedFieldAccess(clazz, access);
+        }
+        super.visit(access, arg);
+    }
+
+    @Override
+    public void visit(ClassOrInterfaceType type, Void arg) {
+        if (type.getScope().isPresent() || !typeParameters.contains(type.getNameAsString())) {
+            addTypeReference(type.getNameWithScope(), getTypeKind(type));
+        }
+        // The scope is a part of the name, not another reference
+        type.getTypeArguments().ifPresent(arguments -> arguments.accept(this, arg));
+        type.getAnnotations().accept(this, arg);
+    }
+
+    @Override
+    public void visit(MarkerAnnotationExpr annotation, Void arg) {
+        addTypeReference(annotation.getNameAsString(), ReferenceKind.ANNOTATION);
+        super.visit(annotation, arg);
+    }
+
+    @Override
+    public void visit(SingleMemberAnnotationExpr annotation, Void arg) {
+        addTypeReference(annotation.getNameAsString(), ReferenceKind.ANNOTATION);
+        super.visit(annotation, arg);
+    }
+
+    @Override
+    public void visit(NormalAnnotationExpr annotation, Void arg) {
+        addTypeReference(annotation.getNameAsString(), ReferenceKind.ANNOTATION);
+        super.visit(annotation, arg);
+    }
+
+    private void pushTypeParameters(NodeList<TypeParameter> declared) {
+        for (var typeParameter : declared) {
+            typeParameters.push(typeParameter.getNameAsString());
+        }
+    }
+
+    private void popTypeParameters(NodeList<TypeParameter> declared) {
+        for (int i = 0; i < declared.size(); i++) {
+            typeParameters.pop();
+        }
+    }
+
+    private void pushMemberTypes(TypeDeclaration<?> declaration) {
+        var names = new HashSet<String>();
+        addMemberTypes(declaration, names, new HashSet<>());
+        memberTypes.push(names);
+    }
+
+    /**
+     * Adds the simple names of the member types of the type and of its supertypes found in the unit, the supertypes
+     * declared elsewhere are not known here.
+     */
+    private void addMemberTypes(TypeDeclaration<?> declaration, Set<String> names, Set<String> visitedTypes) {
+        if (!visitedTypes.add(declaration.getNameAsString())) {
+            return;
+        }
+        for (var member : declaration.getMembers()) {
+            if (member instanceof TypeDeclaration<?> memberType) {
+                names.add(memberType.getNameAsString());
+            }
+        }
+        var supertypes = new ArrayList<ClassOrInterfaceType>();
+        if (declaration instanceof NodeWithExtends<?> extending) {
+            supertypes.addAll(extending.getExtendedTypes());
+        }
+        if (declaration instanceof NodeWithImplements<?> implementing) {
+            supertypes.addAll(implementing.getImplementedTypes());
+        }
+        for (var supertype : supertypes) {
+            var knownType = unitTypes.get(supertype.getNameAsString());
+            if (knownType != null) {
+                addMemberTypes(knownType, names, visitedTypes);
+            }
+        }
+    }
+
+    private boolean isMemberType(String simpleName) {
+        for (var names : memberTypes) {
+            if (names.contains(simpleName)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private static ReferenceKind getTypeKind(ClassOrInterfaceType type) {
+        var parent = type.getParentNode().orElse(null);
+        if (parent instanceof ObjectCreationExpr creation && creation.getType() == type) {
+            return ReferenceKind.INSTANTIATION;
+        }
+        if (parent instanceof TypeDeclaration<?>) {
+            // Extended or implemented, unless it is a subclass permitted by a sealed class
+            if (parent instanceof ClassOrInterfaceDeclaration declaration) {
+                for (var permittedType : declaration.getPermittedTypes()) {
+                    if (permittedType == type) {
+                        return ReferenceKind.TYPE_USE;
+                    }
+                }
+            }
+            return ReferenceKind.INHERITANCE;
+        }
+        return ReferenceKind.TYPE_USE;
+    }
+
+    private void addTypeReference(String typeName, ReferenceKind kind) {
+        if (className == null || declaredPackage.isEmpty() || typeName.startsWith("java.")) {
+            return;
+        }
+        var dot = typeName.indexOf('.');
+        var firstName = dot < 0 ? typeName : typeName.substring(0, dot);
+        // Declared in the unit, not by a top-level class of the same simple name
+        if (isMemberType(firstName)) {
+            return;
+        }
+        var importedType = importedTypes.get(firstName);
+        if (importedType != null && importedType.startsWith("java.")) {
+            return;
+        }
+        facts.addTypeReference(className, typeName, kind);
+    }
+}
@@ -0,0 +1,44 @@
+package cz.cuni.mff.d3s;
+
+/**
+ * How a class refers to another one. The counts of the kinds are the weights of the reference edges.
+ * <p>
+ * Method calls and field accesses are resolved by the symbol solver, the other kinds are named types resolved by the
+ * imports of the referencing class in {@link SourceAnalysis#resolveSymbols()}, see {@link ReferenceCollector}.
+ */
+public enum ReferenceKind {
+    METHOD_CALL("methodCalls"),
+    FIELD_ACCESS("fieldAccesses"),
+    /**
+     * A method call or field access the symbol solver could not resolve, whose scope was found by
+     * {@link SourceAnalysis#resolveSymbols()} instead.
+     */
+    FALLBACK("fallback"),
+    /**
+     * An extended or implemented type.
+     */
+    INHERITANCE("inheritance"),
+    /**
+     * A class created by {@code new}.
+     */
+    INSTANTIATION("instantiations"),
+    ANNOTATION("annotations"),
+    /**
+     * A type of a field, parameter, return value, local variable, cast, type argument and so on.
+     */
+    TYPE_USE("typeUses"),
+    STATIC_IMPORT("staticImports");
+
+    private final String label;
+
+    ReferenceKind(String label) {
+        this.label = label;
+    }
+
+    /**
+     * Name of the count of the kind in the exported graphs and the query results.
+     */
+    public String getLabel() {
+        return label;
+    }
+}
@@ -0,0 +1,183 @@
+package cz.cuni.mff.d3s;
+
+import com.google.common.io.Files;
+
+import java.io.IOException;
+import java.nio.file.FileVisitResult;
+import java.nio.file.Path;
+import java.nio.file.SimpleFileVisitor;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.NavigableMap;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Predicate;
+
+/**
+ * Statistics of all regular files of the repository, collected in a single traversal. Every directory is walked
+ * by its own fork-join task, so large subtrees are split across the workers; nothing but the counters is kept in
+ * memory, and the layout of the sources the same traversal records for the analysis: the Java files of the given
+ * source directories by their directory (hidden directories skipped, ignored ones included, like the search of the
+ * source roots did) and the build files.
+ */
+public class RepositoryScan {
+    // Version control metadata and build outputs, which are not part of the sources
+    static final Set<String> IGNORED_DIRECTORIES = Set.of(".git", "mxbuild", ".idea", "node_modules");
+
+    private final List<Path> sourceDirectories;
+    private final Predicate<Path> isBuildFile;
+    private final Map<String, LongAdder> extensionCounts = new ConcurrentHashMap<>();
+    private final Map<Path, List<Path>> javaFiles = new ConcurrentHashMap<>();
+    private final Set<Path> buildFiles = ConcurrentHashMap.newKeySet();
+    private NavigableMap<Path, List<Path>> javaFilesPerDirectory;
+
+    private RepositoryScan(List<Path> sourceDirectories, Predicate<Path> isBuildFile) {
+        this.sourceDirectories = sourceDirectories;
+        this.isBuildFile = isBuildFile;
+    }
+
+    public static RepositoryScan scan(Path root, int parallelism) {
+        return scan(root, parallelism, List.of(), file -> false);
+    }
+
+    /**
+     * @param sourceDirectories directories whose Java files are recorded
+     * @param isBuildFile       which files are recorded as build files
+     */
+    public static RepositoryScan scan(Path root, int parallelism, List<Path> sourceDirectories, Predicate<Path> isBuildFile) {
+        var scan = new RepositoryScan(sourceDirectories, isBuildFile);
+        var pool = new ForkJoinPool(parallelism);
+        try {
+            pool.invoke(scan.new DirectoryWalk(root, true));
+        } finally {
+            pool.shutdown();
+        }
+        scan.javaFilesPerDirectory = new TreeMap<>(scan.javaFiles);
+        return scan;
+    }
+
+    public Map<String, Integer> getExtensionCounts() {
+        var counts = new HashMap<String, Integer>();
+        extensionCounts.forEach((extension, count) -> counts.put(extension, count.intValue()));
+        return counts;
+    }
+
+    public Map<String, Double> getExtensionRatios() {
+        var total = extensionCounts.values().stream().mapToLong(LongAdder::sum).sum();
+        var ratios = new HashMap<String, Double>();
+        extensionCounts.forEach((extension, count) -> ratios.put(extension, count.sum() / (double) total * 100));
+        return ratios;
+    }
+
+    /**
+     * The Java files of the source directories by their directory, both in their natural order.
+     */
+    public NavigableMap<Path, List<Path>> getJavaFilesPerDirectory() {
+        return javaFilesPerDirectory;
+    }
+
+    public List<Path> getBuildFiles() {
+        return buildFiles.stream().sorted().toList();
+    }
+
+    private boolean isInSourceDirectory(Path directory) {
+        for (var sourceDirectory : sourceDirectories) {
+            if (directory.startsWith(sourceDirectory)) {
+                for (var name : sourceDirectory.relativize(directory)) {
+                    if (name.toString().startsWith(".")) {
+                        return false;
+                    }
+                }
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private boolean containsSourceDirectory(Path directory) {
+        return sourceDirectories.stream().anyMatch(sourceDirectory -> sourceDirectory.startsWith(directory));
+    }
+
+    private void countFile(Path file) {
+        var fileName = file.getFileName().toString();
+        String extension = Files.getFileExtension(fileName);
+        if (!extension.isEmpty()) {
+            extensionCounts.computeIfAbsent(extension, e -> new LongAdder()).increment();
+        }
+    }
+
+    private class DirectoryWalk extends RecursiveAction {
+        private final Path directory;
+        // Whether the files count toward the statistics, or the directory is only walked for the sources in it
+        private final boolean counted;
+
+        private DirectoryWalk(Path directory, boolean counted) {
+            this.directory = directory;
+            this.counted = counted;
+        }
+
+        @Override
+        protected void compute() {
+            var subdirectories = new ArrayList<DirectoryWalk>();
+            var recordsSources = isInSourceDirectory(directory);
+            var directoryJavaFiles = new ArrayList<Path>();
+            try {
+                java.nio.file.Files.walkFileTree(directory, new SimpleFileVisitor<>() {
+                    @Override
+                    public FileVisitResult preVisitDirectory(Path dir, BasicFileAttributes attrs) {
+                        if (dir.equals(directory)) {
+                            return FileVisitResult.CONTINUE;
+                        }
+                        var name = dir.getFileName().toString();
+                        var countedDirectory = counted && !IGNORED_DIRECTORIES.contains(name);
+                        var hasSources = isInSourceDirectory(dir) || containsSourceDirectory(dir);
+                        if (countedDirectory || hasSources) {
+                            var walk = new DirectoryWalk(dir, countedDirectory);
+                            walk.fork();
+                            subdirectories.add(walk);
+                        }
+                        return FileVisitResult.SKIP_SUBTREE;
+                    }
+
+                    @Override
+                    public FileVisitResult visitFile(Path file, BasicFileAttributes attrs) {
+                        if (attrs.isRegularFile()) {
+                            if (counted) {
+                                countFile(file);
+                                if (isBuildFile.test(file)) {
+                                    buildFiles.add(file);
+                                }
+                            }
+                            if (recordsSources && file.getFileName().toString().endsWith(".java")) {
+                                directoryJavaFiles.add(file);
+                            }
+                        }
+                        return FileVisitResult.CONTINUE;
+                    }
+
+                    @Override
+                    public FileVisitResult visitFileFailed(Path file, IOException e) {
+                        System.err.println("Could not read " + file + ": " + e);
+                        return FileVisitResult.CONTINUE;
+                    }
+                });
+            } catch (IOException e) {
+                System.err.println("Could not walk " + directory + ": " + e);
+            }
+            if (!directoryJavaFiles.isEmpty()) {
+                directoryJavaFiles.sort(null);
+                javaFiles.put(directory, directoryJavaFiles);
+            }
+            for (var walk : subdirectories) {
+                walk.join();
+            }
+        }
+    }
+}
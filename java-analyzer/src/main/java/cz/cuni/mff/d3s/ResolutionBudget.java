@@ -0,0 +1,214 @@
+package cz.cuni.mff.d3s;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Optional;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Supplier;
+
+/**
+ * Time budgets of the symbol resolution of a file and of every single resolution in it. The budgets are enforced
+ * cooperatively: the deadlines of the current thread are checked by {@link BudgetedTypeSolver} on every type lookup,
+ * which stops a resolution by throwing {@link ExceededException}. References whose resolution was stopped, and all the
+ * remaining references of a file over its budget, are left to the import-based fallback of
+ * {@link SourceAnalysis#resolveSymbols()}.
+ * <p>
+ * Files over their budget are put into a quarantine list, which is stored in a file so that the next runs do not
+ * resolve anything in them from the start; without any budget, the list is neither read nor applied. The parse time
+ * counts toward the budget of the file. Shared by all worker threads.
+ */
+public class ResolutionBudget {
+    private static final long UNLIMITED = Long.MAX_VALUE;
+    private static final ThreadLocal<Deadlines> DEADLINES = ThreadLocal.withInitial(Deadlines::new);
+
+    private final long fileBudgetNanos;
+    private final long resolutionBudgetNanos;
+    private final Optional<Path> quarantineFile;
+    private final Set<Path> quarantine = ConcurrentHashMap.newKeySet();
+    private final LongAdder stoppedResolutions = new LongAdder();
+    private final LongAdder filesOverBudget = new LongAdder();
+    private final LongAdder quarantinedFiles = new LongAdder();
+    private volatile boolean quarantineChanged;
+
+    /**
+     * Thrown by a type lookup after the deadline of the current resolution passed.
+     */
+    public static class ExceededException extends RuntimeException {
+        private ExceededException() {
+            super("Resolution budget exceeded", null, false, false);
+        }
+    }
+
+    private static class Deadlines {
+        private long file = UNLIMITED;
+        private long resolution = UNLIMITED;
+        private boolean stopped;
+        private boolean quarantined;
+        // Whether a resolution of the file was skipped or stopped
+        private boolean degraded;
+    }
+
+    /**
+     * @param fileBudgetMillis       budget of parsing a file and resolving all its references, 0 for no limit
+     * @param resolutionBudgetMillis budget of resolving a single reference, 0 for no limit
+     * @param quarantineFile         where the quarantined files are loaded from and stored to
+     */
+    public ResolutionBudget(long fileBudgetMillis, long resolutionBudgetMillis, Optional<Path> quarantineFile) {
+        fileBudgetNanos = fileBudgetMillis == 0 ? UNLIMITED : TimeUnit.MILLISECONDS.toNanos(fileBudgetMillis);
+        resolutionBudgetNanos = resolutionBudgetMillis == 0 ? UNLIMITED : TimeUnit.MILLISECONDS.toNanos(resolutionBudgetMillis);
+        this.quarantineFile = quarantineFile;
+    }
+
+    /**
+     * The budget of the options, {@link #unlimited()} if they set no budget.
+     */
+    public static ResolutionBudget create(Options options) {
+        if (options.getFileBudget() == 0 && options.getResolutionBudget() == 0) {
+            return unlimited();
+        }
+        var budget = new ResolutionBudget(options.getFileBudget(), options.getResolutionBudget(), options.getQuarantineFile());
+        budget.load();
+        return budget;
+    }
+
+    /**
+     * A budget without any limits and without a quarantine.
+     */
+    public static ResolutionBudget unlimited() {
+        return new ResolutionBudget(0, 0, Optional.empty());
+    }
+
+    public boolean isQuarantined(Path file) {
+        return quarantine.contains(file.toAbsolutePath().normalize());
+    }
+
+    /**
+     * Starts the budget of a file on the current thread.
+     *
+     * @param startNanos when the work on the file started, e.g. before it was parsed
+     */
+    public void startFile(Path file, long startNanos) {
+        var deadlines = DEADLINES.get();
+        deadlines.file = fileBudgetNanos == UNLIMITED ? UNLIMITED : startNanos + fileBudgetNanos;
+        deadlines.resolution = UNLIMITED;
+        deadlines.quarantined = isQuarantined(file);
+        deadlines.degraded = false;
+        if (deadlines.quarantined) {
+            quarantinedFiles.increment();
+        }
+    }
+
+    /**
+     * Runs a resolution of the current file within its budget.
+     *
+     * @return empty without running the resolution if the file is quarantined or its budget is spent, or if the
+     * resolution was stopped
+     */
+    public <T> Optional<T> resolve(Supplier<Optional<T>> resolution) {
+        var deadlines = DEADLINES.get();
+        var now = System.nanoTime();
+        if (deadlines.quarantined || deadlines.file != UNLIMITED && now - deadlines.file > 0) {
+            deadlines.degraded = true;
+            return Optional.empty();
+        }
+        deadlines.stopped = false;
+        deadlines.resolution = resolutionBudgetNanos == UNLIMITED ? deadlines.file : Math.min(now + resolutionBudgetNanos, deadlines.file);
+        try {
+            var result = resolution.get();
+            if (deadlines.stopped) {
+                stoppedResolutions.increment();
+                deadlines.degraded = true;
+                return Optional.empty();
+            }
+            return result;
+        } catch (ExceededException e) {
+            stoppedResolutions.increment();
+            deadlines.degraded = true;
+            return Optional.empty();
+        } finally {
+            deadlines.resolution = UNLIMITED;
+        }
+    }
+
+    /**
+     * Ends the budget of a file on the current thread and quarantines the file if it was exceeded.
+     *
+     * @return whether a resolution of the file was skipped or stopped, so its facts differ from those of a run without
+     * budget and must not be cached
+     */
+    public boolean finishFile(Path file) {
+        var deadlines = DEADLINES.get();
+        if (deadlines.file != UNLIMITED && System.nanoTime() - deadlines.file > 0) {
+            filesOverBudget.increment();
+            System.out.println("File over its resolution budget, quarantined: " + file);
+            if (quarantine.add(file.toAbsolutePath().normalize())) {
+                quarantineChanged = true;
+            }
+        }
+        deadlines.file = UNLIMITED;
+        deadlines.quarantined = false;
+        return deadlines.degraded;
+    }
+
+    /**
+     * Stops the current resolution if its deadline passed, called on every type lookup.
+     */
+    static void checkDeadline() {
+        var deadlines = DEADLINES.get();
+        if (deadlines.resolution != UNLIMITED && System.nanoTime() - deadlines.resolution > 0) {
+            deadlines.stopped = true;
+            throw new ExceededException();
+        }
+    }
+
+    /**
+     * Stores the quarantine list if files were added to it.
+     */
+    public void save() {
+        if (quarantineFile.isEmpty() || !quarantineChanged) {
+            return;
+        }
+        var lines = new ArrayList<String>();
+        lines.add("# Files whose symbols are not resolved, as resolving them took longer than the budget");
+        quarantine.stream().map(Path::toString).sorted().forEach(lines::add);
+        try {
+            var file = quarantineFile.get();
+            if (file.getParent() != null) {
+                Files.createDirectories(file.getParent());
+            }
+            Files.write(file, lines, StandardCharsets.UTF_8);
+            quarantineChanged = false;
+        } catch (IOException e) {
+            System.err.println("Could not write the quarantine list: " + e);
+        }
+    }
+
+    public void printStatistics() {
+        if (stoppedResolutions.sum() + filesOverBudget.sum() + quarantinedFiles.sum() > 0) {
+            System.out.printf("Budget: %d resolutions stopped, %d files over budget, %d quarantined files not resolved%n",
+                    stoppedResolutions.sum(), filesOverBudget.sum(), quarantinedFiles.sum());
+        }
+    }
+
+    private void load() {
+        if (quarantineFile.isEmpty() || !Files.isRegularFile(quarantineFile.get())) {
+            return;
+        }
+        try {
+            for (var line : Files.readAllLines(quarantineFile.get(), StandardCharsets.UTF_8)) {
+                if (!line.isBlank() && !line.startsWith("#")) {
+                    quarantine.add(Path.of(line.strip()));
+                }
+            }
+            System.out.println("Quarantine: " + quarantine.size() + " files resolved by their imports only");
+        } catch (IOException e) {
+            System.err.println("Could not read the quarantine list: " + e);
+        }
+    }
+}
@@ -0,0 +1,217 @@
+package cz.cuni.mff.d3s;
+
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+
+import java.io.IOException;
+import java.io.PrintWriter;
+import java.lang.management.ManagementFactory;
+import java.lang.management.MemoryPoolMXBean;
+import java.lang.management.MemoryType;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.PriorityQueue;
+
+/**
+ * Measures the phases of a run (wall time, processed items, heap high-water mark), the work done per source root and
+ * the slowest files. Every phase is also emitted as a {@link PhaseEvent} JFR event, so a recording started with
+ * {@code -XX:StartFlightRecording} shows the phases next to the GC and allocation events.
+ * <p>
+ * The heap high-water mark of a phase is the sum of the peak usages of the heap pools, which are reset when the
+ * phase starts; the pools may peak at different times, so it is an upper bound.
+ */
+public class RunReport {
+    private static final int SLOWEST_FILE_COUNT = 20;
+
+    private final String mode;
+    private final Path repository;
+    private final Instant started = Instant.now();
+    private final long startNanos = System.nanoTime();
+    private final List<PhaseStatistics> phases = new ArrayList<>();
+    private final Map<Path, RootStatistics> roots = new LinkedHashMap<>();
+    // Min-heap, so the fastest of the slowest files is replaced first
+    private final PriorityQueue<FileTiming> slowestFiles = new PriorityQueue<>(Comparator.comparingLong(FileTiming::nanos));
+    private long heapPeakBytes;
+
+    private record PhaseStatistics(String name, long nanos, long items, long heapPeakBytes) {
+    }
+
+    private record FileTiming(Path file, long nanos) {
+    }
+
+    private static class RootStatistics {
+        private final String project;
+        private long files;
+        private long reusedFiles;
+        private long parseNanos;
+        private long extractNanos;
+        private long resolved;
+        private long unresolved;
+
+        RootStatistics(String project) {
+            this.project = project;
+        }
+    }
+
+    @Name("cz.cuni.mff.d3s.Phase")
+    @Label("Analysis Phase")
+    @Description("A phase of the repository analysis, e.g. parsing or resolveSymbols")
+    @Category("Architecture Recovery")
+    static class PhaseEvent extends Event {
+        @Label("Phase")
+        String phase;
+
+        @Label("Items")
+        long items;
+    }
+
+    /**
+     * A running phase, closing it records the phase.
+     */
+    public class Phase implements AutoCloseable {
+        private final String name;
+        private final long start = System.nanoTime();
+        private final PhaseEvent event = new PhaseEvent();
+        private long items;
+
+        private Phase(String name) {
+            this.name = name;
+            event.begin();
+        }
+
+        public void addItems(long count) {
+            items += count;
+        }
+
+        @Override
+        public void close() {
+            var nanos = System.nanoTime() - start;
+            event.phase = name;
+            event.items = items;
+            event.commit();
+            endPhase(new PhaseStatistics(name, nanos, items, getHeapPeak()));
+        }
+    }
+
+    public RunReport(String mode, Path repository) {
+        this.mode = mode;
+        this.repository = repository;
+    }
+
+    public Phase startPhase(String name) {
+        for (var pool : getHeapPools()) {
+            pool.resetPeakUsage();
+        }
+        return new Phase(name);
+    }
+
+    /**
+     * @param reused whether the facts of the file came from the cache, in that case nothing was parsed or resolved
+     */
+    public synchronized void recordFile(String project, UnitFacts facts, long parseNanos, long extractNanos, boolean reused) {
+        var root = roots.computeIfAbsent(facts.getSourceRoot(), r -> new RootStatistics(project));
+        root.files++;
+        if (reused) {
+            root.reusedFiles++;
+            return;
+        }
+        root.parseNanos += parseNanos;
+        root.extractNanos += extractNanos;
+        root.resolved += facts.getResolvedReferenceCount();
+        root.unresolved += facts.getUnresolvedReferenceCount();
+        slowestFiles.add(new FileTiming(facts.getFile(), parseNanos + extractNanos));
+        if (slowestFiles.size() > SLOWEST_FILE_COUNT) {
+            slowestFiles.poll();
+        }
+    }
+
+    public synchronized void printSummary() {
+        System.out.println("Phases:");
+        for (var phase : phases) {
+            System.out.printf(Locale.ROOT, "%s: %d ms, %d items (%.1f/s), heap peak %d MB%n", phase.name(), toMillis(phase.nanos()),
+                    phase.items(), getThroughput(phase), phase.heapPeakBytes() >> 20);
+        }
+        System.out.printf(Locale.ROOT, "Total: %d ms, heap peak %d MB%n", toMillis(System.nanoTime() - startNanos), heapPeakBytes >> 20);
+    }
+
+    public synchronized void write(Path file) throws IOException {
+        try (var out = new PrintWriter(Files.newBufferedWriter(file, StandardCharsets.UTF_8))) {
+            out.println("{");
+            out.println("  \"mode\": " + Json.quote(mode) + ",");
+            out.println("  \"repository\": " + Json.quote(repository.toAbsolutePath().toString()) + ",");
+            out.println("  \"started\": " + Json.quote(started.toString()) + ",");
+            out.println("  \"wallMillis\": " + toMillis(System.nanoTime() - startNanos) + ",");
+            out.println("  \"heapPeakBytes\": " + heapPeakBytes + ",");
+            out.println("  \"phases\": [");
+            for (int i = 0; i < phases.size(); i++) {
+                var phase = phases.get(i);
+                out.printf(Locale.ROOT, "    {\"name\": %s, \"wallMillis\": %d, \"items\": %d, \"itemsPerSecond\": %.1f, \"heapPeakBytes\": %d}%s%n",
+                        Json.quote(phase.name()), toMillis(phase.nanos()), phase.items(), getThroughput(phase),
+                        phase.heapPeakBytes(), separator(i, phases.size()));
+            }
+            out.println("  ],");
+            out.println("  \"sourceRoots\": [");
+            var index = 0;
+            for (var entry : roots.entrySet()) {
+                var root = entry.getValue();
+                out.printf(Locale.ROOT, "    {\"root\": %s, \"project\": %s, \"files\": %d, \"reusedFiles\": %d, \"parseMillis\": %d, "
+                                + "\"extractMillis\": %d, \"resolved\": %d, \"unresolved\": %d}%s%n",
+                        Json.quote(entry.getKey().toString()), Json.quote(root.project), root.files, root.reusedFiles,
+                        toMillis(root.parseNanos), toMillis(root.extractNanos), root.resolved, root.unresolved,
+                        separator(index++, roots.size()));
+            }
+            out.println("  ],");
+            out.println("  \"slowestFiles\": [");
+            var slowest = new ArrayList<>(slowestFiles);
+            slowest.sort(Comparator.comparingLong(FileTiming::nanos).reversed());
+            for (int i = 0; i < slowest.size(); i++) {
+                out.printf(Locale.ROOT, "    {\"file\": %s, \"millis\": %d}%s%n", Json.quote(slowest.get(i).file().toString()),
+                        toMillis(slowest.get(i).nanos()), separator(i, slowest.size()));
+            }
+            out.println("  ]");
+            out.println("}");
+        }
+    }
+
+    private synchronized void endPhase(PhaseStatistics phase) {
+        phases.add(phase);
+        heapPeakBytes = Math.max(heapPeakBytes, phase.heapPeakBytes());
+    }
+
+    private static double getThroughput(PhaseStatistics phase) {
+        return phase.nanos() == 0 ? 0.0 : phase.items() * 1e9 / phase.nanos();
+    }
+
+    private static long getHeapPeak() {
+        var peak = 0L;
+        for (var pool : getHeapPools()) {
+            peak += pool.getPeakUsage().getUsed();
+        }
+        return peak;
+    }
+
+    private static List<MemoryPoolMXBean> getHeapPools() {
+        return ManagementFactory.getMemoryPoolMXBeans().stream()
+                .filter(pool -> pool.getType() == MemoryType.HEAP && pool.isValid())
+                .toList();
+    }
+
+    private static long toMillis(long nanos) {
+        return nanos / 1_000_000;
+    }
+
+    private static String separator(int index, int size) {
+        return index + 1 < size ? "," : "";
+    }
+}
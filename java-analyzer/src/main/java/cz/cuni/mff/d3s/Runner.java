@@ -1,101 +1,462 @@
 package cz.cuni.mff.d3s;
 
 import com.github.javaparser.ast.CompilationUnit;
+import com.github.javaparser.ast.ImportDeclaration;
 import com.github.javaparser.ast.PackageDeclaration;
 import com.github.javaparser.ast.body.TypeDeclaration;
-import com.github.javaparser.ast.expr.FieldAccessExpr;
-import com.github.javaparser.ast.expr.MethodCallExpr;
-import com.github.javaparser.ast.nodeTypes.NodeWithName;
-import com.github.javaparser.resolution.declarations.ResolvedDeclaration;
+import com.github.javaparser.ast.comments.Comment;
 import com.github.javaparser.utils.SourceRoot;
 
+import java.io.IOException;
+import java.io.PrintWriter;
+import java.io.UncheckedIOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
 import java.nio.file.Path;
 import java.util.*;
-import java.util.stream.Collectors;
+import java.util.function.Consumer;
 
 public class Runner {
+    // Some projects are unparsable, so we only iterate over the relevant ones
+    static final String[] ANALYZED_PROJECTS = { "compiler", "espresso", "regex", "sdk", "sulong", "tools", "visualizer" };
+    private static final List<String> GRAPHS = List.of("project", "project-roots", "package", "class", "project-packages", "package-classes");
 
     public static void main(String[] args) {
-        if (args.length != 2) {
-            System.err.println("Usage: java -jar <path-to-jar> <mode> <path-to-graal-repo>");
+        if (args.length < 2) {
+            System.err.println("Usage: java -jar <path-to-jar> <mode> <path-to-graal-repo> [options]");
             System.err.println("Modes:");
             System.err.println("\tc - count file extensions");
             System.err.println("\tclass - display class references");
+            System.err.println("\tview - display class references starting from project roots, expanding packages and classes on click");
             System.err.println("\tpackage - display package references");
             System.err.println("\tproject - display project references");
+            System.err.println("\texport - write the project, package and class graphs to files (headless)");
+            System.err.println("\tanalytics - print the cycles, layers and most coupled nodes of the project, project root, package and class graphs");
+            System.err.println("\tdrift - write the class and package references added and removed by every commit of --revisions (headless)");
+            System.err.println("\tserve - keep the analysis in memory, update it when files change and answer queries over HTTP");
+            System.err.println("\tall - write the extension statistics and all graphs to files from a single analysis (headless)");
+            System.err.println("Options:");
+            System.err.println("\t--parallelism=<n> - number of files or directories processed concurrently (default 1)");
+            System.err.println("\t--in-flight=<n> - maximum number of files analyzed but not yet added to the model (default 4 * parallelism)");
+            System.err.println("\t--solver-cache=<n> - parsed files cached by the type solver of every source root and thread (default " + Analyzer.DEFAULT_SOLVER_CACHE_SIZE + ")");
+            System.err.println("\t--cache-dir=<dir> - reuse facts of unchanged files from previous runs");
+            System.err.println("\t--type-index=<file> - resolve the JDK and library types from an index built by the typeIndex Gradle task");
+            System.err.println("\t--spill-dir=<dir> - keep the references on disk in this directory instead of the heap (not supported by serve)");
+            System.err.println("\t--comment-index - also write an index of the comments of every source root");
+            System.err.println("\t--file-budget=<ms> - stop resolving the references of a file after this time and quarantine it (default no limit)");
+            System.err.println("\t--resolve-budget=<ms> - stop resolving a single reference after this time (default no limit)");
+            System.err.println("\t--quarantine=<file> - list of files resolved by their imports only (default <cache-dir>/quarantine.txt)");
+            System.err.println("\t--report=<file> - write the timings and statistics of the run as JSON");
+            System.err.println("\t--graphs=<list> - graphs to export, any of " + String.join(",", GRAPHS) + " (default project,package,class)");
+            System.err.println("\t--format=<format> - export format: dot, graphml, csv or plantuml (default dot)");
+            System.err.println("\t--output=<dir> - directory the exported graphs are written to (default .)");
+            System.err.println("\t--prefix=<prefix> - export only edges between packages and classes starting with the prefix");
+            System.err.println("\t--imports-only - build the package graph from the import declarations only, without parsing (fast, approximate)");
+            System.err.println("\t--revisions=<from>..<to> - commits of the git repository the drift mode follows, e.g. HEAD~100..HEAD");
+            System.err.println("\t--top=<n> - number of cycles and nodes in every ranking of the analytics mode (default 10)");
+            System.err.println("\t--port=<port> - port the serve mode listens on at the loopback interface (default 7070)");
             System.exit(1);
         }
 
-        var analyzer = new Analyzer(Path.of(args[1]));
+        Options options;
+        Optional<BinaryTypeIndex> typeIndex;
+        try {
+            options = Options.parse(args, 2);
+            typeIndex = BinaryTypeIndex.load(options);
+        } catch (IllegalArgumentException e) {
+            System.err.println(e.getMessage());
+            System.exit(1);
+            return;
+        }
+        var analyzer = new Analyzer(Path.of(args[1]), options.getParallelism(), List.of(ANALYZED_PROJECTS), typeIndex,
+                options.getSolverCacheSize());
+        var report = new RunReport(args[0], Path.of(args[1]));
 
-        switch (args[0]) {
-            case "c" -> countFileExtensions(analyzer);
-            case "project" -> analyzeProjects(analyzer);
-            case "class" -> analyzeClasses(analyzer);
-            case "package" -> analyzePackages(analyzer);
-            default -> {
-                System.err.println("Unknown mode: " + args[0]);
-                System.exit(1);
+        try {
+            switch (args[0]) {
+                case "c" -> countFileExtensions(analyzer, report);
+                case "project" -> analyzeProjects(analyzer, report);
+                case "class" -> analyzeClasses(analyzer, options, report);
+                case "view" -> viewClasses(analyzer, options, report);
+                case "package" -> analyzePackages(Path.of(args[1]), analyzer, options, report);
+                case "export" -> exportGraphs(Path.of(args[1]), analyzer, options, report, options.getGraphs());
+                case "all" -> exportAll(Path.of(args[1]), analyzer, options, report);
+                case "analytics" -> printAnalytics(analyzer, options, report);
+                case "drift" -> analyzeDrift(Path.of(args[1]), options, report);
+                case "serve" -> serve(Path.of(args[1]), analyzer, options, report);
+                default -> {
+                    System.err.println("Unknown mode: " + args[0]);
+                    System.exit(1);
+                }
             }
+        } catch (IllegalArgumentException e) {
+            System.err.println(e.getMessage());
+            System.exit(1);
         }
+        report.printSummary();
+        options.getReportFile().ifPresent(file -> {
+            try {
+                report.write(file);
+            } catch (IOException e) {
+                System.err.println("Could not write the report: " + e);
+            }
+        });
     }
 
-    private static void analyzeProjects(Analyzer analyzer) {
-        var result = runBuildToolAnalysis(analyzer);
-        result.printProjectDependencies();
-        result.showProjectDependencies();
+    private static void analyzeProjects(Analyzer analyzer, RunReport report) {
+        var result = runBuildToolAnalysis(analyzer, report);
+        try (var phase = report.startPhase("graph")) {
+            result.printProjectDependencies();
+            result.showProjectDependencies();
+        }
     }
 
-    private static void analyzePackages(Analyzer analyzer) {
-        var result = runSourceAnalysis(analyzer);
-        result.showPackageReferences();
+    private static void analyzePackages(Path repository, Analyzer analyzer, Options options, RunReport report) {
+        if (options.isImportsOnly()) {
+            var scan = runImportScan(repository, options, report);
+            try (var phase = report.startPhase("graph")) {
+                scan.showPackageImports();
+            }
+            return;
+        }
+        var result = runSourceAnalysis(analyzer, options, report);
+        try (var phase = report.startPhase("graph")) {
+            result.showPackageReferences();
+        }
     }
 
-    private static void analyzeClasses(Analyzer analyzer) {
-        var result = runSourceAnalysis(analyzer);
-        result.showClassReferences();
+    private static void analyzeClasses(Analyzer analyzer, Options options, RunReport report) {
+        var result = runSourceAnalysis(analyzer, options, report);
+        try (var phase = report.startPhase("graph")) {
+            result.showClassReferences();
+        }
     }
 
-    private static BuildToolAnalysis runBuildToolAnalysis(Analyzer analyzer) {
-        var analysisResult = new BuildToolAnalysis();
-        for (var buildFile : analyzer.getAllBuildFiles()) {
-            try {
-                var projectName = analyzer.getProjectNameFromBuildTool(buildFile);
-                var dependencies = analyzer.getProjectDependenciesFromBuildTool(buildFile);
-                for (var dependency : dependencies) {
-                    analysisResult.addProjectDependency(projectName, dependency);
+    private static void viewClasses(Analyzer analyzer, Options options, RunReport report) {
+        var result = runSourceAnalysis(analyzer, options, report);
+        try (var phase = report.startPhase("graph")) {
+            result.viewClassReferences();
+        }
+    }
+
+    private static void printAnalytics(Analyzer analyzer, Options options, RunReport report) {
+        var buildFiles = runBuildToolAnalysis(analyzer, report);
+        var sources = runSourceAnalysis(analyzer, options, report);
+        try (var phase = report.startPhase("analytics")) {
+            for (var graph : List.of(buildFiles.analyzeProjectDependencies(), sources.analyzeProjectRootReferences(),
+                    sources.analyzePackageReferences(), sources.analyzeClassReferences())) {
+                graph.printReport(options.getTop());
+                phase.addItems(graph.getNodeCount());
+            }
+        }
+    }
+
+    private static void analyzeDrift(Path repository, Options options, RunReport report) {
+        var revisions = options.getRevisions().orElseThrow(() -> new IllegalArgumentException("The drift mode needs --revisions=<from>..<to>"));
+        try {
+            new DriftAnalysis(repository, options, report).run(revisions);
+        } catch (IOException e) {
+            System.err.println("Could not analyze the revisions: " + e);
+            System.exit(1);
+        }
+    }
+
+    private static void serve(Path repository, Analyzer analyzer, Options options, RunReport report) {
+        if (options.getSpillDirectory().isPresent()) {
+            // Every update of the server builds its model in memory, only the first one would be spilled
+            throw new IllegalArgumentException("The serve mode does not support --spill-dir");
+        }
+        try {
+            new AnalysisServer(repository, analyzer, options, report).run();
+        } catch (IOException e) {
+            System.err.println("Could not serve the analysis: " + e);
+            System.exit(1);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    private static void exportAll(Path repository, Analyzer analyzer, Options options, RunReport report) {
+        countFileExtensions(analyzer, report);
+        try {
+            Files.createDirectories(options.getOutputDirectory());
+            writeExtensionStatistics(analyzer, options);
+        } catch (IOException e) {
+            System.err.println("Could not write the extension statistics: " + e);
+            System.exit(1);
+        }
+        // The comments are written while the sources are analyzed
+        exportGraphs(repository, analyzer, options, report, GRAPHS);
+    }
+
+    private static void exportGraphs(Path repository, Analyzer analyzer, Options options, RunReport report, List<String> graphs) {
+        for (var graph : graphs) {
+            if (!GRAPHS.contains(graph)) {
+                System.err.println("Unknown graph: " + graph);
+                System.exit(1);
+            }
+        }
+        try {
+            Files.createDirectories(options.getOutputDirectory());
+            if (graphs.contains("project")) {
+                var result = runBuildToolAnalysis(analyzer, report);
+                try (var phase = report.startPhase("graph");
+                     var writer = openGraphWriter(options, "project", "Project dependencies", Optional.empty(), false)) {
+                    result.exportProjectDependencies(writer);
+                }
+            }
+            var importsOnly = options.isImportsOnly() && graphs.contains("package");
+            if (importsOnly) {
+                var scan = runImportScan(repository, options, report);
+                try (var phase = report.startPhase("graph");
+                     var writer = openGraphWriter(options, "package-imports", "Package dependencies (imports only)", options.getPrefix(), false)) {
+                    scan.exportPackageImports(writer);
                 }
-            } catch (Exception e) {
-                System.err.println("File " + buildFile + " could not be parsed correctly: " + e);
+            }
+            if (graphs.stream().anyMatch(graph -> !graph.equals("project") && !(importsOnly && graph.equals("package")))) {
+                // All the source graphs come from the same analysis
+                var result = runSourceAnalysis(analyzer, options, report);
+                try (var phase = report.startPhase("graph")) {
+                    if (graphs.contains("project-roots")) {
+                        try (var writer = openGraphWriter(options, "project-roots", "Project root dependencies", Optional.empty(), true)) {
+                            result.exportProjectRootReferences(writer);
+                        }
+                    }
+                    if (graphs.contains("package") && !importsOnly) {
+                        try (var writer = openGraphWriter(options, "package", "Package dependencies", options.getPrefix(), true)) {
+                            result.exportPackageReferences(writer);
+                        }
+                    }
+                    if (graphs.contains("class")) {
+                        try (var writer = openGraphWriter(options, "class", "Class dependencies", options.getPrefix(), true)) {
+                            result.exportClassReferences(writer);
+                        }
+                    }
+                    if (graphs.contains("project-packages")) {
+                        try (var writer = openGraphWriter(options, "project-packages", "Project hierarchy (Modules)", options.getPrefix(), false)
+                                .withUnprefixedSources()) {
+                            result.exportProjectPackages(writer);
+                        }
+                    }
+                    if (graphs.contains("package-classes")) {
+                        try (var writer = openGraphWriter(options, "package-classes", "Module hierarchy (Classes)", options.getPrefix(), false)) {
+                            result.exportPackageClasses(writer);
+                        }
+                    }
+                }
+            }
+        } catch (IOException | UncheckedIOException e) {
+            System.err.println("Could not export graphs: " + e);
+            System.exit(1);
+        }
+    }
+
+    private static void writeExtensionStatistics(Analyzer analyzer, Options options) throws IOException {
+        var file = options.getOutputDirectory().resolve("extensions.csv");
+        System.out.println("Writing " + file);
+        var ratios = analyzer.getFileExtensionsRatios();
+        try (var writer = new PrintWriter(Files.newBufferedWriter(file, StandardCharsets.UTF_8))) {
+            writer.println("extension,count,percent");
+            for (var entry : MapUtils.sortByValueDescending(analyzer.getFileExtensionCounts())) {
+                writer.printf(Locale.ROOT, "%s,%d,%.4f%n", entry.getKey(), entry.getValue(), ratios.get(entry.getKey()));
+            }
+        }
+    }
+
+    /**
+     * @param prefix the prefix of the names of the nodes to export, the projects and project roots are paths and
+     *               exported whole
+     */
+    private static GraphWriter openGraphWriter(Options options, String graph, String title, Optional<String> prefix,
+                                               boolean weighted) throws IOException {
+        var format = options.getFormat();
+        var file = options.getOutputDirectory().resolve(graph + "." + format.getExtension());
+        System.out.println("Writing " + file);
+        return GraphWriter.open(format, file, title, prefix, weighted);
+    }
+
+    static BuildToolAnalysis runBuildToolAnalysis(Analyzer analyzer, RunReport report) {
+        List<Path> buildFiles;
+        try (var phase = report.startPhase("discovery")) {
+            buildFiles = analyzer.getAllBuildFiles();
+            phase.addItems(buildFiles.size());
+        }
+        var analysisResult = new BuildToolAnalysis();
+        try (var phase = report.startPhase("buildFiles")) {
+            phase.addItems(buildFiles.size());
+            for (var suite : analyzer.getSuites(buildFiles)) {
+                analysisResult.addSuite(suite);
             }
         }
         return analysisResult;
     }
 
-    private static SourceAnalysis runSourceAnalysis(Analyzer analyzer) {
-        var analysisResult = new SourceAnalysis();
-        // Some projects are unparsable, so we only iterate over the relevant ones
-        for (var project : new String[] { "compiler", "espresso", "regex", "sdk", "sulong", "tools", "visualizer" }) {
-            var sources = analyzer.getJavaSourceRoots(project);
-            for (var sourceRoot : sources) {
-                if (sourceRoot.getRoot().toString().contains("test")
-                        || sourceRoot.getRoot().toString().contains("benchmark")) {
-                    System.out.println("Skipping test directory: " + sourceRoot.getRoot());
-                    continue;
+    static ImportScan runImportScan(Path repository, Options options, RunReport report) {
+        try (var phase = report.startPhase("imports")) {
+            var scan = ImportScan.scan(repository, List.of(ANALYZED_PROJECTS), options.getParallelism());
+            phase.addItems(scan.getFileCount() + scan.getSkippedFileCount());
+            System.out.println("Imports: " + scan.getImportCount() + " import declarations in " + scan.getFileCount() + " files ("
+                    + scan.getSkippedFileCount() + " test and benchmark files skipped), " + scan.getPackageDependencyCount()
+                    + " package dependencies");
+            return scan;
+        }
+    }
+
+    private record SourceFile(String project, Path root, Path file) {
+    }
+
+    /**
+     * @param degraded whether resolutions were skipped or stopped by the budget, see {@link ResolutionBudget#finishFile}
+     */
+    private record FileResult(SourceFile source, Optional<UnitFacts> facts, long parseNanos, long extractNanos, boolean reused,
+                              boolean degraded) {
+    }
+
+    static SourceAnalysis runSourceAnalysis(Analyzer analyzer, Options options, RunReport report) {
+        return runSourceAnalysis(analyzer, options, report, facts -> {
+        });
+    }
+
+    /**
+     * @param factsListener sees the facts of every analyzed file, in the order they are added to the model
+     */
+    static SourceAnalysis runSourceAnalysis(Analyzer analyzer, Options options, RunReport report, Consumer<UnitFacts> factsListener) {
+        var filesPerSourceRoot = new LinkedHashMap<Path, List<Path>>();
+        var sourceFiles = new ArrayList<SourceFile>();
+        var cache = options.getCacheDirectory().map(directory -> new AnalysisCache(directory, analyzer.getTypeIndex()));
+        var resolver = new MemberResolver(analyzer.getTypeIndex());
+        var budget = ResolutionBudget.create(options);
+        try (var phase = report.startPhase("discovery")) {
+            for (var project : ANALYZED_PROJECTS) {
+                var sources = analyzer.getJavaSourceRoots(project);
+                for (var sourceRoot : sources) {
+                    if (isSkippedRoot(sourceRoot.getRoot())) {
+                        System.out.println("Skipping test directory: " + sourceRoot.getRoot());
+                        continue;
+                    }
+                    var root = sourceRoot.getRoot();
+                    try {
+                        filesPerSourceRoot.put(root, analyzer.getJavaFiles(root));
+                    } catch (IOException e) {
+                        System.err.println("Could not list the files of " + root + ": " + e);
+                        continue;
+                    }
+                    for (var file : filesPerSourceRoot.get(root)) {
+                        sourceFiles.add(new SourceFile(project, root, file));
+                    }
                 }
-                System.out.println("Analyzing: " + sourceRoot.getRoot());
-                var compilationUnits = analyzer.getAllCompilationUnits(sourceRoot);
-                for (var unit : compilationUnits) {
-                    analyzeUnit(sourceRoot, unit, analysisResult);
+            }
+            if (cache.isPresent()) {
+                try {
+                    cache.get().prepare(filesPerSourceRoot);
+                } catch (IOException e) {
+                    throw new UncheckedIOException("Could not prepare the analysis cache", e);
                 }
             }
+            phase.addItems(sourceFiles.size());
+        }
+        // Facts are applied in the order of the files, so the outcome does not depend on scheduling. Only the facts of
+        // the files in flight are kept besides the model, the ASTs are dropped as soon as the facts are extracted.
+        var analysisResult = options.getSpillDirectory().map(SourceAnalysis::spilling).orElseGet(SourceAnalysis::new);
+        try (var phase = report.startPhase("parse");
+             var comments = new CommentWriter(options.isCommentIndexEnabled())) {
+            var currentRoot = new Path[1];
+            UnitPipeline.run(sourceFiles.iterator(), source -> analyzeFile(analyzer, cache, resolver, budget, source), result -> {
+                var root = result.source().root();
+                if (!root.equals(currentRoot[0])) {
+                    currentRoot[0] = root;
+                    System.out.println("Analyzing: " + root);
+                    cache.ifPresent(c -> beginCacheRoot(c, root));
+                }
+                phase.addItems(1);
+                result.facts().ifPresent(facts -> {
+                    report.recordFile(result.source().project(), facts, result.parseNanos(), result.extractNanos(), result.reused());
+                    // Facts missing references because of the budget are analyzed again by the next run
+                    if (!result.degraded()) {
+                        cache.ifPresent(c -> appendToCache(c, facts));
+                    }
+                    writeComments(comments, facts);
+                    analysisResult.addUnitFacts(facts);
+                    factsListener.accept(facts);
+                });
+            }, options.getParallelism(), options.getInFlightFiles());
+            cache.ifPresent(c -> {
+                try {
+                    c.finish();
+                } catch (IOException e) {
+                    System.err.println("Could not update the analysis cache: " + e);
+                }
+                c.printStatistics();
+            });
+            resolver.printStatistics();
+            budget.printStatistics();
+            budget.save();
+        } catch (IOException e) {
+            System.err.println("Could not write the comments: " + e);
+        }
+        try (var phase = report.startPhase("resolveSymbols")) {
+            analysisResult.resolveSymbols();
         }
-        analysisResult.resolveSymbols();
-        analysisResult.dumpComments();
         return analysisResult;
     }
 
-    private static void countFileExtensions(Analyzer analyzer) {
+    static boolean isSkippedRoot(Path root) {
+        return root.toString().contains("test") || root.toString().contains("benchmark");
+    }
+
+    private static FileResult analyzeFile(Analyzer analyzer, Optional<AnalysisCache> cache, MemberResolver resolver,
+                                          ResolutionBudget budget, SourceFile source) {
+        var cached = cache.flatMap(c -> c.getFacts(source.file()));
+        if (cached.isPresent()) {
+            return new FileResult(source, cached, 0, 0, true, false);
+        }
+        // Each worker thread resolves against its own copy of the source roots, see Analyzer#getJavaSourceRoots
+        var sourceRoot = analyzer.getJavaSourceRoot(source.project(), source.root());
+        var start = System.nanoTime();
+        budget.startFile(source.file(), start);
+        Optional<UnitFacts> facts;
+        long parsed;
+        long extracted;
+        boolean degraded;
+        try {
+            var unit = analyzer.parse(sourceRoot, source.file());
+            parsed = System.nanoTime();
+            facts = unit.map(u -> analyzeUnit(sourceRoot, source.file(), u, resolver, budget));
+            extracted = System.nanoTime();
+        } finally {
+            degraded = budget.finishFile(source.file());
+        }
+        return new FileResult(source, facts, parsed - start, extracted - parsed, false, degraded);
+    }
+
+    private static void beginCacheRoot(AnalysisCache cache, Path root) {
+        try {
+            cache.beginSourceRoot(root);
+        } catch (IOException e) {
+            System.err.println("Could not update the analysis cache of " + root + ": " + e);
+        }
+    }
+
+    private static void writeComments(CommentWriter comments, UnitFacts facts) {
+        try {
+            comments.add(facts);
+        } catch (IOException e) {
+            System.err.println("Could not write the comments of " + facts.getFile() + ": " + e);
+        }
+    }
+
+    private static void appendToCache(AnalysisCache cache, UnitFacts facts) {
+        try {
+            cache.append(facts);
+        } catch (IOException e) {
+            System.err.println("Could not update the analysis cache of " + facts.getSourceRoot() + ": " + e);
+        }
+    }
+
+    private static void countFileExtensions(Analyzer analyzer, RunReport report) {
+        try (var phase = report.startPhase("scan")) {
+            phase.addItems(analyzer.getFileExtensionCounts().values().stream().mapToLong(Integer::longValue).sum());
+        }
         // Print the 10 most common file extensions and their ratios in the Graal repository
         System.out.println("File extensions:");
         MapUtils.sortByValueDescending(analyzer.getFileExtensionCounts())
@@ -111,67 +472,58 @@ public class Runner {
         System.out.println("+---------------------------------+");
     }
 
-    private static void analyzeUnit(SourceRoot sourceRoot, CompilationUnit unit, SourceAnalysis analysisResult) {
+    /**
+     * @param budget a budget whose file was started on the current thread, see {@link ResolutionBudget#startFile}
+     */
+    static UnitFacts analyzeUnit(SourceRoot sourceRoot, Path file, CompilationUnit unit, MemberResolver resolver, ResolutionBudget budget) {
+        var facts = new UnitFacts(sourceRoot.getRoot(), file);
         var declaredPackage = unit.getPackageDeclaration();
         var usedImports = unit.getImports();
-        processClassNames(sourceRoot, unit, analysisResult, declaredPackage, usedImports.stream().map(NodeWithName::getNameAsString).toList());
-        for (var clazz : unit.getTypes()) {
-            processClassMembers(analysisResult, clazz, declaredPackage);
-        }
+        processClassNames(unit, facts, declaredPackage, usedImports.stream().map(Runner::getImportName).toList());
+        new ReferenceCollector(facts, resolver, budget, getImportedTypes(unit), declaredPackage).collect(unit);
         for (var comment : unit.getAllComments()) {
-            analysisResult.addComment(sourceRoot.getRoot(), comment.asString());
+            facts.addComment(comment.getBegin().map(position -> position.line).orElse(0), getCommentKind(comment), comment.asString());
         }
+        return facts;
     }
 
-    private static void processClassMembers(SourceAnalysis analysisResult, TypeDeclaration<?> clazz, Optional<PackageDeclaration> declaredPackage) {
-        processMethodCalls(analysisResult, clazz, declaredPackage);
-        processFieldAccesses(analysisResult, clazz, declaredPackage);
+    private static UnitFacts.Comment.Kind getCommentKind(Comment comment) {
+        if (comment.isJavadocComment()) {
+            return UnitFacts.Comment.Kind.JAVADOC;
+        }
+        return comment.isBlockComment() ? UnitFacts.Comment.Kind.BLOCK : UnitFacts.Comment.Kind.LINE;
     }
 
-    private static void processFieldAccesses(SourceAnalysis analysisResult, TypeDeclaration<?> clazz, Optional<PackageDeclaration> declaredPackage) {
-        var fieldAccesses = clazz.findAll(FieldAccessExpr.class).stream()
-                .map(field -> {
-                    try {
-                        return field.resolve();
-                    } catch (Exception e) {
-                        analysisResult.addUnresolvedFieldAccess(clazz, field);
-                        return null;
-                    }
-                })
-                .filter(Objects::nonNull)
-                .filter(ResolvedDeclaration::isField)
-                .map(ResolvedDeclaration::asField)
-                .collect(Collectors.toSet());
-        for (var field : fieldAccesses) {
-            analysisResult.addFieldAccess(declaredPackage, clazz, field);
-        }
+    private static String getImportName(ImportDeclaration importDeclaration) {
+        var name = importDeclaration.getNameAsString() + (importDeclaration.isAsterisk() ? ".*" : "");
+        return importDeclaration.isStatic() ? "static " + name : name;
     }
 
-    private static void processMethodCalls(SourceAnalysis analysisResult, TypeDeclaration<?> clazz, Optional<PackageDeclaration> declaredPackage) {
-        var methodCalls = clazz.findAll(MethodCallExpr.class).stream()
-                .map(call -> {
-                    try {
-                        return call.resolve();
-                    } catch (Exception e) {
-                        analysisResult.addUnresolvedCall(clazz, call);
-                        return null;
-                    }
-                })
-                .filter(Objects::nonNull)
-                .collect(Collectors.toSet());
-        for (var method : methodCalls) {
-            analysisResult.addMethodCall(declaredPackage, clazz, method);
+    private static Map<String, String> getImportedTypes(CompilationUnit unit) {
+        var importedTypes = new HashMap<String, String>();
+        for (var importDeclaration : unit.getImports()) {
+            if (!importDeclaration.isStatic() && !importDeclaration.isAsterisk()) {
+                importedTypes.put(importDeclaration.getName().getIdentifier(), importDeclaration.getNameAsString());
+            }
+        }
+        for (var type : unit.getTypes()) {
+            type.getFullyQualifiedName().ifPresent(name -> importedTypes.put(type.getNameAsString(), name));
         }
+        return importedTypes;
     }
 
-    private static void processClassNames(SourceRoot sourceRoot, CompilationUnit unit, SourceAnalysis analysisResult, Optional<PackageDeclaration> declaredPackage, List<String> imports) {
+    private static void processClassNames(CompilationUnit unit, UnitFacts facts, Optional<PackageDeclaration> declaredPackage, List<String> imports) {
         var declaredClasses = unit.getTypes().stream()
                 .map(TypeDeclaration::getFullyQualifiedName)
                 .filter(Optional::isPresent)
                 .map(Optional::get)
                 .toArray(String[]::new);
+        facts.setImports(imports);
         for (var clazz : declaredClasses) {
-            analysisResult.addClass(sourceRoot, declaredPackage, clazz, imports);
+            facts.addClass(declaredPackage, clazz);
+        }
+        for (TypeDeclaration<?> nestedType : unit.findAll(TypeDeclaration.class, TypeDeclaration::isNestedType)) {
+            nestedType.getFullyQualifiedName().ifPresent(facts::addNestedClass);
         }
     }
 }
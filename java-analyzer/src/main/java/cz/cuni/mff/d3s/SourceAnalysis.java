@@ -1,215 +1,527 @@
 package cz.cuni.mff.d3s;
 
-import com.github.javaparser.ast.PackageDeclaration;
-import com.github.javaparser.ast.body.TypeDeclaration;
-import com.github.javaparser.ast.expr.FieldAccessExpr;
-import com.github.javaparser.ast.expr.MethodCallExpr;
-import com.github.javaparser.resolution.declarations.ResolvedFieldDeclaration;
-import com.github.javaparser.resolution.declarations.ResolvedMethodLikeDeclaration;
-import com.github.javaparser.utils.SourceRoot;
 import com.google.common.collect.ArrayListMultimap;
-import com.google.common.collect.HashMultimap;
+import com.google.common.collect.Iterables;
 import com.google.common.collect.Multimap;
+import com.google.common.collect.Sets;
 import org.graphstream.graph.Graph;
 import org.graphstream.graph.Node;
 import org.graphstream.graph.implementations.SingleGraph;
 
 import java.io.IOException;
-import java.io.PrintWriter;
+import java.io.UncheckedIOException;
+import java.nio.file.Files;
 import java.nio.file.Path;
 import java.util.*;
-import java.util.stream.Collectors;
 
+/**
+ * Classes, packages and projects are interned in a {@link SymbolTable} and all relations between them are kept as
+ * {@link IntRelation}s. The references are {@link WeightedRelation}s counting the references of every
+ * {@link ReferenceKind}, and are rolled up from classes to packages and to project (source) roots. The named types are
+ * kept by their names until {@link #resolveSymbols()} resolves them by the imports. GraphStream graphs are only built
+ * when one of them is shown.
+ * <p>
+ * A {@link #spilling spilling} analysis keeps the references, the imports and the unresolved references and types on disk in
+ * {@link RecordStore}s instead, so its heap only grows with the number of classes and packages; the references are
+ * then streamed from disk by the exports, and only loaded when the graph itself is needed (e.g. to show it). The
+ * counts of single references and the unresolved references of a class are looked up in the sorted files.
+ */
 public class SourceAnalysis {
-    private final Multimap<String, String> packagesPerProjectRoot = HashMultimap.create();
-    private final Multimap<String, String> classesPerPackage = HashMultimap.create();
-    private final Map<String, String> classToPackage = new HashMap<>();
-    private final Multimap<String, String> classReferences = HashMultimap.create();
-    private final Multimap<String, String> importsPerClass = HashMultimap.create();
-    private final Multimap<String, String> packageReferences = HashMultimap.create();
-    private final Multimap<String, MethodCallExpr> unresolvedCalls = HashMultimap.create();
-    private final Multimap<String, FieldAccessExpr> unresolvedFieldAccesses = HashMultimap.create();
-    private final Multimap<String, String> commentsPerSourceRoot = ArrayListMultimap.create();
-
-    private final Graph packagePerProjectHierarchy = new SingleGraph("Project hierarchy (Modules)");
-    private final Graph classPerPackageHierarchy = new SingleGraph("Module hierarchy (Classes)");
-    private final Graph classRelationships = new SingleGraph("Class dependencies");
-    private final Graph packageRelationships = new SingleGraph("Package dependencies");
-
-    {
-        for (var graph : new Graph[] {
-                packagePerProjectHierarchy, classPerPackageHierarchy, classRelationships, packageRelationships}) {
-            graph.setStrict(false);
-            graph.setAutoCreate(true);
-            graph.setAttribute("ui.stylesheet",
-                    "node{\n" +
-                            "    size: 30px, 30px;\n" +
-                            "    fill-color: #f7f7f0;\n" +
-                            "    text-mode: normal; \n" +
-                            "}");
-            System.setProperty("org.graphstream.ui", "swing");
-        }
-    }
-
-    public void addClass(SourceRoot projectRoot, Optional<PackageDeclaration> packageDeclaration, String className, List<String> imports) {
-        if (packageDeclaration.isPresent()) {
-            var projectPath = projectRoot.getRoot().toString();
-            var packageName = packageDeclaration.get().getNameAsString();
-            addPackagePerProject(projectPath, packageName);
-            addClassPerPackage(packageName, className);
-            for (var imp : imports) {
-                importsPerClass.put(className, imp);
-            }
+    private static final int NO_PACKAGE = -1;
+    private static final int NO_PROJECT_ROOT = -1;
+
+    private final SymbolTable symbols = new SymbolTable();
+    private final IntRelation packagesPerProjectRoot = new IntRelation();
+    private final IntRelation classesPerPackage = new IntRelation();
+    private int[] classToPackage = new int[0];
+    private int[] classToProjectRoot = new int[0];
+    private final WeightedEdges classReferences;
+    private final IntRelation importsPerClass = new IntRelation();
+    private final WeightedEdges packageReferences;
+    // Every occurrence is kept, so repeated unresolved references weigh more once resolved
+    private final Multimap<String, UnresolvedReference> unresolvedCalls = ArrayListMultimap.create();
+    private final Multimap<String, UnresolvedReference> unresolvedFieldAccesses = ArrayListMultimap.create();
+    // Instead of the imports and the unresolved references when spilling: (class, import) and (class, scope name, member name)
+    // records counting the occurrences
+    private final RecordStore spilledImports;
+    private final RecordStore spilledUnresolved;
+    private final int[] spilledRecord = new int[3];
+    private final int[] spilledUnresolvedRecord = new int[4];
+    private final List<RecordStore> spillStores = new ArrayList<>();
+    // From classes to the names of the types they refer to
+    private final WeightedEdges typeReferences;
+    // Reversed references for the queries and the project root rollup, built on first use
+    private IntRelation classDependents;
+    private IntRelation packageDependents;
+    private WeightedRelation projectRootReferences;
+
+    @FunctionalInterface
+    public interface ReferenceConsumer {
+        /**
+         * @param counts number of references of every kind, indexed by {@link ReferenceKind#ordinal()}, only valid
+         *               during the call
+         */
+        void accept(String from, String to, int[] counts);
+    }
+
+    /**
+     * A class or package referenced by or referencing another one.
+     *
+     * @param counts number of references of every kind, indexed by {@link ReferenceKind#ordinal()}
+     */
+    public record Dependency(String name, int[] counts) {
+        public int getCount(ReferenceKind kind) {
+            return counts[kind.ordinal()];
+        }
+
+        public int getWeight() {
+            return Arrays.stream(counts).sum();
         }
     }
 
-    private void addClassPerPackage(String packageName, String className) {
-        classesPerPackage.put(packageName, className);
-        classToPackage.put(className, packageName);
-        classPerPackageHierarchy.addEdge(packageName + "-" + className, packageName, className);
+    public SourceAnalysis() {
+        classReferences = new WeightedRelation();
+        packageReferences = new WeightedRelation();
+        typeReferences = new WeightedRelation();
+        spilledImports = null;
+        spilledUnresolved = null;
     }
 
-    public void addMethodCall(Optional<PackageDeclaration> packageDeclaration, TypeDeclaration<?> clazz, ResolvedMethodLikeDeclaration method) {
-        if (packageDeclaration.isPresent() && clazz.getFullyQualifiedName().isPresent()) {
-            var className = clazz.getFullyQualifiedName().get();
-            var referencedClassName = method.declaringType().getQualifiedName();
-            if (!method.getPackageName().startsWith("java.")) {
-                addClassReference(className, referencedClassName);
-                addPackageReference(packageDeclaration.get().getNameAsString(), method.getPackageName());
-            }
-        }
+    private SourceAnalysis(Path directory) {
+        classReferences = new SpilledRelation(newSpillStore(directory, "class-references", 3));
+        packageReferences = new SpilledRelation(newSpillStore(directory, "package-references", 3));
+        typeReferences = new SpilledRelation(newSpillStore(directory, "type-references", 3));
+        spilledImports = newSpillStore(directory, "imports", 2);
+        spilledUnresolved = newSpillStore(directory, "unresolved", 3);
+    }
+
+    private RecordStore newSpillStore(Path directory, String name, int keyWidth) {
+        var store = new RecordStore(directory, name, keyWidth);
+        spillStores.add(store);
+        return store;
     }
 
-    public void addFieldAccess(Optional<PackageDeclaration> packageDeclaration, TypeDeclaration<?> clazz, ResolvedFieldDeclaration field) {
-        if (packageDeclaration.isPresent() && clazz.getFullyQualifiedName().isPresent()) {
-            var className = clazz.getFullyQualifiedName().get();
-            var referencedClassName = field.declaringType().getQualifiedName();
-            addClassReference(className, referencedClassName);
-            addPackageReference(packageDeclaration.get().getNameAsString(), field.declaringType().getPackageName());
+    /**
+     * An analysis keeping its references in a new directory inside the given one, which is deleted with its files
+     * when the JVM exits.
+     */
+    public static SourceAnalysis spilling(Path directory) {
+        Path spillDirectory;
+        try {
+            Files.createDirectories(directory);
+            spillDirectory = Files.createTempDirectory(directory, "references");
+        } catch (IOException e) {
+            throw new UncheckedIOException("Could not create a directory in " + directory, e);
         }
+        var analysis = new SourceAnalysis(spillDirectory);
+        Runtime.getRuntime().addShutdownHook(new Thread(() -> analysis.deleteSpilledFiles(spillDirectory)));
+        return analysis;
     }
 
-    public void addComment(Path sourceRoot, String comment) {
-        if (!comment.contains("Copyright")) {
-            commentsPerSourceRoot.put(sourceRoot.toString(), comment);
+    private void deleteSpilledFiles(Path spillDirectory) {
+        try {
+            for (var store : spillStores) {
+                store.close();
+            }
+            // Whatever a failed sort left behind
+            try (var files = Files.walk(spillDirectory)) {
+                for (var file : files.sorted(Comparator.reverseOrder()).toList()) {
+                    Files.delete(file);
+                }
+            }
+        } catch (IOException | UncheckedIOException e) {
+            System.err.println("Could not delete the spilled references in " + spillDirectory + ": " + e);
         }
     }
 
-    public void addUnresolvedCall(TypeDeclaration<?> clazz, MethodCallExpr call) {
-        if (clazz.getFullyQualifiedName().isPresent()) {
-            var className = clazz.getFullyQualifiedName().get();
-            unresolvedCalls.put(className, call);
+    public void addUnitFacts(UnitFacts facts) {
+        if (facts.getPackageName().isPresent()) {
+            var projectPath = symbols.intern(facts.getSourceRoot().toString());
+            var packageName = symbols.intern(facts.getPackageName().get());
+            for (var declaredClass : facts.getDeclaredClasses()) {
+                var className = symbols.intern(declaredClass);
+                packagesPerProjectRoot.add(projectPath, packageName);
+                addClassPerPackage(packageName, className, projectPath);
+                for (var imp : facts.getImports()) {
+                    if (spilledImports != null) {
+                        spill(spilledImports, className, symbols.intern(imp));
+                    } else {
+                        importsPerClass.add(className, symbols.intern(imp));
+                    }
+                }
+            }
+        }
+        for (var entry : facts.getReferences().entrySet()) {
+            var reference = entry.getKey();
+            addClassReference(symbols.intern(reference.className()), symbols.intern(reference.referencedClassName()),
+                    reference.kind(), entry.getValue());
+            addPackageReference(symbols.intern(reference.packageName()), symbols.intern(reference.referencedPackageName()),
+                    reference.kind(), entry.getValue());
+        }
+        for (var entry : facts.getTypeReferences().entrySet()) {
+            var reference = entry.getKey();
+            typeReferences.add(symbols.intern(reference.className()), symbols.intern(reference.typeName()), reference.kind(), entry.getValue());
+        }
+        if (spilledUnresolved != null) {
+            for (var reference : Iterables.concat(facts.getUnresolvedCalls(), facts.getUnresolvedFieldAccesses())) {
+                spilledUnresolvedRecord[0] = symbols.intern(reference.owningClass());
+                spilledUnresolvedRecord[1] = symbols.intern(reference.scopeName());
+                spilledUnresolvedRecord[2] = symbols.intern(reference.memberName());
+                spilledUnresolvedRecord[3] = 1;
+                spilledUnresolved.append(spilledUnresolvedRecord);
+            }
+            return;
         }
+        for (var call : facts.getUnresolvedCalls()) {
+            unresolvedCalls.put(call.owningClass(), call);
+        }
+        for (var access : facts.getUnresolvedFieldAccesses()) {
+            unresolvedFieldAccesses.put(access.owningClass(), access);
+        }
+    }
+
+    private void spill(RecordStore store, int first, int second) {
+        spilledRecord[0] = first;
+        spilledRecord[1] = second;
+        spilledRecord[2] = 1;
+        store.append(spilledRecord);
     }
 
-    public void addUnresolvedFieldAccess(TypeDeclaration<?> clazz, FieldAccessExpr accessExpr) {
-        if (clazz.getFullyQualifiedName().isPresent()) {
-            var className = clazz.getFullyQualifiedName().get();
-            unresolvedFieldAccesses.put(className, accessExpr);
+    private void addClassPerPackage(int packageName, int className, int projectRoot) {
+        classesPerPackage.add(packageName, className);
+        if (className >= classToPackage.length) {
+            var oldLength = classToPackage.length;
+            classToPackage = Arrays.copyOf(classToPackage, Math.max(oldLength * 2, className + 1024));
+            classToProjectRoot = Arrays.copyOf(classToProjectRoot, classToPackage.length);
+            Arrays.fill(classToPackage, oldLength, classToPackage.length, NO_PACKAGE);
+            Arrays.fill(classToProjectRoot, oldLength, classToProjectRoot.length, NO_PROJECT_ROOT);
         }
+        classToPackage[className] = packageName;
+        classToProjectRoot[className] = projectRoot;
     }
 
     public void resolveSymbols() {
-        for (var entry : unresolvedCalls.entries()) {
-            try {
-                var scope = entry.getValue().getScope();
-                if (scope.isPresent() && scope.get().isNameExpr()) {
-                    var declaringType = scope.get().asNameExpr().getName().asString();
-                    var fullDeclaringTypeName = resolveClassReference(declaringType, importsPerClass.get(entry.getKey()));
-                    if (fullDeclaringTypeName != null) {
-                        addClassReference(entry.getKey(), fullDeclaringTypeName);
-                        addPackageReference(classToPackage.get(entry.getKey()), classToPackage.get(fullDeclaringTypeName));
+        var typeIndex = new TypeIndex();
+        classesPerPackage.forEach((packageName, className) -> typeIndex.addClass(symbols.name(className), symbols.name(packageName)));
+        try (var imports = new Imports()) {
+            if (spilledUnresolved != null) {
+                resolveSpilledReferences(typeIndex, imports);
+            } else {
+                resolveUnresolvedReferences(typeIndex, imports);
+            }
+        }
+        try (var imports = new Imports()) {
+            typeReferences.forEach((className, typeName, counts) -> {
+                var packageName = getPackage(className);
+                if (packageName == NO_PACKAGE) {
+                    return;
+                }
+                var fullTypeName = typeIndex.resolveName(symbols.name(typeName), symbols.name(packageName), imports.get(className));
+                if (fullTypeName != null) {
+                    var referencedClass = symbols.find(fullTypeName);
+                    for (var kind : ReferenceKind.values()) {
+                        if (counts[kind.ordinal()] > 0) {
+                            addClassReference(className, referencedClass, kind, counts[kind.ordinal()]);
+                            addPackageReference(packageName, getPackage(referencedClass), kind, counts[kind.ordinal()]);
+                        }
                     }
                 }
-            } catch (Exception e) {
-                System.err.println("Failed to resolve " + entry.getValue());
-            }
+            });
         }
-        for (var entry : unresolvedFieldAccesses.entries()) {
-            try {
-                var declaringType = entry.getValue().getScope().asNameExpr().getName().asString();
-                var fullDeclaringTypeName = resolveClassReference(declaringType, importsPerClass.get(entry.getKey()));
+    }
+
+    private void resolveUnresolvedReferences(TypeIndex typeIndex, Imports imports) {
+        for (var owningClass : Sets.union(unresolvedCalls.keySet(), unresolvedFieldAccesses.keySet())) {
+            var className = symbols.find(owningClass);
+            var packageName = getPackage(className);
+            if (packageName == NO_PACKAGE) {
+                continue;
+            }
+            for (var reference : Iterables.concat(unresolvedCalls.get(owningClass), unresolvedFieldAccesses.get(owningClass))) {
+                var fullDeclaringTypeName = typeIndex.resolve(reference.scopeName(), symbols.name(packageName), imports.get(className));
                 if (fullDeclaringTypeName != null) {
-                    addClassReference(entry.getKey(), fullDeclaringTypeName);
-                    addPackageReference(classToPackage.get(entry.getKey()), classToPackage.get(fullDeclaringTypeName));
+                    var referencedClass = symbols.find(fullDeclaringTypeName);
+                    addClassReference(className, referencedClass, ReferenceKind.FALLBACK, 1);
+                    addPackageReference(packageName, getPackage(referencedClass), ReferenceKind.FALLBACK, 1);
                 }
-            } catch (Exception e) {
-                System.err.println("Failed to resolve " + entry.getValue());
             }
         }
     }
 
-    public void showProjectPackages() {
-        for (Node node : packagePerProjectHierarchy) {
-            node.setAttribute("ui.label", node.getId());
-        }
-        packagePerProjectHierarchy.display();
+    /**
+     * The spilled unresolved references are sorted by their class, so the imports are read along with them.
+     */
+    private void resolveSpilledReferences(TypeIndex typeIndex, Imports imports) {
+        spilledUnresolved.forEach(unresolved -> {
+            var className = unresolved[0];
+            var packageName = getPackage(className);
+            if (packageName == NO_PACKAGE) {
+                return;
+            }
+            var fullDeclaringTypeName = typeIndex.resolve(symbols.name(unresolved[1]), symbols.name(packageName), imports.get(className));
+            if (fullDeclaringTypeName != null) {
+                var referencedClass = symbols.find(fullDeclaringTypeName);
+                addClassReference(className, referencedClass, ReferenceKind.FALLBACK, unresolved[3]);
+                addPackageReference(packageName, getPackage(referencedClass), ReferenceKind.FALLBACK, unresolved[3]);
+            }
+        });
     }
 
-    public void showPackageClasses() {
-        for (Node node : classPerPackageHierarchy) {
-            node.setAttribute("ui.label", node.getId());
+    /**
+     * The imports of the classes, when spilling read from the sorted imports along with a relation sorted by the
+     * classes, so the classes must be looked up in increasing order.
+     */
+    private class Imports implements AutoCloseable {
+        private final Set<String> names = new HashSet<>();
+        private final RecordStore.Cursor cursor;
+        private final int[] record = new int[3];
+        private boolean hasRecord;
+        private int currentClass = -1;
+
+        private Imports() {
+            cursor = spilledImports == null ? null : spilledImports.cursor();
+            hasRecord = cursor != null && cursor.next(record);
+        }
+
+        private Set<String> get(int className) {
+            if (className == currentClass) {
+                return names;
+            }
+            currentClass = className;
+            names.clear();
+            if (cursor == null) {
+                for (var imp : importsPerClass.getTargets(className)) {
+                    names.add(symbols.name(imp));
+                }
+                return names;
+            }
+            while (hasRecord && record[0] < className) {
+                hasRecord = cursor.next(record);
+            }
+            while (hasRecord && record[0] == className) {
+                names.add(symbols.name(record[1]));
+                hasRecord = cursor.next(record);
+            }
+            return names;
+        }
+
+        @Override
+        public void close() {
+            if (cursor != null) {
+                cursor.close();
+            }
         }
-        classPerPackageHierarchy.display();
     }
 
-    public void showClassReferences() {
-        for (Node node : classRelationships) {
-            node.setAttribute("ui.label", node.getId());
+    public List<Dependency> getClassDependencies(String className) {
+        return getDependencies(classReferences, classReferences.getRelation(), className, false);
+    }
+
+    public synchronized List<Dependency> getClassDependents(String className) {
+        if (classDependents == null) {
+            classDependents = classReferences.getRelation().inverse();
         }
-        classRelationships.display();
+        return getDependencies(classReferences, classDependents, className, true);
     }
 
-    public void showPackageReferences() {
-        for (Node node : packageRelationships) {
-            node.setAttribute("ui.label", node.getId());
+    public List<Dependency> getPackageDependencies(String packageName) {
+        return getDependencies(packageReferences, packageReferences.getRelation(), packageName, false);
+    }
+
+    public synchronized List<Dependency> getPackageDependents(String packageName) {
+        if (packageDependents == null) {
+            packageDependents = packageReferences.getRelation().inverse();
         }
-        packageRelationships.display();
+        return getDependencies(packageReferences, packageDependents, packageName, true);
     }
 
-    public void dumpComments() {
-        for (var fileName : commentsPerSourceRoot.keySet()) {
-            try (var writer = new PrintWriter(fileName + "_comments.txt")) {
-                for (var entry : commentsPerSourceRoot.entries()) {
-                    writer.println(entry.getKey() + " has the following comment: " + entry.getValue());
+    /**
+     * References between the classes of different project (source) roots, summed per pair of roots. References
+     * to classes outside the analyzed source roots are left out.
+     */
+    public synchronized WeightedRelation getProjectRootReferences() {
+        if (projectRootReferences == null) {
+            projectRootReferences = new WeightedRelation();
+            var kinds = ReferenceKind.values();
+            classReferences.forEach((from, to, counts) -> {
+                var fromRoot = getProjectRoot(from);
+                var toRoot = getProjectRoot(to);
+                if (fromRoot != NO_PROJECT_ROOT && toRoot != NO_PROJECT_ROOT && fromRoot != toRoot) {
+                    for (var kind : kinds) {
+                        if (counts[kind.ordinal()] > 0) {
+                            projectRootReferences.add(fromRoot, toRoot, kind, counts[kind.ordinal()]);
+                        }
+                    }
                 }
-            } catch (IOException e) {
-                e.printStackTrace();
+            });
+        }
+        return projectRootReferences;
+    }
+
+    /**
+     * Method calls and field accesses of the class that the symbol solver could not resolve.
+     */
+    public List<UnresolvedReference> getUnresolvedReferences(String className) {
+        if (spilledUnresolved != null) {
+            var references = new ArrayList<UnresolvedReference>();
+            var classId = symbols.find(className);
+            if (classId >= 0) {
+                // Spilled as the class, the scope and the member with the number of their references
+                spilledUnresolved.find(new int[]{classId}, record -> {
+                    var reference = new UnresolvedReference(className, symbols.name(record[1]), symbols.name(record[2]));
+                    for (int i = 0; i < record[3]; i++) {
+                        references.add(reference);
+                    }
+                });
             }
+            return references;
         }
+        var references = new ArrayList<>(unresolvedCalls.get(className));
+        references.addAll(unresolvedFieldAccesses.get(className));
+        return references;
     }
 
-    private void addPackageReference(String packageName, String referencedPackageName) {
-        packageReferences.put(packageName, referencedPackageName);
-        packageRelationships.addEdge(packageName + "-" + referencedPackageName, packageName, referencedPackageName);
+    public GraphAnalytics analyzeClassReferences() {
+        return new GraphAnalytics("Class dependencies", classReferences.getRelation(), symbols::name);
     }
 
-    private void addClassReference(String className, String referencedClassName) {
-        classReferences.put(className, referencedClassName);
-        classRelationships.addEdge(className + "-" + referencedClassName, className, referencedClassName);
+    public GraphAnalytics analyzePackageReferences() {
+        return new GraphAnalytics("Package dependencies", packageReferences.getRelation(), symbols::name);
     }
 
-    private void addPackagePerProject(String projectPath, String packageName) {
-        packagesPerProjectRoot.put(projectPath, packageName);
-        packagePerProjectHierarchy.addEdge(projectPath + "-" + packageName, projectPath, packageName);
+    public GraphAnalytics analyzeProjectRootReferences() {
+        return new GraphAnalytics("Project root dependencies", getProjectRootReferences().getRelation(), symbols::name);
     }
 
-    private String resolveClassReference(String className, Collection<String> imports) {
-        // Class does not have the full name, must be resolved from the imports
-        for (var seenClass : classesPerPackage.values()
-                .stream()
-                .filter(c -> c.endsWith(className))
-                .collect(Collectors.toSet())) {
-            for (var imp : imports) {
-                var parts = imp.split("\\.");
-                for (int i = parts.length; i > 0; i--) {
-                    var prefix = String.join(".", Arrays.copyOfRange(parts, 0, i));
-                    if (seenClass.startsWith(prefix)) {
-                        return seenClass;
-                    }
-                }
-            }
+    public void showClassReferences() {
+        toGraph("Class dependencies", classReferences).display();
+    }
+
+    /**
+     * Shows the class references starting from the project roots, expanding the nodes on demand, see
+     * {@link HierarchyViewer}.
+     */
+    public void viewClassReferences() {
+        new HierarchyViewer(symbols, classesPerPackage, this::getPackage, this::getProjectRoot, classReferences).show();
+    }
+
+    public void showPackageReferences() {
+        toGraph("Package dependencies", packageReferences).display();
+    }
+
+    public void forEachClassReference(ReferenceConsumer consumer) {
+        classReferences.forEach((from, to, counts) -> consumer.accept(symbols.name(from), symbols.name(to), counts));
+    }
+
+    public void forEachPackageReference(ReferenceConsumer consumer) {
+        packageReferences.forEach((from, to, counts) -> consumer.accept(symbols.name(from), symbols.name(to), counts));
+    }
+
+    public void exportClassReferences(GraphWriter writer) {
+        export(classReferences, writer);
+    }
+
+    public void exportPackageReferences(GraphWriter writer) {
+        export(packageReferences, writer);
+    }
+
+    public void exportProjectRootReferences(GraphWriter writer) {
+        export(getProjectRootReferences(), writer);
+    }
+
+    public void exportProjectPackages(GraphWriter writer) {
+        export(packagesPerProjectRoot, writer);
+    }
+
+    public void exportPackageClasses(GraphWriter writer) {
+        export(classesPerPackage, writer);
+    }
+
+    /**
+     * @param targets  the relation or its inverse
+     * @param reversed whether the targets are the inverse of the weighted relation
+     */
+    private List<Dependency> getDependencies(WeightedEdges references, IntRelation targets, String name, boolean reversed) {
+        var id = symbols.find(name);
+        if (id < 0) {
+            return List.of();
         }
-        return null;
+        var dependencies = new ArrayList<Dependency>();
+        for (var target : targets.getTargets(id)) {
+            dependencies.add(new Dependency(symbols.name(target), reversed ? references.getCounts(target, id) : references.getCounts(id, target)));
+        }
+        return dependencies;
+    }
+
+    private void export(IntRelation relation, GraphWriter writer) {
+        relation.forEach((from, to) -> writer.edge(symbols.name(from), symbols.name(to)));
+    }
+
+    private void export(WeightedEdges relation, GraphWriter writer) {
+        relation.forEach((from, to, counts) -> writer.edge(symbols.name(from), symbols.name(to), counts));
+    }
+
+    private Graph toGraph(String title, WeightedEdges relation) {
+        var graph = toGraph(title, relation.getRelation(), symbols);
+        relation.forEach((from, to, counts) -> {
+            var edge = graph.getEdge(getEdgeId(from, to));
+            var weight = Arrays.stream(counts).sum();
+            edge.setAttribute("weight", weight);
+            edge.setAttribute("ui.label", weight);
+        });
+        return graph;
+    }
+
+    /**
+     * A graph of the relation with the nodes labeled by their names, also used by {@link ImportScan} and {@link BuildToolAnalysis}.
+     */
+    static Graph toGraph(String title, IntRelation relation, SymbolTable symbols) {
+        var graph = newGraph(title);
+        relation.forEach((from, to) -> graph.addEdge(getEdgeId(from, to), symbols.name(from), symbols.name(to)));
+        for (Node node : graph) {
+            node.setAttribute("ui.label", node.getId());
+        }
+        return graph;
+    }
+
+    /**
+     * The id of a shown edge. Names may contain any character (project roots are paths), so the edge is identified by
+     * the numbers of their symbols.
+     */
+    static String getEdgeId(int from, int to) {
+        return from + ">" + to;
+    }
+
+    /**
+     * An empty graph with the style of all the shown graphs, creating the nodes of the added edges.
+     */
+    static Graph newGraph(String title) {
+        var graph = new SingleGraph(title);
+        graph.setStrict(false);
+        graph.setAutoCreate(true);
+        graph.setAttribute("ui.stylesheet",
+                "node{\n" +
+                        "    size: 30px, 30px;\n" +
+                        "    fill-color: #f7f7f0;\n" +
+                        "    text-mode: normal; \n" +
+                        "}");
+        System.setProperty("org.graphstream.ui", "swing");
+        return graph;
+    }
+
+    private int getPackage(int className) {
+        return className >= 0 && className < classToPackage.length ? classToPackage[className] : NO_PACKAGE;
+    }
+
+    private int getProjectRoot(int className) {
+        return className >= 0 && className < classToProjectRoot.length ? classToProjectRoot[className] : NO_PROJECT_ROOT;
+    }
+
+    private void addPackageReference(int packageName, int referencedPackageName, ReferenceKind kind, int count) {
+        packageReferences.add(packageName, referencedPackageName, kind, count);
+    }
+
+    private void addClassReference(int className, int referencedClassName, ReferenceKind kind, int count) {
+        classReferences.add(className, referencedClassName, kind, count);
     }
 }
@@ -0,0 +1,91 @@
+package cz.cuni.mff.d3s;
+
+import java.util.Arrays;
+
+/**
+ * {@link WeightedEdges} kept in a {@link RecordStore}: every added reference is appended as a record of the source,
+ * the target, the kind and the count, and the records are sorted and merged when the edges are first read. Only
+ * {@link #getRelation()} loads the edges into memory, the other reads stream them from disk in the order of the
+ * source and target ids or, for {@link #getCounts}, binary-search them. Edges can only be added before the first read.
+ */
+public class SpilledRelation implements WeightedEdges {
+    private static final ReferenceKind[] KINDS = ReferenceKind.values();
+
+    private final RecordStore store;
+    private final int[] record = new int[4];
+    private IntRelation relation;
+    private int size = -1;
+
+    public SpilledRelation(RecordStore store) {
+        this.store = store;
+    }
+
+    @Override
+    public void add(int from, int to, ReferenceKind kind, int count) {
+        record[0] = from;
+        record[1] = to;
+        record[2] = kind.ordinal();
+        record[3] = count;
+        store.append(record);
+    }
+
+    /**
+     * Looks the records of the edge up in the sorted store.
+     */
+    @Override
+    public int[] getCounts(int from, int to) {
+        var counts = new int[KINDS.length];
+        store.find(new int[]{from, to}, found -> counts[found[2]] += found[3]);
+        return counts;
+    }
+
+    /**
+     * Loads the edges into memory on the first call.
+     */
+    @Override
+    public synchronized IntRelation getRelation() {
+        if (relation == null) {
+            relation = new IntRelation();
+            forEach((from, to, counts) -> relation.add(from, to));
+        }
+        return relation;
+    }
+
+    @Override
+    public void forEach(WeightedEdgeConsumer consumer) {
+        // The records of an edge are consecutive, one per kind
+        var counts = new int[KINDS.length];
+        var from = -1;
+        var to = -1;
+        var edges = 0;
+        try (var cursor = store.cursor()) {
+            var next = new int[4];
+            while (cursor.next(next)) {
+                if (next[0] != from || next[1] != to) {
+                    if (from >= 0) {
+                        consumer.accept(from, to, counts);
+                        edges++;
+                    }
+                    from = next[0];
+                    to = next[1];
+                    Arrays.fill(counts, 0);
+                }
+                counts[next[2]] += next[3];
+            }
+        }
+        if (from >= 0) {
+            consumer.accept(from, to, counts);
+            edges++;
+        }
+        size = edges;
+    }
+
+    @Override
+    public int size() {
+        if (size < 0) {
+            forEach((from, to, counts) -> {
+            });
+        }
+        return size;
+    }
+}
@@ -0,0 +1,114 @@
+package cz.cuni.mff.d3s;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * The parts of an mx suite definition ({@code mx.<suite>/suite.py}) the analysis uses: the imported suites, the
+ * projects with their source directories and dependencies, and the distributions. Dependencies on other suites are
+ * written as {@code <suite>:<name>}.
+ */
+public record SuiteModel(Path file, String name, List<String> importedSuites, List<Project> projects,
+                         List<Distribution> distributions) {
+
+    public record Project(String name, String subDir, List<String> sourceDirs, List<String> dependencies) {
+        /**
+         * Directory of the project relative to the suite directory, where mx looks for it.
+         */
+        public Path getDirectory() {
+            return subDir == null ? Path.of(name) : Path.of(subDir, name);
+        }
+    }
+
+    public record Distribution(String name, List<String> dependencies, List<String> distDependencies) {
+    }
+
+    public static SuiteModel parse(Path file) throws IOException, SuiteParser.ParseException {
+        var suite = SuiteParser.parseSuite(Files.readString(file, StandardCharsets.UTF_8));
+        var name = suite.get("name") instanceof String s ? s : file.getParent().getFileName().toString().replaceFirst("^mx\\.", "");
+        var importedSuites = new ArrayList<String>();
+        if (suite.get("imports") instanceof Map<?, ?> imports) {
+            for (var imported : getList(imports, "suites")) {
+                if (imported instanceof Map<?, ?> importedSuite && importedSuite.get("name") instanceof String importedName) {
+                    importedSuites.add(importedName);
+                } else if (imported instanceof String importedName) {
+                    importedSuites.add(importedName);
+                }
+            }
+        }
+        var projects = new ArrayList<Project>();
+        for (var entry : getMap(suite, "projects").entrySet()) {
+            if (entry.getValue() instanceof Map<?, ?> project) {
+                projects.add(new Project(String.valueOf(entry.getKey()),
+                        project.get("subDir") instanceof String subDir ? subDir : null,
+                        getStrings(project, "sourceDirs"), getStrings(project, "dependencies")));
+            }
+        }
+        var distributions = new ArrayList<Distribution>();
+        for (var entry : getMap(suite, "distributions").entrySet()) {
+            if (entry.getValue() instanceof Map<?, ?> distribution) {
+                distributions.add(new Distribution(String.valueOf(entry.getKey()),
+                        getStrings(distribution, "dependencies"), getStrings(distribution, "distDependencies")));
+            }
+        }
+        return new SuiteModel(file, name, importedSuites, projects, distributions);
+    }
+
+    /**
+     * The suite directory, i.e. the parent of the {@code mx.<suite>} directory.
+     */
+    public Path getDirectory() {
+        return file.getParent().getParent();
+    }
+
+    /**
+     * Suites this suite depends on, whether imported or only referenced by a {@code <suite>:<name>} dependency of a
+     * project or distribution, in the order of their first occurrence.
+     */
+    public Set<String> getReferencedSuites() {
+        var suites = new LinkedHashSet<>(importedSuites);
+        for (var project : projects) {
+            addSuitePrefixes(project.dependencies(), suites);
+        }
+        for (var distribution : distributions) {
+            addSuitePrefixes(distribution.dependencies(), suites);
+            addSuitePrefixes(distribution.distDependencies(), suites);
+        }
+        suites.remove(name);
+        return suites;
+    }
+
+    private static void addSuitePrefixes(List<String> dependencies, Set<String> suites) {
+        for (var dependency : dependencies) {
+            var separator = dependency.indexOf(':');
+            if (separator > 0) {
+                suites.add(dependency.substring(0, separator));
+            }
+        }
+    }
+
+    private static Map<?, ?> getMap(Map<?, ?> map, String key) {
+        return map.get(key) instanceof Map<?, ?> value ? value : Map.of();
+    }
+
+    private static List<?> getList(Map<?, ?> map, String key) {
+        return map.get(key) instanceof List<?> value ? value : List.of();
+    }
+
+    private static List<String> getStrings(Map<?, ?> map, String key) {
+        var strings = new ArrayList<String>();
+        for (var value : getList(map, key)) {
+            if (value instanceof String string) {
+                strings.add(string);
+            }
+        }
+        return strings;
+    }
+}
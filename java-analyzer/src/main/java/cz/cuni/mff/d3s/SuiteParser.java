@@ -0,0 +1,292 @@
+package cz.cuni.mff.d3s;
+
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Parses the {@code suite = {...}} assignment of an mx {@code suite.py} file in a single pass over its characters.
+ * The value is a Python literal: dictionaries become {@link Map}s (in source order), lists and tuples {@link List}s,
+ * strings {@link String}s, numbers {@link Long}s or {@link Double}s, {@code True}/{@code False} {@link Boolean}s and
+ * {@code None} {@code null}. Adjacent strings and {@code +} between strings or lists are concatenated like in Python.
+ * Statements before the assignment (e.g. imports) are skipped.
+ */
+public class SuiteParser {
+    private final String source;
+    private int position;
+    private int line = 1;
+    private Token token;
+
+    public static class ParseException extends Exception {
+        public ParseException(String message) {
+            super(message);
+        }
+    }
+
+    private enum TokenType {
+        NAME, STRING, NUMBER, PUNCTUATION, END
+    }
+
+    private record Token(TokenType type, String text, int line) {
+        boolean is(String punctuation) {
+            return type == TokenType.PUNCTUATION && text.equals(punctuation);
+        }
+    }
+
+    private SuiteParser(String source) {
+        this.source = source;
+    }
+
+    @SuppressWarnings("unchecked")
+    public static Map<String, Object> parseSuite(String source) throws ParseException {
+        var parser = new SuiteParser(source);
+        parser.next();
+        while (parser.token.type() != TokenType.END) {
+            var isSuiteName = parser.token.type() == TokenType.NAME && parser.token.text().equals("suite");
+            parser.next();
+            if (isSuiteName && parser.token.is("=")) {
+                parser.next();
+                var value = parser.parseValue();
+                if (!(value instanceof Map)) {
+                    throw parser.error("suite is not a dictionary");
+                }
+                return (Map<String, Object>) value;
+            }
+        }
+        throw parser.error("no suite assignment");
+    }
+
+    private Object parseValue() throws ParseException {
+        var value = parseOperand();
+        while (token.is("+")) {
+            next();
+            value = concatenate(value, parseOperand());
+        }
+        return value;
+    }
+
+    private Object parseOperand() throws ParseException {
+        var current = token;
+        switch (current.type()) {
+            case STRING -> {
+                var text = new StringBuilder();
+                while (token.type() == TokenType.STRING) {
+                    text.append(token.text());
+                    next();
+                }
+                return text.toString();
+            }
+            case NUMBER -> {
+                next();
+                return parseNumber(current.text());
+            }
+            case NAME -> {
+                next();
+                return switch (current.text()) {
+                    case "True" -> Boolean.TRUE;
+                    case "False" -> Boolean.FALSE;
+                    case "None" -> null;
+                    default -> throw error("unsupported name " + current.text());
+                };
+            }
+            case PUNCTUATION -> {
+                if (current.is("{")) {
+                    return parseDictionary();
+                }
+                if (current.is("[")) {
+                    return parseSequence("]");
+                }
+                if (current.is("(")) {
+                    return parseSequence(")");
+                }
+                if (current.is("-")) {
+                    next();
+                    var number = parseOperand();
+                    if (number instanceof Long l) {
+                        return -l;
+                    }
+                    if (number instanceof Double d) {
+                        return -d;
+                    }
+                    throw error("- before a non-number");
+                }
+            }
+        }
+        throw error("unexpected " + (current.type() == TokenType.END ? "end of file" : current.text()));
+    }
+
+    private Map<String, Object> parseDictionary() throws ParseException {
+        next();
+        var dictionary = new LinkedHashMap<String, Object>();
+        while (!token.is("}")) {
+            var key = parseValue();
+            expect(":");
+            dictionary.put(String.valueOf(key), parseValue());
+            if (!token.is(",")) {
+                break;
+            }
+            next();
+        }
+        expect("}");
+        return dictionary;
+    }
+
+    private List<Object> parseSequence(String closing) throws ParseException {
+        next();
+        var sequence = new ArrayList<>();
+        while (!token.is(closing)) {
+            sequence.add(parseValue());
+            if (!token.is(",")) {
+                break;
+            }
+            next();
+        }
+        expect(closing);
+        return sequence;
+    }
+
+    private Object concatenate(Object left, Object right) throws ParseException {
+        if (left instanceof String l && right instanceof String r) {
+            return l + r;
+        }
+        if (left instanceof List<?> l && right instanceof List<?> r) {
+            var list = new ArrayList<Object>(l);
+            list.addAll(r);
+            return list;
+        }
+        throw error("unsupported operands of +");
+    }
+
+    private Object parseNumber(String text) throws ParseException {
+        try {
+            var digits = text.replace("_", "");
+            if (digits.startsWith("0x") || digits.startsWith("0X")) {
+                return Long.parseLong(digits.substring(2), 16);
+            }
+            if (digits.contains(".") || digits.contains("e") || digits.contains("E")) {
+                return Double.parseDouble(digits);
+            }
+            return Long.parseLong(digits);
+        } catch (NumberFormatException e) {
+            throw error("invalid number " + text);
+        }
+    }
+
+    private void expect(String punctuation) throws ParseException {
+        if (!token.is(punctuation)) {
+            throw error("expected " + punctuation + " but found " + (token.type() == TokenType.END ? "end of file" : token.text()));
+        }
+        next();
+    }
+
+    private ParseException error(String message) {
+        return new ParseException("line " + (token == null ? line : token.line()) + ": " + message);
+    }
+
+    private void next() throws ParseException {
+        skipWhitespaceAndComments();
+        if (position >= source.length()) {
+            token = new Token(TokenType.END, "", line);
+            return;
+        }
+        var c = source.charAt(position);
+        if (isStringStart()) {
+            token = readString();
+        } else if (Character.isDigit(c) || (c == '.' && position + 1 < source.length() && Character.isDigit(source.charAt(position + 1)))) {
+            var start = position;
+            while (position < source.length() && (Character.isLetterOrDigit(source.charAt(position))
+                    || source.charAt(position) == '.' || source.charAt(position) == '_')) {
+                position++;
+            }
+            token = new Token(TokenType.NUMBER, source.substring(start, position), line);
+        } else if (Character.isJavaIdentifierStart(c)) {
+            var start = position;
+            while (position < source.length() && Character.isJavaIdentifierPart(source.charAt(position))) {
+                position++;
+            }
+            token = new Token(TokenType.NAME, source.substring(start, position), line);
+        } else {
+            position++;
+            token = new Token(TokenType.PUNCTUATION, String.valueOf(c), line);
+        }
+    }
+
+    private void skipWhitespaceAndComments() {
+        while (position < source.length()) {
+            var c = source.charAt(position);
+            if (c == '#') {
+                while (position < source.length() && source.charAt(position) != '\n') {
+                    position++;
+                }
+            } else if (c == '\n') {
+                line++;
+                position++;
+            } else if (Character.isWhitespace(c) || c == '\\') {
+                // A backslash outside of a string continues the line
+                position++;
+            } else {
+                return;
+            }
+        }
+    }
+
+    private boolean isStringStart() {
+        // Optional prefix: r, u, b, f or a combination like rb
+        var index = position;
+        while (index < source.length() && index - position < 2 && "rRuUbBfF".indexOf(source.charAt(index)) >= 0) {
+            index++;
+        }
+        return index < source.length() && (source.charAt(index) == '"' || source.charAt(index) == '\'');
+    }
+
+    private Token readString() throws ParseException {
+        var startLine = line;
+        var raw = false;
+        while (source.charAt(position) != '"' && source.charAt(position) != '\'') {
+            raw |= Character.toLowerCase(source.charAt(position)) == 'r';
+            position++;
+        }
+        var quote = source.charAt(position);
+        var triple = source.startsWith(String.valueOf(quote).repeat(3), position);
+        position += triple ? 3 : 1;
+        var text = new StringBuilder();
+        while (true) {
+            if (position >= source.length()) {
+                line = startLine;
+                throw new ParseException("line " + startLine + ": unterminated string");
+            }
+            var c = source.charAt(position);
+            if (c == quote && (!triple || source.startsWith(String.valueOf(quote).repeat(3), position))) {
+                position += triple ? 3 : 1;
+                return new Token(TokenType.STRING, text.toString(), startLine);
+            }
+            if (c == '\n') {
+                if (!triple) {
+                    throw new ParseException("line " + startLine + ": unterminated string");
+                }
+                line++;
+            }
+            if (c == '\\' && position + 1 < source.length()) {
+                var escaped = source.charAt(position + 1);
+                position += 2;
+                if (raw) {
+                    text.append(c).append(escaped);
+                    continue;
+                }
+                switch (escaped) {
+                    case 'n' -> text.append('\n');
+                    case 't' -> text.append('\t');
+                    case 'r' -> text.append('\r');
+                    case '0' -> text.append('\0');
+                    case '\n' -> line++;
+                    case '\\', '\'', '"' -> text.append(escaped);
+                    default -> text.append(c).append(escaped);
+                }
+                continue;
+            }
+            text.append(c);
+            position++;
+        }
+    }
+}
@@ -0,0 +1,73 @@
+package cz.cuni.mff.d3s;
+
+import java.util.Arrays;
+
+/**
+ * Interns class, package and project names to dense int ids, so that every name is stored exactly once and the
+ * relations between them can be kept in primitive arrays. Not thread-safe.
+ */
+public class SymbolTable {
+    private static final int NOT_FOUND = -1;
+
+    private String[] names = new String[1024];
+    private int size;
+    // Open addressing table of id + 1, zero marks an empty slot
+    private int[] slots = new int[2048];
+
+    public int intern(String name) {
+        var slot = findSlot(name);
+        if (slots[slot] != 0) {
+            return slots[slot] - 1;
+        }
+        if (size == names.length) {
+            names = Arrays.copyOf(names, size * 2);
+        }
+        names[size] = name;
+        slots[slot] = ++size;
+        if (size * 2 > slots.length) {
+            rehash();
+        }
+        return size - 1;
+    }
+
+    /**
+     * @return the id of the name, or -1 if it was never interned
+     */
+    public int find(String name) {
+        var slot = findSlot(name);
+        return slots[slot] == 0 ? NOT_FOUND : slots[slot] - 1;
+    }
+
+    public String name(int id) {
+        return names[id];
+    }
+
+    public int size() {
+        return size;
+    }
+
+    private int findSlot(String name) {
+        var mask = slots.length - 1;
+        var slot = mix(name.hashCode()) & mask;
+        while (slots[slot] != 0 && !names[slots[slot] - 1].equals(name)) {
+            slot = (slot + 1) & mask;
+        }
+        return slot;
+    }
+
+    private void rehash() {
+        slots = new int[slots.length * 2];
+        var mask = slots.length - 1;
+        for (int id = 0; id < size; id++) {
+            var slot = mix(names[id].hashCode()) & mask;
+            while (slots[slot] != 0) {
+                slot = (slot + 1) & mask;
+            }
+            slots[slot] = id + 1;
+        }
+    }
+
+    private static int mix(int hash) {
+        return hash ^ (hash >>> 16);
+    }
+}
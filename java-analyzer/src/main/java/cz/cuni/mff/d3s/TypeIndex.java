@@ -0,0 +1,76 @@
+package cz.cuni.mff.d3s;
+
+import com.google.common.collect.ArrayListMultimap;
+import com.google.common.collect.ListMultimap;
+
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Resolves simple type names to the fully qualified names of the analyzed classes, following the Java scoping rules:
+ * single-type imports first, then the classes of the same package, then on-demand ({@code .*}) imports.
+ */
+public class TypeIndex {
+    private final ListMultimap<String, String> classesBySimpleName = ArrayListMultimap.create();
+    private final Map<String, String> classToPackage = new HashMap<>();
+
+    public void addClass(String className, String packageName) {
+        if (classToPackage.put(className, packageName) == null) {
+            classesBySimpleName.put(simpleName(className), className);
+        }
+    }
+
+    /**
+     * @param imports imports of the referencing class, on-demand imports end with {@code .*}
+     * @return the fully qualified name of the referenced class, or {@code null} if it is not an analyzed class
+     * visible under the simple name
+     */
+    public String resolve(String simpleName, String packageName, Collection<String> imports) {
+        var candidates = classesBySimpleName.get(simpleName);
+        if (candidates.isEmpty()) {
+            return null;
+        }
+        for (var candidate : candidates) {
+            if (imports.contains(candidate)) {
+                return candidate;
+            }
+        }
+        for (var candidate : candidates) {
+            if (classToPackage.get(candidate).equals(packageName)) {
+                return candidate;
+            }
+        }
+        for (var candidate : candidates) {
+            if (imports.contains(classToPackage.get(candidate) + ".*")) {
+                return candidate;
+            }
+        }
+        return null;
+    }
+
+    /**
+     * Like {@link #resolve} for a name that may also be qualified: by a package, or by a class of which it names a
+     * nested class, which resolves to the top-level class.
+     */
+    public String resolveName(String name, String packageName, Collection<String> imports) {
+        var dot = name.indexOf('.');
+        if (dot < 0) {
+            return resolve(name, packageName, imports);
+        }
+        for (var end = dot; end > 0; end = name.indexOf('.', end + 1)) {
+            var prefix = name.substring(0, end);
+            if (classToPackage.containsKey(prefix)) {
+                return prefix;
+            }
+        }
+        if (classToPackage.containsKey(name)) {
+            return name;
+        }
+        return resolve(name.substring(0, dot), packageName, imports);
+    }
+
+    private static String simpleName(String className) {
+        return className.substring(className.lastIndexOf('.') + 1);
+    }
+}
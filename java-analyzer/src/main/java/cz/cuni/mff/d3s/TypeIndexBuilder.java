@@ -0,0 +1,268 @@
+package cz.cuni.mff.d3s;
+
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.net.URI;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.FileSystem;
+import java.nio.file.FileSystems;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.jar.JarFile;
+
+/**
+ * Writes a {@link BinaryTypeIndex} of the types of a JDK and of the given jars, read from their class files without
+ * loading them. Anonymous, local and synthetic classes are skipped, as are private and package-private members, which
+ * cannot be referenced from the analyzed sources. When a type is in several places, the JDK wins, then the first jar.
+ * <p>
+ * Usage: {@code TypeIndexBuilder <output> [--jdk=<java.home>] [jar...]}, the JDK defaults to the running one. Run by
+ * the {@code typeIndex} Gradle task.
+ */
+public class TypeIndexBuilder {
+    private static final int ACC_PUBLIC = 0x0001;
+    private static final int ACC_PROTECTED = 0x0004;
+    private static final int ACC_VARARGS = 0x0080;
+    private static final int ACC_INTERFACE = 0x0200;
+    private static final int ACC_SYNTHETIC = 0x1000;
+    private static final Comparator<String> UTF8_ORDER = Comparator.comparing(name -> name.getBytes(StandardCharsets.UTF_8), Arrays::compareUnsigned);
+
+    private final Map<String, TypeInfo> types = new HashMap<>();
+    private final List<Path> jars = new ArrayList<>();
+
+    private record TypeInfo(String name, int packageLength, boolean isInterface, List<String> supertypes, List<String> members) {
+    }
+
+    public static void main(String[] args) throws IOException {
+        if (args.length < 1) {
+            System.err.println("Usage: TypeIndexBuilder <output> [--jdk=<java.home>] [jar...]");
+            System.exit(1);
+        }
+        var builder = new TypeIndexBuilder();
+        var jdk = Arrays.stream(args).skip(1).filter(arg -> arg.startsWith("--jdk=")).map(arg -> Path.of(arg.substring("--jdk=".length()))).findFirst();
+        builder.addJdk(jdk);
+        for (var arg : Arrays.asList(args).subList(1, args.length)) {
+            if (!arg.startsWith("--jdk=")) {
+                builder.addJar(Path.of(arg));
+            }
+        }
+        var output = Path.of(args[0]);
+        builder.write(output);
+        System.out.println("Type index: " + builder.types.size() + " types written to " + output + " (" + Files.size(output) / 1024 + " kB)");
+    }
+
+    /**
+     * @param javaHome the JDK to index, the running one if empty
+     */
+    public void addJdk(Optional<Path> javaHome) throws IOException {
+        FileSystem jrt = javaHome.isPresent()
+                ? FileSystems.newFileSystem(URI.create("jrt:/"), Map.of("java.home", javaHome.get().toString()))
+                : FileSystems.getFileSystem(URI.create("jrt:/"));
+        try (var files = Files.walk(jrt.getPath("/modules"))) {
+            for (var file : (Iterable<Path>) files::iterator) {
+                if (file.toString().endsWith(".class")) {
+                    addClass(Files.readAllBytes(file));
+                }
+            }
+        }
+    }
+
+    public void addJar(Path jar) throws IOException {
+        jars.add(jar.toAbsolutePath().normalize());
+        try (var jarFile = new JarFile(jar.toFile())) {
+            for (var entries = jarFile.entries(); entries.hasMoreElements(); ) {
+                var entry = entries.nextElement();
+                // Versioned classes of multi-release jars duplicate the base ones
+                if (entry.getName().endsWith(".class") && !entry.getName().startsWith("META-INF/")) {
+                    try (var input = jarFile.getInputStream(entry)) {
+                        addClass(input.readAllBytes());
+                    }
+                }
+            }
+        }
+    }
+
+    private void addClass(byte[] classFile) throws IOException {
+        var input = new DataInputStream(new ByteArrayInputStream(classFile));
+        if (input.readInt() != 0xCAFEBABE) {
+            return;
+        }
+        input.readInt();
+        var constantCount = input.readUnsignedShort();
+        var utf8 = new String[constantCount];
+        var classNames = new int[constantCount];
+        for (int i = 1; i < constantCount; i++) {
+            var tag = input.readUnsignedByte();
+            switch (tag) {
+                case 1 -> utf8[i] = input.readUTF();
+                case 7 -> classNames[i] = input.readUnsignedShort();
+                case 8, 16, 19, 20 -> input.skipBytes(2);
+                case 15 -> input.skipBytes(3);
+                case 3, 4, 9, 10, 11, 12, 17, 18 -> input.skipBytes(4);
+                case 5, 6 -> {
+                    input.skipBytes(8);
+                    i++;
+                }
+                default -> throw new IOException("Unknown constant pool tag " + tag);
+            }
+        }
+        var access = input.readUnsignedShort();
+        var name = utf8[classNames[input.readUnsignedShort()]];
+        var superclass = input.readUnsignedShort();
+        if ((access & ACC_SYNTHETIC) != 0 || name.endsWith("module-info") || name.endsWith("package-info") || isAnonymousOrLocal(name)) {
+            return;
+        }
+        var canonicalName = toCanonical(name);
+        if (types.containsKey(canonicalName)) {
+            return;
+        }
+        var isInterface = (access & ACC_INTERFACE) != 0;
+        var supertypes = new ArrayList<String>();
+        if (superclass != 0 && !isInterface) {
+            supertypes.add(toCanonical(utf8[classNames[superclass]]));
+        }
+        var interfaceCount = input.readUnsignedShort();
+        for (int i = 0; i < interfaceCount; i++) {
+            supertypes.add(toCanonical(utf8[classNames[input.readUnsignedShort()]]));
+        }
+        var members = new ArrayList<String>();
+        var fieldCount = input.readUnsignedShort();
+        for (int i = 0; i < fieldCount; i++) {
+            var fieldAccess = input.readUnsignedShort();
+            var fieldName = utf8[input.readUnsignedShort()];
+            input.readUnsignedShort();
+            skipAttributes(input);
+            if (isVisible(fieldAccess)) {
+                members.add(fieldName);
+            }
+        }
+        var methodCount = input.readUnsignedShort();
+        for (int i = 0; i < methodCount; i++) {
+            var methodAccess = input.readUnsignedShort();
+            var methodName = utf8[input.readUnsignedShort()];
+            var descriptor = utf8[input.readUnsignedShort()];
+            skipAttributes(input);
+            if (isVisible(methodAccess) && !methodName.startsWith("<")) {
+                var parameters = descriptor.substring(0, descriptor.indexOf(')') + 1);
+                members.add(methodName + parameters + ((methodAccess & ACC_VARARGS) != 0 ? "*" : ""));
+            }
+        }
+        var packageLength = Math.max(name.lastIndexOf('/'), 0);
+        types.put(canonicalName, new TypeInfo(canonicalName, packageLength, isInterface, supertypes,
+                members.stream().distinct().sorted(UTF8_ORDER).toList()));
+    }
+
+    private static boolean isVisible(int access) {
+        return (access & ACC_SYNTHETIC) == 0 && (access & (ACC_PUBLIC | ACC_PROTECTED)) != 0;
+    }
+
+    private static void skipAttributes(DataInputStream input) throws IOException {
+        var count = input.readUnsignedShort();
+        for (int i = 0; i < count; i++) {
+            input.readUnsignedShort();
+            input.skipNBytes(Integer.toUnsignedLong(input.readInt()));
+        }
+    }
+
+    private static boolean isAnonymousOrLocal(String name) {
+        for (var dollar = name.indexOf('$'); dollar >= 0; dollar = name.indexOf('$', dollar + 1)) {
+            if (dollar + 1 < name.length() && Character.isDigit(name.charAt(dollar + 1))) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private static String toCanonical(String internalName) {
+        return internalName.replace('/', '.').replace('$', '.');
+    }
+
+    public void write(Path output) throws IOException {
+        var sortedTypes = types.values().stream().sorted(Comparator.comparing(TypeInfo::name, UTF8_ORDER)).toList();
+        var strings = new Section();
+        var lists = new Section();
+        var jarOffsets = new int[jars.size()];
+        for (int i = 0; i < jarOffsets.length; i++) {
+            jarOffsets[i] = strings.addString(jars.get(i).toString());
+        }
+        var entries = new int[sortedTypes.size() * BinaryTypeIndex.ENTRY_INTS];
+        for (int i = 0; i < sortedTypes.size(); i++) {
+            var type = sortedTypes.get(i);
+            var entry = i * BinaryTypeIndex.ENTRY_INTS;
+            entries[entry] = strings.addString(type.name());
+            entries[entry + 1] = type.packageLength();
+            entries[entry + 2] = type.isInterface() ? BinaryTypeIndex.INTERFACE : 0;
+            entries[entry + 3] = lists.addList(type.supertypes(), strings);
+            entries[entry + 4] = lists.addList(type.members(), strings);
+        }
+        var stringsStart = (BinaryTypeIndex.HEADER_INTS + jarOffsets.length + entries.length) * Integer.BYTES;
+        if (output.getParent() != null) {
+            Files.createDirectories(output.getParent());
+        }
+        try (var out = new DataOutputStream(new BufferedOutputStream(Files.newOutputStream(output), 64 * 1024))) {
+            out.writeInt(BinaryTypeIndex.MAGIC);
+            out.writeInt(BinaryTypeIndex.VERSION);
+            out.writeInt(jarOffsets.length);
+            out.writeInt(sortedTypes.size());
+            out.writeInt(stringsStart);
+            out.writeInt(stringsStart + strings.bytes.size());
+            for (var offset : jarOffsets) {
+                out.writeInt(offset);
+            }
+            for (var value : entries) {
+                out.writeInt(value);
+            }
+            strings.bytes.writeTo(out);
+            lists.bytes.writeTo(out);
+        }
+    }
+
+    /**
+     * Strings or lists of string offsets, the strings are shared.
+     */
+    private static class Section {
+        private final ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        private final DataOutputStream output = new DataOutputStream(bytes);
+        private final Map<String, Integer> stringOffsets = new HashMap<>();
+        private final Map<List<Integer>, Integer> listOffsets = new HashMap<>();
+
+        private int addString(String string) throws IOException {
+            var offset = stringOffsets.get(string);
+            if (offset == null) {
+                offset = bytes.size();
+                var utf8 = string.getBytes(StandardCharsets.UTF_8);
+                output.writeInt(utf8.length);
+                output.write(utf8);
+                stringOffsets.put(string, offset);
+            }
+            return offset;
+        }
+
+        private int addList(List<String> elements, Section strings) throws IOException {
+            var elementOffsets = new ArrayList<Integer>(elements.size());
+            for (var element : elements) {
+                elementOffsets.add(strings.addString(element));
+            }
+            var offset = listOffsets.get(elementOffsets);
+            if (offset == null) {
+                offset = bytes.size();
+                output.writeInt(elementOffsets.size());
+                for (var elementOffset : elementOffsets) {
+                    output.writeInt(elementOffset);
+                }
+                listOffsets.put(elementOffsets, offset);
+            }
+            return offset;
+        }
+    }
+}
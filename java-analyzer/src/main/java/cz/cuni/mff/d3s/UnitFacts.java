@@ -0,0 +1,317 @@
+package cz.cuni.mff.d3s;
+
+import com.github.javaparser.ast.PackageDeclaration;
+import com.github.javaparser.ast.body.TypeDeclaration;
+import com.github.javaparser.ast.expr.FieldAccessExpr;
+import com.github.javaparser.ast.expr.MethodCallExpr;
+
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.Set;
+
+/**
+ * Everything extracted from a single source file. The facts no longer reference the AST, so they can be cached
+ * on disk and applied to a {@link SourceAnalysis} later.
+ */
+public class UnitFacts {
+    private final Path sourceRoot;
+    private final Path file;
+    private String packageName;
+    private final List<String> declaredClasses = new ArrayList<>();
+    // Member types belong to their top-level class, but other files may name them on their own
+    private final List<String> nestedClasses = new ArrayList<>();
+    private final List<String> imports = new ArrayList<>();
+    // Number of occurrences of every reference, in the order of their first occurrence
+    private final Map<Reference, Integer> references = new LinkedHashMap<>();
+    private final List<UnresolvedReference> unresolvedCalls = new ArrayList<>();
+    private final List<UnresolvedReference> unresolvedFieldAccesses = new ArrayList<>();
+    // Number of occurrences of every type named by a class, the names are resolved by the imports of the class
+    private final Map<TypeReference, Integer> typeReferences = new LinkedHashMap<>();
+    // Types through which inherited members are referenced, as the references name the declaring types only
+    private final Set<String> memberScopes = new LinkedHashSet<>();
+    private final List<Comment> comments = new ArrayList<>();
+    // Statistics of the run that extracted the facts, they are not cached
+    private int resolvedReferences;
+    private int unresolvedReferences;
+
+    public record Reference(String className, String referencedClassName, String packageName, String referencedPackageName,
+                            ReferenceKind kind) {
+    }
+
+    /**
+     * @param typeName simple or qualified name of the type as written in the source
+     */
+    public record TypeReference(String className, String typeName, ReferenceKind kind) {
+    }
+
+    /**
+     * @param line line the comment starts on
+     * @param text the comment including its delimiters
+     */
+    public record Comment(int line, Kind kind, String text) {
+        public enum Kind {
+            LINE, BLOCK, JAVADOC
+        }
+    }
+
+    public UnitFacts(Path sourceRoot, Path file) {
+        this.sourceRoot = sourceRoot;
+        this.file = file;
+    }
+
+    public void addClass(Optional<PackageDeclaration> packageDeclaration, String className) {
+        if (packageDeclaration.isPresent()) {
+            packageName = packageDeclaration.get().getNameAsString();
+            declaredClasses.add(className);
+        }
+    }
+
+    public void addNestedClass(String className) {
+        nestedClasses.add(className);
+    }
+
+    /**
+     * @param imports imported names, on-demand imports end with {@code .*} and static ones start with {@code static}
+     */
+    public void setImports(List<String> imports) {
+        this.imports.clear();
+        this.imports.addAll(imports);
+    }
+
+    public void addMethodCall(Optional<PackageDeclaration> packageDeclaration, TypeDeclaration<?> clazz, MemberResolver.ResolvedMember method) {
+        if (packageDeclaration.isPresent() && clazz.getFullyQualifiedName().isPresent()) {
+            var className = clazz.getFullyQualifiedName().get();
+            if (!method.packageName().startsWith("java.")) {
+                references.merge(new Reference(className, method.declaringType(),
+                        packageDeclaration.get().getNameAsString(), method.packageName(), ReferenceKind.METHOD_CALL), 1, Integer::sum);
+            }
+        }
+    }
+
+    public void addFieldAccess(Optional<PackageDeclaration> packageDeclaration, TypeDeclaration<?> clazz, MemberResolver.ResolvedMember field) {
+        if (packageDeclaration.isPresent() && clazz.getFullyQualifiedName().isPresent()) {
+            var className = clazz.getFullyQualifiedName().get();
+            references.merge(new Reference(className, field.declaringType(),
+                    packageDeclaration.get().getNameAsString(), field.packageName(), ReferenceKind.FIELD_ACCESS), 1, Integer::sum);
+        }
+    }
+
+    public void addTypeReference(String className, String typeName, ReferenceKind kind) {
+        typeReferences.merge(new TypeReference(className, typeName, kind), 1, Integer::sum);
+    }
+
+    /**
+     * @param scopeType qualified name of the type a member declared by one of its supertypes was referenced through
+     */
+    public void addMemberScope(String scopeType) {
+        memberScopes.add(scopeType);
+    }
+
+    public void countResolution(boolean resolved) {
+        if (resolved) {
+            resolvedReferences++;
+        } else {
+            unresolvedReferences++;
+        }
+    }
+
+    public void addComment(int line, Comment.Kind kind, String text) {
+        if (!text.contains("Copyright")) {
+            comments.add(new Comment(line, kind, text));
+        }
+    }
+
+    public void addUnresolvedCall(TypeDeclaration<?> clazz, MethodCallExpr call) {
+        var scope = call.getScope();
+        if (clazz.getFullyQualifiedName().isPresent() && scope.isPresent() && scope.get().isNameExpr()) {
+            unresolvedCalls.add(new UnresolvedReference(clazz.getFullyQualifiedName().get(),
+                    scope.get().asNameExpr().getNameAsString(), call.getNameAsString()));
+        }
+    }
+
+    public void addUnresolvedFieldAccess(TypeDeclaration<?> clazz, FieldAccessExpr accessExpr) {
+        var scope = accessExpr.getScope();
+        if (clazz.getFullyQualifiedName().isPresent() && scope.isNameExpr()) {
+            unresolvedFieldAccesses.add(new UnresolvedReference(clazz.getFullyQualifiedName().get(),
+                    scope.asNameExpr().getNameAsString(), accessExpr.getNameAsString()));
+        }
+    }
+
+    public Path getSourceRoot() {
+        return sourceRoot;
+    }
+
+    public Path getFile() {
+        return file;
+    }
+
+    public Optional<String> getPackageName() {
+        return Optional.ofNullable(packageName);
+    }
+
+    public List<String> getDeclaredClasses() {
+        return declaredClasses;
+    }
+
+    public List<String> getNestedClasses() {
+        return nestedClasses;
+    }
+
+    public List<String> getImports() {
+        return imports;
+    }
+
+    /**
+     * @return every reference of the unit with the number of its occurrences
+     */
+    public Map<Reference, Integer> getReferences() {
+        return references;
+    }
+
+    public List<UnresolvedReference> getUnresolvedCalls() {
+        return unresolvedCalls;
+    }
+
+    public List<UnresolvedReference> getUnresolvedFieldAccesses() {
+        return unresolvedFieldAccesses;
+    }
+
+    /**
+     * @return every named type of the unit with the number of its occurrences
+     */
+    public Map<TypeReference, Integer> getTypeReferences() {
+        return typeReferences;
+    }
+
+    public Set<String> getMemberScopes() {
+        return memberScopes;
+    }
+
+    public List<Comment> getComments() {
+        return comments;
+    }
+
+    public int getResolvedReferenceCount() {
+        return resolvedReferences;
+    }
+
+    public int getUnresolvedReferenceCount() {
+        return unresolvedReferences;
+    }
+
+    public void write(DataOutput output) throws IOException {
+        writeString(output, packageName == null ? "" : packageName);
+        writeStrings(output, declaredClasses);
+        writeStrings(output, nestedClasses);
+        writeStrings(output, imports);
+        output.writeInt(references.size());
+        for (var entry : references.entrySet()) {
+            var reference = entry.getKey();
+            writeString(output, reference.className());
+            writeString(output, reference.referencedClassName());
+            writeString(output, reference.packageName());
+            writeString(output, reference.referencedPackageName());
+            output.writeByte(reference.kind().ordinal());
+            output.writeInt(entry.getValue());
+        }
+        writeUnresolved(output, unresolvedCalls);
+        writeUnresolved(output, unresolvedFieldAccesses);
+        output.writeInt(typeReferences.size());
+        for (var entry : typeReferences.entrySet()) {
+            var reference = entry.getKey();
+            writeString(output, reference.className());
+            writeString(output, reference.typeName());
+            output.writeByte(reference.kind().ordinal());
+            output.writeInt(entry.getValue());
+        }
+        writeStrings(output, List.copyOf(memberScopes));
+        output.writeInt(comments.size());
+        for (var comment : comments) {
+            output.writeInt(comment.line());
+            output.writeByte(comment.kind().ordinal());
+            writeString(output, comment.text());
+        }
+    }
+
+    public static UnitFacts read(DataInput input, Path sourceRoot, Path file) throws IOException {
+        var facts = new UnitFacts(sourceRoot, file);
+        var packageName = readString(input);
+        facts.packageName = packageName.isEmpty() ? null : packageName;
+        readStrings(input, facts.declaredClasses);
+        readStrings(input, facts.nestedClasses);
+        readStrings(input, facts.imports);
+        var referenceCount = input.readInt();
+        for (int i = 0; i < referenceCount; i++) {
+            var reference = new Reference(readString(input), readString(input), readString(input), readString(input),
+                    ReferenceKind.values()[input.readByte()]);
+            facts.references.put(reference, input.readInt());
+        }
+        readUnresolved(input, facts.unresolvedCalls);
+        readUnresolved(input, facts.unresolvedFieldAccesses);
+        var typeReferenceCount = input.readInt();
+        for (int i = 0; i < typeReferenceCount; i++) {
+            var reference = new TypeReference(readString(input), readString(input), ReferenceKind.values()[input.readByte()]);
+            facts.typeReferences.put(reference, input.readInt());
+        }
+        var memberScopes = new ArrayList<String>();
+        readStrings(input, memberScopes);
+        facts.memberScopes.addAll(memberScopes);
+        var commentCount = input.readInt();
+        for (int i = 0; i < commentCount; i++) {
+            facts.comments.add(new Comment(input.readInt(), Comment.Kind.values()[input.readByte()], readString(input)));
+        }
+        return facts;
+    }
+
+    private static void writeUnresolved(DataOutput output, List<UnresolvedReference> references) throws IOException {
+        output.writeInt(references.size());
+        for (var reference : references) {
+            writeString(output, reference.owningClass());
+            writeString(output, reference.scopeName());
+            writeString(output, reference.memberName());
+        }
+    }
+
+    private static void readUnresolved(DataInput input, List<UnresolvedReference> references) throws IOException {
+        var count = input.readInt();
+        for (int i = 0; i < count; i++) {
+            references.add(new UnresolvedReference(readString(input), readString(input), readString(input)));
+        }
+    }
+
+    private static void writeStrings(DataOutput output, List<String> strings) throws IOException {
+        output.writeInt(strings.size());
+        for (var string : strings) {
+            writeString(output, string);
+        }
+    }
+
+    private static void readStrings(DataInput input, List<String> strings) throws IOException {
+        var count = input.readInt();
+        for (int i = 0; i < count; i++) {
+            strings.add(readString(input));
+        }
+    }
+
+    // DataOutput#writeUTF is limited to 64 kB, which some license headers and Javadoc blocks exceed
+    static void writeString(DataOutput output, String string) throws IOException {
+        var bytes = string.getBytes(StandardCharsets.UTF_8);
+        output.writeInt(bytes.length);
+        output.write(bytes);
+    }
+
+    static String readString(DataInput input) throws IOException {
+        var bytes = new byte[input.readInt()];
+        input.readFully(bytes);
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+}
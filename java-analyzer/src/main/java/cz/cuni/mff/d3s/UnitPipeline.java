@@ -0,0 +1,81 @@
+package cz.cuni.mff.d3s;
+
+import java.util.Iterator;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.function.Consumer;
+import java.util.function.Function;
+
+/**
+ * Processes a stream of inputs on worker threads (e.g. parse and extract a file) and hands the results to a single
+ * consumer on the calling thread, in the order of the inputs. At most {@code capacity} inputs are in flight, i.e.
+ * submitted but not yet consumed; when the consumer falls behind, no further inputs are submitted. The pipeline itself
+ * only keeps the results of the in-flight inputs, independently of the number of inputs; whatever the workers retain
+ * (e.g. the caches of their type solvers) is bounded by the workers.
+ */
+public class UnitPipeline {
+    private static final Future<?> END_OF_INPUT = new CompletableFuture<>();
+
+    private UnitPipeline() {
+    }
+
+    public static <I, O> void run(Iterator<I> inputs, Function<I, O> worker, Consumer<O> consumer, int parallelism, int capacity) {
+        if (parallelism == 1) {
+            while (inputs.hasNext()) {
+                consumer.accept(worker.apply(inputs.next()));
+            }
+            return;
+        }
+        BlockingQueue<Future<O>> inFlight = new ArrayBlockingQueue<>(capacity);
+        var workers = Executors.newFixedThreadPool(parallelism);
+        var producer = new Thread(() -> submitAll(inputs, worker, workers, inFlight), "unit-pipeline-producer");
+        producer.setDaemon(true);
+        producer.start();
+        try {
+            while (true) {
+                var result = inFlight.take();
+                if (result == END_OF_INPUT) {
+                    break;
+                }
+                consumer.accept(result.get());
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException("Analysis was interrupted", e);
+        } catch (ExecutionException e) {
+            throw new IllegalStateException("Analysis task failed", e.getCause());
+        } finally {
+            producer.interrupt();
+            workers.shutdownNow();
+        }
+    }
+
+    private static <I, O> void submitAll(Iterator<I> inputs, Function<I, O> worker, ExecutorService workers, BlockingQueue<Future<O>> inFlight) {
+        try {
+            while (inputs.hasNext()) {
+                var input = inputs.next();
+                // Blocks while the queue is full, which is what bounds the memory of the pipeline
+                inFlight.put(workers.submit(() -> worker.apply(input)));
+            }
+            inFlight.put(endOfInput());
+        } catch (InterruptedException e) {
+            // The consumer gave up
+        } catch (RuntimeException e) {
+            try {
+                inFlight.put(CompletableFuture.failedFuture(e));
+            } catch (InterruptedException interrupted) {
+                // The consumer gave up
+            }
+        }
+    }
+
+    @SuppressWarnings("unchecked")
+    private static <O> Future<O> endOfInput() {
+        return (Future<O>) END_OF_INPUT;
+    }
+}
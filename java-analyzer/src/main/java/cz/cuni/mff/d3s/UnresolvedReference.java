@@ -0,0 +1,9 @@
+package cz.cuni.mff.d3s;
+
+/**
+ * A method call or field access which the symbol solver could not resolve, e.g. {@code GraalError.shouldNotReachHere()}
+ * in {@code owningClass} is stored as scope {@code GraalError} and member {@code shouldNotReachHere}.
+ * Only references with a simple name as their scope are kept, as only those can be resolved from the imports later.
+ */
+public record UnresolvedReference(String owningClass, String scopeName, String memberName) {
+}
@@ -0,0 +1,31 @@
+package cz.cuni.mff.d3s;
+
+/**
+ * Directed edges between {@link SymbolTable} ids counting the references of every {@link ReferenceKind}, kept in
+ * memory ({@link WeightedRelation}) or on disk ({@link SpilledRelation}).
+ */
+public interface WeightedEdges {
+    @FunctionalInterface
+    interface WeightedEdgeConsumer {
+        /**
+         * @param counts counts of the edge indexed by {@link ReferenceKind#ordinal()}, only valid during the call
+         */
+        void accept(int from, int to, int[] counts);
+    }
+
+    void add(int from, int to, ReferenceKind kind, int count);
+
+    /**
+     * @return counts of the edge indexed by {@link ReferenceKind#ordinal()}, all zero if there is no such edge
+     */
+    int[] getCounts(int from, int to);
+
+    /**
+     * The edges without their counts.
+     */
+    IntRelation getRelation();
+
+    void forEach(WeightedEdgeConsumer consumer);
+
+    int size();
+}
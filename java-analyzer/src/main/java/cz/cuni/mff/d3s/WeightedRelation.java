@@ -0,0 +1,75 @@
+package cz.cuni.mff.d3s;
+
+import java.util.Arrays;
+
+/**
+ * An {@link IntRelation} counting the references of every {@link ReferenceKind} per edge. The counts are kept in one
+ * int array per kind, indexed by the number of the edge in the relation.
+ */
+public class WeightedRelation implements WeightedEdges {
+    private static final ReferenceKind[] KINDS = ReferenceKind.values();
+
+    private final IntRelation relation = new IntRelation();
+    private int[][] counts = new int[KINDS.length][256];
+
+    @Override
+    public void add(int from, int to, ReferenceKind kind, int count) {
+        relation.add(from, to);
+        var edge = relation.indexOf(from, to);
+        if (edge >= counts[0].length) {
+            var capacity = Math.max(counts[0].length * 2, edge + 1);
+            for (int i = 0; i < KINDS.length; i++) {
+                counts[i] = Arrays.copyOf(counts[i], capacity);
+            }
+        }
+        counts[kind.ordinal()][edge] += count;
+    }
+
+    @Override
+    public int[] getCounts(int from, int to) {
+        var edgeCounts = new int[KINDS.length];
+        var edge = relation.indexOf(from, to);
+        if (edge >= 0) {
+            for (int i = 0; i < KINDS.length; i++) {
+                edgeCounts[i] = counts[i][edge];
+            }
+        }
+        return edgeCounts;
+    }
+
+    /**
+     * Number of references of all kinds along the edge.
+     */
+    public int getWeight(int from, int to) {
+        var edge = relation.indexOf(from, to);
+        var weight = 0;
+        if (edge >= 0) {
+            for (int i = 0; i < KINDS.length; i++) {
+                weight += counts[i][edge];
+            }
+        }
+        return weight;
+    }
+
+    @Override
+    public IntRelation getRelation() {
+        return relation;
+    }
+
+    @Override
+    public void forEach(WeightedEdgeConsumer consumer) {
+        var edgeCounts = new int[KINDS.length];
+        relation.forEach((from, to) -> {
+            var edge = relation.indexOf(from, to);
+            for (int i = 0; i < KINDS.length; i++) {
+                edgeCounts[i] = counts[i][edge];
+            }
+            consumer.accept(from, to, edgeCounts);
+        });
+    }
+
+    @Override
+    public int size() {
+        return relation.size();
+    }
+}
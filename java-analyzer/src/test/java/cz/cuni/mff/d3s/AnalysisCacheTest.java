@@ -0,0 +1,77 @@
+package cz.cuni.mff.d3s;
+
+import com.github.javaparser.StaticJavaParser;
+import com.github.javaparser.utils.SourceRoot;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class AnalysisCacheTest {
+    @TempDir
+    Path directory;
+
+    @Test
+    void invalidatesTheDependentsOfAChangedNestedType() throws IOException {
+        var root = Files.createDirectories(directory.resolve("src"));
+        var outer = write(root, "Outer.java", """
+                package p;
+
+                public class Outer {
+                    public static class Inner {
+                    }
+                }
+                """);
+        var user = write(root, "User.java", """
+                package p;
+
+                import p.Outer.Inner;
+
+                public class User {
+                    private Inner inner;
+                }
+                """);
+        var other = write(root, "Other.java", """
+                package p;
+
+                public class Other {
+                    private String name;
+                }
+                """);
+        var files = Map.of(root, List.of(outer, user, other));
+        fill(root, files);
+
+        Files.writeString(outer, Files.readString(outer).replace("public static class Inner", "public static final class Inner"));
+        var cache = new AnalysisCache(directory.resolve("cache"), Optional.empty());
+        cache.prepare(files);
+        assertFalse(cache.getFacts(outer).isPresent());
+        assertFalse(cache.getFacts(user).isPresent());
+        assertTrue(cache.getFacts(other).isPresent());
+    }
+
+    private void fill(Path root, Map<Path, List<Path>> files) throws IOException {
+        var cache = new AnalysisCache(directory.resolve("cache"), Optional.empty());
+        cache.prepare(files);
+        cache.beginSourceRoot(root);
+        var resolver = new MemberResolver();
+        var budget = ResolutionBudget.unlimited();
+        for (var file : files.get(root)) {
+            budget.startFile(file, System.nanoTime());
+            cache.append(Runner.analyzeUnit(new SourceRoot(root), file, StaticJavaParser.parse(file), resolver, budget));
+            budget.finishFile(file);
+        }
+        cache.finish();
+    }
+
+    private static Path write(Path root, String name, String source) throws IOException {
+        return Files.writeString(root.resolve(name), source);
+    }
+}
@@ -0,0 +1,101 @@
+package cz.cuni.mff.d3s;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayDeque;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+class GraphAnalyticsTest {
+    @Test
+    void findsNestedCyclesAndIgnoresSelfLoops() {
+        var analytics = analyze("a>a", "a>b", "b>c", "c>a", "b>d", "d>b", "c>e", "e>e", "f>f");
+
+        // The self-loops are not edges, f has none left
+        assertEquals(5, analytics.getNodeCount());
+        assertEquals(6, analytics.getEdgeCount());
+        assertEquals(2, analytics.getComponentCount());
+        assertEquals(List.of(new GraphAnalytics.Cycle(List.of("b", "a", "c", "d"), 5, List.of("b", "d", "b"))), analytics.getCycles(10));
+        assertEquals(2, analytics.getLayerCount());
+        assertEquals(1, analytics.getLayer("a"));
+        assertEquals(0, analytics.getLayer("e"));
+        assertEquals(-1, analytics.getLayer("f"));
+        assertEquals(2, analytics.getFanIn("b"));
+        assertEquals(0, analytics.getFanIn("f"));
+        assertEquals(4, analytics.getTransitiveDependencyCount("a"));
+        assertEquals(0, analytics.getTransitiveDependencyCount("e"));
+        assertEquals(4, analytics.getTransitiveDependentCount("e"));
+        assertEquals(3, analytics.getTransitiveDependentCount("d"));
+    }
+
+    @Test
+    void countsTheClosureOfADag() {
+        var analytics = analyze("a>b", "a>c", "b>d", "c>d", "d>e", "f>e");
+
+        assertEquals(6, analytics.getComponentCount());
+        assertEquals(List.of(), analytics.getCycles(10));
+        assertEquals(4, analytics.getLayerCount());
+        assertEquals(3, analytics.getLayer("a"));
+        assertEquals(1, analytics.getLayer("f"));
+        for (var expected : List.of("a4", "b2", "c2", "d1", "e0", "f1")) {
+            assertEquals(expected.charAt(1) - '0', analytics.getTransitiveDependencyCount(expected.substring(0, 1)), expected);
+        }
+        for (var expected : List.of("a0", "b1", "c1", "d3", "e5", "f0")) {
+            assertEquals(expected.charAt(1) - '0', analytics.getTransitiveDependentCount(expected.substring(0, 1)), expected);
+        }
+        assertEquals(0, analytics.getTransitiveDependencyCount("missing"));
+    }
+
+    @Test
+    void countsTheSameClosureAsASearch() {
+        var random = new Random(42);
+        var symbols = new SymbolTable();
+        var relation = new IntRelation();
+        var nodes = 300;
+        for (int i = 0; i < nodes; i++) {
+            symbols.intern("n" + i);
+        }
+        for (int i = 0; i < 600; i++) {
+            // Mostly forward edges with a few back edges, so there are cycles of several sizes
+            var from = random.nextInt(nodes);
+            var to = random.nextInt(10) == 0 ? random.nextInt(nodes) : Math.min(nodes - 1, from + 1 + random.nextInt(20));
+            relation.add(from, to);
+        }
+        var analytics = new GraphAnalytics("random", relation, symbols::name);
+        var inverse = relation.inverse();
+        for (int v = 0; v < nodes; v++) {
+            if (analytics.getFanIn("n" + v) + analytics.getFanOut("n" + v) == 0) {
+                continue;
+            }
+            assertEquals(countReachable(relation, v), analytics.getTransitiveDependencyCount("n" + v), "n" + v);
+            assertEquals(countReachable(inverse, v), analytics.getTransitiveDependentCount("n" + v), "n" + v);
+        }
+    }
+
+    private static GraphAnalytics analyze(String... edges) {
+        var symbols = new SymbolTable();
+        var relation = new IntRelation();
+        for (var edge : edges) {
+            var separator = edge.indexOf('>');
+            relation.add(symbols.intern(edge.substring(0, separator)), symbols.intern(edge.substring(separator + 1)));
+        }
+        return new GraphAnalytics("test", relation, symbols::name);
+    }
+
+    private static long countReachable(IntRelation relation, int start) {
+        var visited = new HashSet<Integer>();
+        var queue = new ArrayDeque<Integer>();
+        queue.add(start);
+        while (!queue.isEmpty()) {
+            for (var target : relation.getTargets(queue.poll())) {
+                if (target != start && visited.add(target)) {
+                    queue.add(target);
+                }
+            }
+        }
+        return visited.size();
+    }
+}
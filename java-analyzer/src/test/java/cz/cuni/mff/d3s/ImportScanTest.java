@@ -0,0 +1,116 @@
+package cz.cuni.mff.d3s;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+import java.util.Optional;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+class ImportScanTest {
+    @TempDir
+    Path directory;
+
+    @Test
+    void readsStaticAndWildcardImports() throws IOException {
+        var header = readHeader("""
+                package a.b;
+
+                import java.util.List;
+                import static java.util.Map.entry;
+                import c.d.*;
+                import static c.d.Constants.*;
+                ;
+                import e . F;
+
+                public class Main {
+                }
+                """);
+        assertEquals(new ImportScan.Header(Optional.of("a.b"), List.of("java.util.List", "java.util.Map.entry", "c.d.*",
+                "c.d.Constants.*", "e.F")), header);
+    }
+
+    @Test
+    void skipsCommentsBeforeAndBetweenTheImports() throws IOException {
+        var header = readHeader("""
+                /*
+                 * import fake.Block;
+                 */
+                // import fake.Line;
+                package a /* import fake.Inside; */ .b;
+
+                /** import fake.Javadoc; **/
+                import c.D; // import fake.Trailing;
+                import /* static */ e.F;
+                """);
+        assertEquals(new ImportScan.Header(Optional.of("a.b"), List.of("c.D", "e.F")), header);
+    }
+
+    @Test
+    void skipsTextBlocksAndStringsOfPackageAnnotations() throws IOException {
+        // The text block holds an escaped delimiter, the second string an escaped quote
+        var header = readHeader(String.join("\n",
+                "@Deprecated(since = \"\"\"",
+                "        import fake.Block;",
+                "        \\\"\"\" package fake;",
+                "        \"\"\")",
+                "@SuppressWarnings({\"import fake.String;\", \"a\\\"; import fake.Escaped;\"})",
+                "@a.b.Generated(value = 'x', comments = (\"(\" + \")\"))",
+                "package a.b;",
+                "",
+                "import c.D;"));
+        assertEquals(new ImportScan.Header(Optional.of("a.b"), List.of("c.D")), header);
+    }
+
+    @Test
+    void stopsAtTheFirstDeclaration() throws IOException {
+        var header = readHeader("""
+                package a;
+
+                import c.D;
+
+                class Main {
+                    String text = "import fake.String;";
+                }
+
+                import fake.After;
+                """);
+        assertEquals(new ImportScan.Header(Optional.of("a"), List.of("c.D")), header);
+    }
+
+    @Test
+    void readsTheDefaultPackage() throws IOException {
+        assertEquals(new ImportScan.Header(Optional.empty(), List.of("c.D")), readHeader("import c.D; class Main {}"));
+        assertEquals(new ImportScan.Header(Optional.empty(), List.of()), readHeader(""));
+    }
+
+    @Test
+    void readsAHeaderLongerThanTheWindow() throws IOException {
+        var source = new StringBuilder("package a;\n");
+        for (int i = 0; i < 5000; i++) {
+            source.append("import c.Type").append(i).append(";\n");
+        }
+        var header = readHeader(source.append("class Main {}\n").toString());
+        assertEquals(5000, header.imports().size());
+        assertEquals("c.Type4999", header.imports().get(4999));
+    }
+
+    @Test
+    void findsThePackagesOfImportedNames() {
+        assertEquals(Optional.of("java.util"), ImportScan.getImportedPackage("java.util.Map.Entry"));
+        assertEquals(Optional.of("java.util"), ImportScan.getImportedPackage("java.util.Map.entry"));
+        assertEquals(Optional.of("java.util"), ImportScan.getImportedPackage("java.util.*"));
+        assertEquals(Optional.of("a.b"), ImportScan.getImportedPackage("a.b.lowercase"));
+        assertEquals(Optional.empty(), ImportScan.getImportedPackage("Main"));
+    }
+
+    private ImportScan.Header readHeader(String source) throws IOException {
+        var file = directory.resolve("Main.java");
+        Files.writeString(file, source);
+        return ImportScan.readHeader(file);
+    }
+}
@@ -0,0 +1,90 @@
+package cz.cuni.mff.d3s;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class LongIntHashMapTest {
+    @Test
+    void keepsTheFirstValueOfAKey() {
+        var map = new LongIntHashMap();
+        assertEquals(-1, map.putIfAbsent(7, 1));
+        assertEquals(1, map.putIfAbsent(7, 2));
+        assertEquals(1, map.get(7));
+        assertEquals(1, map.size());
+        assertEquals(-1, map.get(8));
+        assertFalse(map.containsKey(8));
+    }
+
+    @Test
+    void keepsCollidingKeysApart() {
+        // Keys whose hashes fall into the same slot of the initial table probe the following ones
+        var keys = new ArrayList<Long>();
+        var slot = slot(0);
+        for (long key = 1; keys.size() < 20; key++) {
+            if (slot(key) == slot) {
+                keys.add(key);
+            }
+        }
+        var map = new LongIntHashMap();
+        map.putIfAbsent(0, 100);
+        for (int i = 0; i < keys.size(); i++) {
+            assertEquals(-1, map.putIfAbsent(keys.get(i), i));
+        }
+        assertEquals(100, map.get(0));
+        for (int i = 0; i < keys.size(); i++) {
+            assertEquals(i, map.get(keys.get(i)));
+        }
+        assertEquals(keys.size() + 1, map.size());
+    }
+
+    @Test
+    void keepsTheEntriesWhenGrowing() {
+        var random = new Random(42);
+        var expected = new HashMap<Long, Integer>();
+        var map = new LongIntHashMap();
+        for (int i = 0; i < 100_000; i++) {
+            var key = LongIntHashMap.pair(random.nextInt(), random.nextInt(1000) - 500);
+            var previous = expected.putIfAbsent(key, i);
+            assertEquals(previous == null ? -1 : previous, map.putIfAbsent(key, i));
+        }
+        assertEquals(expected.size(), map.size());
+        expected.forEach((key, value) -> assertEquals(value, map.get(key)));
+    }
+
+    @Test
+    void pairsKeepBothHalves() {
+        var keys = new HashSet<Long>();
+        for (var first : new int[]{0, 1, -1, Integer.MIN_VALUE, Integer.MAX_VALUE}) {
+            for (var second : new int[]{0, 1, -1, Integer.MIN_VALUE, Integer.MAX_VALUE}) {
+                var key = LongIntHashMap.pair(first, second);
+                assertEquals(first, (int) (key >> 32));
+                assertEquals(second, (int) key);
+                assertTrue(keys.add(key));
+            }
+        }
+    }
+
+    @Test
+    void rejectsTheReservedKey() {
+        var map = new LongIntHashMap();
+        assertThrows(IllegalArgumentException.class, () -> map.putIfAbsent(Long.MIN_VALUE, 1));
+        assertEquals(0, map.size());
+    }
+
+    /**
+     * The slot of the key in the initial table of 1024 slots.
+     */
+    private static int slot(long key) {
+        var hash = key * 0x9E3779B97F4A7C15L;
+        return (int) (hash ^ (hash >>> 32)) & 1023;
+    }
+}
@@ -0,0 +1,32 @@
+package cz.cuni.mff.d3s;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.Optional;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class OptionsTest {
+    @Test
+    void parsesValuesAndSwitches() {
+        var options = Options.parse(new String[]{"export", "repo", "--parallelism=8", "--imports-only", "--prefix=jdk"}, 2);
+        assertEquals(8, options.getParallelism());
+        assertTrue(options.isImportsOnly());
+        assertEquals(Optional.of("jdk"), options.getPrefix());
+        assertEquals(10, options.getTop());
+    }
+
+    @Test
+    void rejectsUnknownOptions() {
+        var e = assertThrows(IllegalArgumentException.class, () -> Options.parse(new String[]{"export", "repo", "--paralelism=8"}, 2));
+        assertTrue(e.getMessage().contains("--paralelism"), e.getMessage());
+        assertTrue(e.getMessage().contains("--parallelism"), e.getMessage());
+    }
+
+    @Test
+    void rejectsArgumentsThatAreNotOptions() {
+        assertThrows(IllegalArgumentException.class, () -> Options.parse(new String[]{"export", "repo", "extra"}, 2));
+    }
+}
@@ -0,0 +1,126 @@
+package cz.cuni.mff.d3s;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.TreeMap;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class RecordStoreTest {
+    @TempDir
+    Path directory;
+
+    @Test
+    void readsBackTheAppendedRecords() {
+        try (var store = new RecordStore(directory, "store", 2)) {
+            store.append(new int[]{1, 2, 3});
+            store.append(new int[]{-5, 7, 11});
+            store.append(new int[]{1, Integer.MIN_VALUE, Integer.MAX_VALUE});
+
+            assertEquals(List.of(List.of(-5, 7, 11), List.of(1, Integer.MIN_VALUE, Integer.MAX_VALUE), List.of(1, 2, 3)), readAll(store));
+            assertEquals(3, store.size());
+        }
+    }
+
+    @Test
+    void mergesSegmentsInKeyOrderAndSumsEqualKeys() {
+        var random = new Random(42);
+        var expected = new TreeMap<List<Integer>, Integer>((a, b) -> Arrays.compare(toArray(a), toArray(b)));
+        // Segments of 7 records, so the duplicates of a key end up in different runs
+        try (var store = new RecordStore(directory, "store", 2, 7)) {
+            for (int i = 0; i < 1000; i++) {
+                var record = new int[]{random.nextInt(20) - 10, random.nextInt(5), random.nextInt(100)};
+                store.append(record);
+                expected.merge(List.of(record[0], record[1]), record[2], Integer::sum);
+            }
+
+            var records = readAll(store);
+            assertEquals(expected.size(), store.size());
+            assertEquals(expected.size(), records.size());
+            var i = 0;
+            for (Map.Entry<List<Integer>, Integer> entry : expected.entrySet()) {
+                assertEquals(List.of(entry.getKey().get(0), entry.getKey().get(1), entry.getValue()), records.get(i++));
+            }
+        }
+    }
+
+    @Test
+    void findsTheRecordsOfAKeyPrefix() {
+        try (var store = new RecordStore(directory, "store", 2, 3)) {
+            for (var record : new int[][]{{2, 1, 1}, {1, 5, 1}, {3, 0, 1}, {2, 0, 1}, {2, 1, 4}, {0, 9, 1}, {2, 7, 1}}) {
+                store.append(record);
+            }
+
+            var found = new ArrayList<List<Integer>>();
+            store.find(new int[]{2}, record -> found.add(toList(record)));
+            assertEquals(List.of(List.of(2, 0, 1), List.of(2, 1, 5), List.of(2, 7, 1)), found);
+
+            found.clear();
+            store.find(new int[]{2, 1}, record -> found.add(toList(record)));
+            assertEquals(List.of(List.of(2, 1, 5)), found);
+
+            found.clear();
+            store.find(new int[]{4}, record -> found.add(toList(record)));
+            assertEquals(List.of(), found);
+        }
+    }
+
+    @Test
+    void readsAnEmptyStore() {
+        try (var store = new RecordStore(directory, "store", 1)) {
+            assertEquals(0, store.size());
+            assertEquals(List.of(), readAll(store));
+            store.find(new int[]{0}, record -> {
+                throw new AssertionError("No records expected");
+            });
+        }
+    }
+
+    @Test
+    void rejectsAppendsAfterReading() {
+        try (var store = new RecordStore(directory, "store", 1)) {
+            store.append(new int[]{1, 1});
+            store.size();
+            assertThrows(IllegalStateException.class, () -> store.append(new int[]{2, 1}));
+        }
+    }
+
+    @Test
+    void deletesItsFilesWhenClosed() throws IOException {
+        var store = new RecordStore(directory, "store", 1, 2);
+        for (int i = 0; i < 5; i++) {
+            store.append(new int[]{i, i});
+        }
+        assertArrayEquals(new int[]{4, 4}, readAll(store).get(4).stream().mapToInt(Integer::intValue).toArray());
+        store.close();
+        try (var files = Files.list(directory)) {
+            assertTrue(files.findAny().isEmpty());
+        }
+    }
+
+    private static List<List<Integer>> readAll(RecordStore store) {
+        var records = new ArrayList<List<Integer>>();
+        store.forEach(record -> records.add(toList(record)));
+        return records;
+    }
+
+    private static List<Integer> toList(int[] record) {
+        return Arrays.stream(record).boxed().toList();
+    }
+
+    private static int[] toArray(List<Integer> key) {
+        return key.stream().mapToInt(Integer::intValue).toArray();
+    }
+}
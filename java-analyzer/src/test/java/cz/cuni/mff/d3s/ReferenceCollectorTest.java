@@ -0,0 +1,81 @@
+package cz.cuni.mff.d3s;
+
+import com.github.javaparser.StaticJavaParser;
+import com.github.javaparser.utils.SourceRoot;
+import org.junit.jupiter.api.Test;
+
+import java.nio.file.Path;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+class ReferenceCollectorTest {
+    private static final Path ROOT = Path.of("src");
+
+    @Test
+    void resolvesMemberTypesToTheirTopLevelClass() {
+        var analysis = analyze("""
+                package p;
+
+                public class Outer extends Base {
+                    public static class Inner {
+                    }
+
+                    private Inner inner = new Inner();
+                    private Inner.Deeper deeper;
+                    private Builder builder;
+
+                    private enum Mode {
+                        ON;
+
+                        private Inner modeInner;
+                    }
+                }
+
+                class Base {
+                    static class Builder {
+                    }
+                }
+                """, """
+                package p;
+
+                public class Inner {
+                }
+                """, """
+                package p;
+
+                public class Builder {
+                }
+                """, """
+                package p;
+
+                public class User {
+                    private Inner inner;
+                    private Builder builder;
+                }
+                """);
+
+        assertEquals(List.of("p.Base"), getDependencies(analysis, "p.Outer"));
+        assertEquals(List.of(), getDependencies(analysis, "p.Base"));
+        assertEquals(List.of("p.Builder", "p.Inner"), getDependencies(analysis, "p.User"));
+    }
+
+    private static SourceAnalysis analyze(String... sources) {
+        var analysis = new SourceAnalysis();
+        var resolver = new MemberResolver();
+        var budget = ResolutionBudget.unlimited();
+        for (var source : sources) {
+            var unit = StaticJavaParser.parse(source);
+            var file = ROOT.resolve(unit.getType(0).getNameAsString() + ".java");
+            budget.startFile(file, System.nanoTime());
+            analysis.addUnitFacts(Runner.analyzeUnit(new SourceRoot(ROOT), file, unit, resolver, budget));
+            budget.finishFile(file);
+        }
+        analysis.resolveSymbols();
+        return analysis;
+    }
+
+    private static List<String> getDependencies(SourceAnalysis analysis, String className) {
+        return analysis.getClassDependencies(className).stream().map(SourceAnalysis.Dependency::name).sorted().toList();
+    }
+}
@@ -0,0 +1,120 @@
+package cz.cuni.mff.d3s;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class SuiteModelTest {
+    private static final String SUITE = """
+            # suite = {"name": "commented"}
+            import os
+            from os.path import join
+
+            suite = {
+              "mxversion": "7.0.0",
+              "name": "sdk",
+              "imports": {
+                "suites": [
+                  {
+                    "name": "truffle",
+                    "subdir": True,
+                    "urls": [{"url": "https://example.org/" "truffle", "kind": "binary"},],
+                  },
+                  "regex",
+                ],
+              },
+              "projects": {
+                "org.graalvm." + "sdk": {
+                  "subDir": "src",
+                  "sourceDirs": ["src"],
+                  "dependencies": [
+                    "org.graalvm.word",
+                    "truffle:TRUFFLE_API",
+                  ] + ["compiler:GRAAL"],
+                  "checkstyle": None,
+                  'description': '''Multi-line
+                  text with a "quote", # no comment
+                  and a \\'''',
+                },
+                "org.graalvm.word": {
+                  "sourceDirs": ["src", r"src_gen\\x"],
+                  "dependencies": [],
+                  "workingSets": ("API", "SDK",),
+                },
+                "org.graalvm.options": "not a project",
+              },
+              "distributions": {
+                "SDK": {
+                  "dependencies": ["org.graalvm.sdk"],
+                  "distDependencies": ["sdk:WORD", "tools:TOOLS",],
+                },
+              },
+            }
+            """;
+
+    @TempDir
+    Path directory;
+
+    @Test
+    void extractsTheProjectsAndTheirDependencies() throws IOException, SuiteParser.ParseException {
+        var file = Files.createDirectories(directory.resolve("sdk/mx.sdk")).resolve("suite.py");
+        Files.writeString(file, SUITE);
+        var suite = SuiteModel.parse(file);
+
+        assertEquals("sdk", suite.name());
+        assertEquals(directory.resolve("sdk"), suite.getDirectory());
+        assertEquals(List.of("truffle", "regex"), suite.importedSuites());
+        assertEquals(List.of(
+                new SuiteModel.Project("org.graalvm.sdk", "src", List.of("src"),
+                        List.of("org.graalvm.word", "truffle:TRUFFLE_API", "compiler:GRAAL")),
+                new SuiteModel.Project("org.graalvm.word", null, List.of("src", "src_gen\\x"), List.of())), suite.projects());
+        assertEquals(Path.of("src", "org.graalvm.sdk"), suite.projects().get(0).getDirectory());
+        assertEquals(Path.of("org.graalvm.word"), suite.projects().get(1).getDirectory());
+        assertEquals(List.of(new SuiteModel.Distribution("SDK", List.of("org.graalvm.sdk"), List.of("sdk:WORD", "tools:TOOLS"))),
+                suite.distributions());
+        assertEquals(List.of("truffle", "regex", "compiler", "tools"), List.copyOf(suite.getReferencedSuites()));
+    }
+
+    @Test
+    void parsesPythonLiterals() throws SuiteParser.ParseException {
+        var suite = SuiteParser.parseSuite("""
+                suite = {
+                    "numbers": [1, -2, 0x1F, 1_000, 2.5, -.5, 1e3],
+                    "flags": (True, False, None),
+                    "text": 'single' "double" + \"""triple\""",
+                    "escapes": "a\\tb\\\\c\\"d",
+                    "continued": "a" \\
+                        "b",
+                    "nested": {"inner": {"list": [[], ()],},},
+                }
+                """);
+
+        assertEquals(List.of(1L, -2L, 31L, 1000L, 2.5, -0.5, 1000.0), suite.get("numbers"));
+        assertEquals(Arrays.asList(true, false, null), suite.get("flags"));
+        assertEquals("singledoubletriple", suite.get("text"));
+        assertEquals("a\tb\\c\"d", suite.get("escapes"));
+        assertEquals("ab", suite.get("continued"));
+        assertEquals(Map.of("inner", Map.of("list", List.of(List.of(), List.of()))), suite.get("nested"));
+    }
+
+    @Test
+    void reportsTheLineOfAnError() {
+        var unterminated = assertThrows(SuiteParser.ParseException.class, () -> SuiteParser.parseSuite("suite = {\n  \"name\": \"sdk,\n}"));
+        assertTrue(unterminated.getMessage().startsWith("line 2: "), unterminated.getMessage());
+        var missingColon = assertThrows(SuiteParser.ParseException.class, () -> SuiteParser.parseSuite("suite = {\n\n  \"name\" \"sdk\"}"));
+        assertTrue(missingColon.getMessage().startsWith("line 3: expected :"), missingColon.getMessage());
+        assertThrows(SuiteParser.ParseException.class, () -> SuiteParser.parseSuite("suite = [1, 2]"));
+        assertThrows(SuiteParser.ParseException.class, () -> SuiteParser.parseSuite("other = {}"));
+        assertThrows(SuiteParser.ParseException.class, () -> SuiteParser.parseSuite("suite = {\"a\": 1 - 2}"));
+    }
+}
@@ -0,0 +1,177 @@
+package cz.cuni.mff.d3s;
+
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import javax.tools.ToolProvider;
+import java.io.IOException;
+import java.net.URI;
+import java.nio.file.FileSystems;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+import java.util.Optional;
+import java.util.jar.JarEntry;
+import java.util.jar.JarOutputStream;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class TypeIndexBuilderTest {
+    private static final String SOURCE = """
+            package p;
+
+            public class Outer {
+                public static final int CONSTANT = 1;
+                private int hidden;
+
+                public static String join(String first, Object... rest) {
+                    return first;
+                }
+
+                public void run(int value) {
+                }
+
+                public void run(String value) {
+                }
+
+                protected void only(long first, double second) {
+                }
+
+                void packagePrivate() {
+                }
+
+                public Object anonymous() {
+                    return new Object() {
+                        public void local() {
+                        }
+                    };
+                }
+
+                public static class Nested extends Outer {
+                    public int nestedField;
+                }
+
+                public interface Inner {
+                    void inner(int value);
+                }
+
+                public static class Box<T> {
+                    public void put(T value) {
+                    }
+                }
+
+                public static class IntBox extends Box<Integer> implements Inner {
+                    @Override
+                    public void put(Integer value) {
+                    }
+
+                    @Override
+                    public void inner(int value) {
+                    }
+                }
+            }
+            """;
+
+    @TempDir
+    static Path directory;
+    private static Path jar;
+    private static BinaryTypeIndex index;
+
+    @BeforeAll
+    static void buildIndex() throws IOException {
+        var sources = Files.createDirectories(directory.resolve("src/p"));
+        var classes = Files.createDirectories(directory.resolve("classes"));
+        Files.writeString(sources.resolve("Outer.java"), SOURCE);
+        var result = ToolProvider.getSystemJavaCompiler().run(null, null, null, "-d", classes.toString(), sources.resolve("Outer.java").toString());
+        assertEquals(0, result);
+
+        // The jar brings its own java.lang.Object, the indexed hierarchies must be complete
+        jar = directory.resolve("types.jar");
+        try (var output = new JarOutputStream(Files.newOutputStream(jar));
+             var files = Files.walk(classes)) {
+            for (var file : files.filter(Files::isRegularFile).toList()) {
+                output.putNextEntry(new JarEntry(classes.relativize(file).toString().replace('\\', '/')));
+                output.write(Files.readAllBytes(file));
+                output.closeEntry();
+            }
+            output.putNextEntry(new JarEntry("java/lang/Object.class"));
+            output.write(Files.readAllBytes(FileSystems.getFileSystem(URI.create("jrt:/")).getPath("/modules/java.base/java/lang/Object.class")));
+            output.closeEntry();
+        }
+
+        var builder = new TypeIndexBuilder();
+        builder.addJar(jar);
+        var file = directory.resolve("index/types.bin");
+        builder.write(file);
+        index = BinaryTypeIndex.open(file);
+    }
+
+    @Test
+    void readsBackTheWrittenTypes() {
+        assertEquals(List.of(jar.toAbsolutePath().normalize()), index.getJars());
+        assertEquals(6, index.size());
+        for (var type : List.of("java.lang.Object", "p.Outer", "p.Outer.Nested", "p.Outer.Inner", "p.Outer.Box", "p.Outer.IntBox")) {
+            assertTrue(index.contains(type), type);
+        }
+        assertFalse(index.contains("p.Outer$Nested"));
+        assertFalse(index.contains("p.Missing"));
+    }
+
+    @Test
+    void skipsAnonymousClasses() {
+        assertFalse(index.contains("p.Outer.1"));
+        assertFalse(index.contains("p.Outer$1"));
+    }
+
+    @Test
+    void listsVisibleMembersWithTheirParameters() {
+        assertEquals(List.of("CONSTANT", "anonymous()", "join(Ljava/lang/String;[Ljava/lang/Object;)*", "only(JD)",
+                "run(I)", "run(Ljava/lang/String;)"), index.getDeclaredMembers("p.Outer"));
+    }
+
+    @Test
+    void skipsSyntheticMembers() {
+        // The bridge put(Object) is synthetic
+        assertEquals(List.of("inner(I)", "put(Ljava/lang/Integer;)"), index.getDeclaredMembers("p.Outer.IntBox"));
+    }
+
+    @Test
+    void findsMethodsWithVariableArgumentsByTheirFixedParameters() {
+        assertEquals(Optional.empty(), index.findMethodDeclaringType("p.Outer", "join", 0));
+        for (var arity : new int[]{1, 2, 5}) {
+            assertEquals(member("p.Outer", "p"), index.findMethodDeclaringType("p.Outer", "join", arity));
+        }
+    }
+
+    @Test
+    void findsInheritedMembers() {
+        assertEquals(member("p.Outer", "p"), index.findMethodDeclaringType("p.Outer.Nested", "only", 2));
+        assertEquals(Optional.empty(), index.findMethodDeclaringType("p.Outer.Nested", "only", 1));
+        assertEquals(member("p.Outer", "p"), index.findFieldDeclaringType("p.Outer.Nested", "CONSTANT"));
+        assertEquals(member("p.Outer.Nested", "p"), index.findFieldDeclaringType("p.Outer.Nested", "nestedField"));
+        assertEquals(member("p.Outer.IntBox", "p"), index.findMethodDeclaringType("p.Outer.IntBox", "inner", 1));
+        assertEquals(member("java.lang.Object", "java.lang"), index.findMethodDeclaringType("p.Outer", "hashCode", 0));
+    }
+
+    @Test
+    void leavesOverloadedMethodsToTheSolver() {
+        assertEquals(Optional.empty(), index.findMethodDeclaringType("p.Outer", "run", 1));
+        // The erasure of the overridden put(T) differs from the overriding one
+        assertEquals(Optional.empty(), index.findMethodDeclaringType("p.Outer.IntBox", "put", 1));
+        assertEquals(member("p.Outer.Box", "p"), index.findMethodDeclaringType("p.Outer.Box", "put", 1));
+    }
+
+    @Test
+    void doesNotFindHiddenMembers() {
+        assertEquals(Optional.empty(), index.findFieldDeclaringType("p.Outer", "hidden"));
+        assertEquals(Optional.empty(), index.findMethodDeclaringType("p.Outer", "packagePrivate", 0));
+        assertEquals(Optional.empty(), index.findMethodDeclaringType("p.Missing", "run", 1));
+    }
+
+    private static Optional<MemberResolver.ResolvedMember> member(String declaringType, String packageName) {
+        return Optional.of(new MemberResolver.ResolvedMember(declaringType, packageName));
+    }
+}